@@ -0,0 +1,101 @@
+package edu.mayo.bsi.uima.perf.benchmarks;
+
+import edu.mayo.bsi.uima.perf.structures.AnnotationIndex;
+import edu.mayo.bsi.uima.perf.structures.AnnotationRoot;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link AnnotationRoot} directly, independently of the agent's instrumentation
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnnotationIndexBenchmark {
+    @Param({"100000"})
+    public int docLength;
+    @Param({"10000", "100000"})
+    public int annotationCount;
+    @Param({"4"})
+    public int typeCount;
+    @Param({"0.2"})
+    public double phraseRatio;
+    @Param({"0.05"})
+    public double sentenceRatio;
+    @Param({"2000"})
+    public int maxSentenceLength;
+    @Param({"20"})
+    public int leafSize;
+
+    private JCas jcas;
+    private List<AnnotationFS> annotations;
+    private AnnotationRoot root;
+    private AnnotationFS[] anchors;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        SyntheticCas generator = new SyntheticCas(docLength, annotationCount, typeCount, phraseRatio, sentenceRatio,
+                maxSentenceLength, 42);
+        jcas = generator.createEmpty();
+        annotations = generator.generate(jcas);
+        root = build();
+        anchors = annotations.toArray(new AnnotationFS[annotations.size()]);
+        random = new Random(7);
+    }
+
+    private AnnotationRoot build() {
+        AnnotationRoot ret = new AnnotationRoot(jcas.getTypeSystem(), leafSize, AnnotationIndex.INITIAL_CAPACITY);
+        ret.grow(docLength);
+        ret.insertAll(annotations);
+        ret.flush();
+        return ret;
+    }
+
+    private AnnotationFS anchor() {
+        return anchors[random.nextInt(anchors.length)];
+    }
+
+    @Benchmark
+    public void getCovered(Blackhole bh) {
+        AnnotationFS anchor = anchor();
+        for (Annotation ann : root.getCovered(anchor.getBegin(), anchor.getEnd(), Annotation.class)) {
+            bh.consume(ann);
+        }
+    }
+
+    @Benchmark
+    public void getCovering(Blackhole bh) {
+        AnnotationFS anchor = anchor();
+        for (Annotation ann : root.getCovering(anchor.getBegin(), anchor.getEnd(), Annotation.class)) {
+            bh.consume(ann);
+        }
+    }
+
+    /**
+     * Removes then reinserts an annotation, querying in between so that the pending insert buffer is merged
+     */
+    @Benchmark
+    public void removeInsert(Blackhole bh) {
+        AnnotationFS anchor = anchor();
+        root.remove(anchor);
+        root.insert(anchor);
+        bh.consume(root.getCovering(anchor.getBegin(), anchor.getEnd(), Annotation.class).isEmpty());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public AnnotationRoot buildIndex() {
+        return build();
+    }
+}
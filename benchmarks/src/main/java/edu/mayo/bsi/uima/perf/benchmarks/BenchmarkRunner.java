@@ -0,0 +1,50 @@
+package edu.mayo.bsi.uima.perf.benchmarks;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * Runs the benchmarks, with {@link JCasUtilBenchmark} run once against stock uimaFIT and once with the agent attached
+ * so that the two can be compared.
+ * <p>
+ * The agent jar defaults to the assembly built in the parent project and can be set with -Dagent.jar=PATH. Any program
+ * arguments are used as benchmark name patterns, defaulting to all benchmarks
+ */
+public final class BenchmarkRunner {
+    private static final String DEFAULT_AGENT_JAR = "../target/UIMA-JavaAgent-1.0-SNAPSHOT-jar-with-dependencies.jar";
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String... args) throws RunnerException {
+        File agent = new File(System.getProperty("agent.jar", DEFAULT_AGENT_JAR));
+        if (!agent.isFile()) {
+            throw new IllegalArgumentException("Agent jar " + agent.getAbsolutePath() + " not found, build the parent "
+                    + "project or set -Dagent.jar");
+        }
+        String[] patterns = args.length == 0 ? new String[]{""} : args;
+
+        // The index structures are not instrumented, so these only need running once
+        ChainedOptionsBuilder direct = new OptionsBuilder();
+        for (String pattern : patterns) {
+            direct.include(AnnotationIndexBenchmark.class.getSimpleName() + ".*" + pattern);
+        }
+        new Runner(direct.build()).run();
+
+        ChainedOptionsBuilder stock = new OptionsBuilder();
+        ChainedOptionsBuilder agented = new OptionsBuilder()
+                .jvmArgsAppend("-javaagent:" + agent.getAbsolutePath());
+        for (String pattern : patterns) {
+            stock.include(JCasUtilBenchmark.class.getSimpleName() + ".*" + pattern);
+            agented.include(JCasUtilBenchmark.class.getSimpleName() + ".*" + pattern);
+        }
+        System.out.println("# Stock uimaFIT");
+        new Runner(stock.build()).run();
+        System.out.println("# With agent " + agent.getAbsolutePath());
+        new Runner(agented.build()).run();
+    }
+}
@@ -0,0 +1,101 @@
+package edu.mayo.bsi.uima.perf.benchmarks;
+
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks uimaFIT's {@link JCasUtil} queries. Whether these run against the stock implementation or are accelerated
+ * depends on whether the forked JVM is started with the agent, see {@link BenchmarkRunner}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JCasUtilBenchmark {
+    @Param({"100000"})
+    public int docLength;
+    @Param({"10000"})
+    public int annotationCount;
+    @Param({"4"})
+    public int typeCount;
+    @Param({"0.2"})
+    public double phraseRatio;
+    @Param({"0.05"})
+    public double sentenceRatio;
+    @Param({"2000"})
+    public int maxSentenceLength;
+
+    private SyntheticCas generator;
+    private JCas jcas;
+    private AnnotationFS[] anchors;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        generator = new SyntheticCas(docLength, annotationCount, typeCount, phraseRatio, sentenceRatio,
+                maxSentenceLength, 42);
+        jcas = generator.create();
+        List<Annotation> all = JCasUtil.select(jcas, Annotation.class);
+        anchors = all.toArray(new AnnotationFS[all.size()]);
+        random = new Random(7);
+    }
+
+    private AnnotationFS anchor() {
+        return anchors[random.nextInt(anchors.length)];
+    }
+
+    @Benchmark
+    public void selectCovered(Blackhole bh) {
+        AnnotationFS anchor = anchor();
+        for (Annotation ann : JCasUtil.selectCovered(jcas, Annotation.class, anchor.getBegin(), anchor.getEnd())) {
+            bh.consume(ann);
+        }
+    }
+
+    @Benchmark
+    public void selectCovering(Blackhole bh) {
+        AnnotationFS anchor = anchor();
+        for (Annotation ann : JCasUtil.selectCovering(jcas, Annotation.class, anchor.getBegin(), anchor.getEnd())) {
+            bh.consume(ann);
+        }
+    }
+
+    /**
+     * Removes then re-adds an annotation through the CAS, querying in between so that index maintenance is included
+     */
+    @Benchmark
+    public void removeAdd(Blackhole bh) {
+        AnnotationFS anchor = anchor();
+        jcas.getCas().removeFsFromIndexes(anchor);
+        jcas.getCas().addFsToIndexes(anchor);
+        bh.consume(JCasUtil.selectCovering(jcas, Annotation.class, anchor.getBegin(), anchor.getEnd()).isEmpty());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Map<Annotation, Collection<Annotation>> indexCovered() {
+        return JCasUtil.indexCovered(jcas, Annotation.class, Annotation.class);
+    }
+
+    /**
+     * Populates a fresh CAS and runs a first query, which includes building the agent's index when it is attached
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public boolean populateAndQuery() throws Exception {
+        JCas fresh = generator.create();
+        return JCasUtil.selectCovered(fresh, Annotation.class, 0, docLength).isEmpty();
+    }
+}
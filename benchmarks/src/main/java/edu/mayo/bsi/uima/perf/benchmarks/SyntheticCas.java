@@ -0,0 +1,135 @@
+package edu.mayo.bsi.uima.perf.benchmarks;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.fit.factory.TypeSystemDescriptionFactory;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates reproducible CASes filled with synthetic annotations for benchmarking.
+ * <p>
+ * Annotations are spread over a number of generated subtypes of uima.tcas.Annotation, and their span lengths are drawn
+ * from a mix of short token-like spans, phrase-like spans, and long sentence-like spans: the latter cover many other
+ * annotations and are what makes covering queries expensive for the stock uimaFIT implementation
+ */
+public final class SyntheticCas {
+    /**
+     * Name prefix of the generated annotation types, suffixed by the type's number
+     */
+    public static final String TYPE_PREFIX = "benchmark.Type";
+
+    private final int docLength;
+    private final int annotationCount;
+    private final int typeCount;
+    private final double phraseRatio;
+    private final double sentenceRatio;
+    private final int maxSentenceLength;
+    private final long seed;
+
+    /**
+     * @param docLength         The length of the document text
+     * @param annotationCount   The number of annotations to generate
+     * @param typeCount         The number of annotation types to spread annotations over
+     * @param phraseRatio       The fraction of annotations with phrase-like spans of up to 40 characters
+     * @param sentenceRatio     The fraction of annotations with sentence-like spans of up to maxSentenceLength characters
+     * @param maxSentenceLength The maximum length of a sentence-like span
+     * @param seed              The random seed, so that runs are comparable
+     */
+    public SyntheticCas(int docLength, int annotationCount, int typeCount, double phraseRatio, double sentenceRatio,
+                        int maxSentenceLength, long seed) {
+        if (docLength <= 0 || annotationCount < 0 || typeCount <= 0) {
+            throw new IllegalArgumentException("Document length and type count must be positive");
+        }
+        if (phraseRatio < 0 || sentenceRatio < 0 || phraseRatio + sentenceRatio > 1) {
+            throw new IllegalArgumentException("Span ratios must be non-negative and sum to at most 1");
+        }
+        this.docLength = docLength;
+        this.annotationCount = annotationCount;
+        this.typeCount = typeCount;
+        this.phraseRatio = phraseRatio;
+        this.sentenceRatio = sentenceRatio;
+        this.maxSentenceLength = Math.max(1, maxSentenceLength);
+        this.seed = seed;
+    }
+
+    /**
+     * @return A type system containing the generated annotation types
+     */
+    public TypeSystemDescription typeSystem() {
+        TypeSystemDescription tsd;
+        try {
+            tsd = TypeSystemDescriptionFactory.createTypeSystemDescription();
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not create type system description", e);
+        }
+        for (int i = 0; i < typeCount; i++) {
+            tsd.addType(TYPE_PREFIX + i, "", CAS.TYPE_NAME_ANNOTATION);
+        }
+        return tsd;
+    }
+
+    /**
+     * @return A new JCas with document text set but no generated annotations
+     * @throws UIMAException If the JCas could not be created
+     */
+    public JCas createEmpty() throws UIMAException {
+        JCas jcas = JCasFactory.createJCas(typeSystem());
+        char[] text = new char[docLength];
+        Arrays.fill(text, 'x');
+        for (int i = 7; i < docLength; i += 8) {
+            text[i] = ' ';
+        }
+        jcas.setDocumentText(new String(text));
+        return jcas;
+    }
+
+    /**
+     * @param jcas A JCas created by {@link #createEmpty()}
+     * @return The generated annotations, created but not yet added to the CAS indexes, in generation order
+     */
+    public List<AnnotationFS> generate(JCas jcas) {
+        CAS cas = jcas.getCas();
+        Type[] types = new Type[typeCount];
+        for (int i = 0; i < typeCount; i++) {
+            types[i] = cas.getTypeSystem().getType(TYPE_PREFIX + i);
+        }
+        Random random = new Random(seed);
+        List<AnnotationFS> ret = new ArrayList<AnnotationFS>(annotationCount);
+        for (int i = 0; i < annotationCount; i++) {
+            double kind = random.nextDouble();
+            int length;
+            if (kind < sentenceRatio) {
+                length = 1 + random.nextInt(maxSentenceLength);
+            } else if (kind < sentenceRatio + phraseRatio) {
+                length = 1 + random.nextInt(40);
+            } else {
+                length = 1 + random.nextInt(8);
+            }
+            length = Math.min(length, docLength);
+            int begin = random.nextInt(docLength - length + 1);
+            ret.add(cas.createAnnotation(types[random.nextInt(typeCount)], begin, begin + length));
+        }
+        return ret;
+    }
+
+    /**
+     * @return A new JCas with all generated annotations added to its indexes
+     * @throws UIMAException If the JCas could not be created
+     */
+    public JCas create() throws UIMAException {
+        JCas jcas = createEmpty();
+        for (AnnotationFS ann : generate(jcas)) {
+            jcas.getCas().addFsToIndexes(ann);
+        }
+        return jcas;
+    }
+}
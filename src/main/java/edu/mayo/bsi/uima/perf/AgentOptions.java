@@ -0,0 +1,388 @@
+package edu.mayo.bsi.uima.perf;
+
+import edu.mayo.bsi.uima.perf.structures.AnnotationIndex;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * Options passed to the agent through its argument string, i.e. {@code -javaagent:UIMA-JavaAgent.jar=OPTIONS}, where
+ * OPTIONS is a comma-separated list of {@code key=value} pairs. A key without a value is taken to be a boolean flag set
+ * to true, and list values are colon-separated.
+ * <p>
+ * Recognized options, besides those of {@link edu.mayo.bsi.uima.perf.metrics.AgentMetrics}, are:
+ * <ul>
+ * <li>{@code intercept.METHOD}: whether to accelerate the given uimaFIT or UIMA method, one of {@link #INTERCEPTIONS},
+ * defaults to true</li>
+ * <li>{@code index}: the {@link IndexImplementation} to use, {@code tree} or {@code tiled}, defaults to {@code tree}.
+ * {@code tiled} is not supported with {@code index.concurrent}</li>
+ * <li>{@code index.leafSize}: the entry count at or below which index subtrees are scanned linearly, defaults to
+ * {@link AnnotationIndex#MIN_LEAF_SIZE}</li>
+ * <li>{@code index.capacity}: the initial storage capacity of each type partition of an index, defaults to
+ * {@link AnnotationIndex#INITIAL_CAPACITY}</li>
+ * <li>{@code index.parallelThreshold}: the annotation count at or above which bulk inserts, such as the initial build
+ * of an index, sort the type partitions of the index in parallel, defaults to
+ * {@link AnnotationIndex#PARALLEL_THRESHOLD}, 0 to disable</li>
+ * <li>{@code index.tileSize}: the number of character offsets covered by each tile of a {@code tiled} index, defaults
+ * to {@link AnnotationIndex#TILE_SIZE}</li>
+ * <li>{@code index.background}: whether indexes of deserialized or copied CASes are built in the background, defaults
+ * to true</li>
+ * <li>{@code index.concurrent}: whether indexes may be queried from multiple threads at once, as by read-only
+ * extractors sharing a CAS, defaults to false</li>
+ * <li>{@code index.cache}: the number of query results to cache per index, see
+ * {@link edu.mayo.bsi.uima.perf.structures.CachingAnnotationIndex}, defaults to 0 (disabled). Not supported with
+ * {@code index.concurrent}</li>
+ * <li>{@code index.recycle}: whether the index of a CAS is emptied in place and kept for the next document when the
+ * CAS is reset, as by CAS pools, rather than discarded, defaults to false</li>
+ * <li>{@code index.persistDir}: a directory to write the indexes of CASes serialized in binary form to, and to restore
+ * them from when such CASes are deserialized, see {@link edu.mayo.bsi.uima.perf.structures.IndexFile}, defaults to
+ * unset (disabled)</li>
+ * <li>{@code registry.weak}: whether the indexes of CASes that are garbage collected without being reset are released,
+ * defaults to false</li>
+ * <li>{@code registry.maxAnnotations}, {@code registry.maxBytes}: caps on the total number of indexed annotations and
+ * the total estimated index memory, beyond which the least recently used indexes are released, defaults to 0
+ * (unbounded)</li>
+ * <li>{@code callers.allow}, {@code callers.deny}: package or class name prefixes of the callers whose calls to
+ * accelerated methods are redirected or not, see {@link CallerFilter}</li>
+ * <li>{@code shadow.rate}: the fraction of accelerated calls to verify against the original implementation, between 0
+ * and 1, defaults to 0</li>
+ * <li>{@code shadow.fallbackAfter}: the number of verification mismatches after which calls from a caller are no
+ * longer accelerated, defaults to 0 (never)</li>
+ * </ul>
+ * Invalid values are logged and replaced by the option's default rather than preventing the host program from starting
+ */
+public final class AgentOptions {
+    /**
+     * The names of the uimaFIT and UIMA methods that can be individually accelerated
+     */
+    public static final String[] INTERCEPTIONS = {"selectCovered", "selectCovering", "indexCovered", "indexCovering",
+            "selectPreceding", "selectFollowing", "selectBetween", "contains", "select", "selectAt", "selectSingleAt",
+            "subiterator"};
+
+    private static volatile AgentOptions current = parse(null);
+
+    private final Map<String, String> values;
+    // Options read on hot paths are resolved once, which also logs any invalid values only once
+    private final IndexImplementation indexImplementation;
+    private final int leafSize;
+    private final int initialCapacity;
+    private final int parallelThreshold;
+    private final int tileSize;
+    private final boolean backgroundBuild;
+    private final boolean concurrentReads;
+    private final int queryCacheSize;
+    private final boolean recycleIndexes;
+    private final File indexPersistDir;
+    private final boolean weakRegistry;
+    private final long maxIndexedAnnotations;
+    private final long maxIndexBytes;
+    private final CallerFilter callerFilter;
+    private final int shadowPeriod;
+    private final int shadowFallbackAfter;
+
+    private AgentOptions(Map<String, String> values) {
+        this.values = values;
+        this.leafSize = getPositiveInt("index.leafSize", AnnotationIndex.MIN_LEAF_SIZE);
+        this.initialCapacity = getPositiveInt("index.capacity", AnnotationIndex.INITIAL_CAPACITY);
+        this.parallelThreshold = (int) Math.min(Integer.MAX_VALUE,
+                getNonNegativeLong("index.parallelThreshold", AnnotationIndex.PARALLEL_THRESHOLD));
+        this.tileSize = getPositiveInt("index.tileSize", AnnotationIndex.TILE_SIZE);
+        this.backgroundBuild = getBoolean("index.background", true);
+        this.concurrentReads = getBoolean("index.concurrent", false);
+        IndexImplementation indexImplementation = resolveIndexImplementation();
+        if (indexImplementation == IndexImplementation.TILED && concurrentReads) {
+            UIMAAgent.LOGGER.log(Level.WARNING, "Agent option index=tiled is not supported with index.concurrent, "
+                    + "using index=tree");
+            indexImplementation = IndexImplementation.TREE;
+        }
+        this.indexImplementation = indexImplementation;
+        long queryCacheSize = getNonNegativeLong("index.cache");
+        if (queryCacheSize > 0 && concurrentReads) {
+            UIMAAgent.LOGGER.log(Level.WARNING, "Agent option index.cache is not supported with index.concurrent, "
+                    + "disabling query result caching");
+            queryCacheSize = 0;
+        }
+        this.queryCacheSize = (int) Math.min(Integer.MAX_VALUE, queryCacheSize);
+        this.recycleIndexes = getBoolean("index.recycle", false);
+        String indexPersistDir = getString("index.persistDir", null);
+        this.indexPersistDir = indexPersistDir == null ? null : new File(indexPersistDir);
+        this.weakRegistry = getBoolean("registry.weak", false);
+        this.maxIndexedAnnotations = getNonNegativeLong("registry.maxAnnotations");
+        this.maxIndexBytes = getNonNegativeLong("registry.maxBytes");
+        this.callerFilter = new CallerFilter(getList("callers.allow"), getList("callers.deny"));
+        double shadowRate = getDouble("shadow.rate", 0);
+        if (!(shadowRate >= 0 && shadowRate <= 1)) {
+            UIMAAgent.LOGGER.log(Level.WARNING, "Agent option shadow.rate must be between 0 and 1, "
+                    + "disabling shadow mode");
+            shadowRate = 0;
+        }
+        this.shadowPeriod = shadowRate == 0 ? 0
+                : (int) Math.max(1, Math.min(Integer.MAX_VALUE, Math.round(1 / shadowRate)));
+        long fallbackAfter = getLong("shadow.fallbackAfter", 0);
+        this.shadowFallbackAfter = (int) Math.max(0, Math.min(Integer.MAX_VALUE, fallbackAfter));
+    }
+
+    /**
+     * @return The options the agent was started with, or the defaults if it was not started through premain
+     */
+    public static AgentOptions current() {
+        return current;
+    }
+
+    static void setCurrent(AgentOptions options) {
+        current = options;
+    }
+
+    /**
+     * @param arg The agent argument string, may be null
+     * @return The parsed options
+     */
+    public static AgentOptions parse(String arg) {
+        Map<String, String> values = new LinkedHashMap<String, String>();
+        if (arg != null) {
+            for (String option : arg.split(",")) {
+                option = option.trim();
+                if (option.isEmpty()) {
+                    continue;
+                }
+                int split = option.indexOf('=');
+                if (split < 0) {
+                    values.put(option, "true");
+                } else {
+                    values.put(option.substring(0, split).trim(), option.substring(split + 1).trim());
+                }
+            }
+        }
+        return new AgentOptions(Collections.unmodifiableMap(values));
+    }
+
+    /**
+     * @return All options as specified, by key
+     */
+    public Map<String, String> asMap() {
+        return values;
+    }
+
+    /**
+     * @param method The name of an accelerated method, one of {@link #INTERCEPTIONS}
+     * @return Whether calls to the method should be accelerated
+     */
+    public boolean isIntercepted(String method) {
+        return getBoolean("intercept." + method, true);
+    }
+
+    /**
+     * @return Whether calls to any method should be accelerated, and hence indexes maintained
+     */
+    public boolean isAnyIntercepted() {
+        for (String method : INTERCEPTIONS) {
+            if (isIntercepted(method)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public IndexImplementation getIndexImplementation() {
+        return indexImplementation;
+    }
+
+    public int getLeafSize() {
+        return leafSize;
+    }
+
+    public int getInitialCapacity() {
+        return initialCapacity;
+    }
+
+    /**
+     * @return The annotation count at or above which bulk inserts are sorted in parallel, or 0 if they never are
+     */
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * @return The number of character offsets covered by each tile of a tiled index
+     */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public boolean isBackgroundBuild() {
+        return backgroundBuild;
+    }
+
+    public boolean isConcurrentReads() {
+        return concurrentReads;
+    }
+
+    /**
+     * @return The number of query results to cache per index, or 0 if results are not cached
+     */
+    public int getQueryCacheSize() {
+        return queryCacheSize;
+    }
+
+    public boolean isRecycleIndexes() {
+        return recycleIndexes;
+    }
+
+    /**
+     * @return The directory indexes of serialized CASes are persisted to, or null if they are not persisted
+     */
+    public File getIndexPersistDir() {
+        return indexPersistDir;
+    }
+
+    public boolean isWeakRegistry() {
+        return weakRegistry;
+    }
+
+    /**
+     * @return The cap on the number of annotations across all tracked indexes, or 0 if unbounded
+     */
+    public long getMaxIndexedAnnotations() {
+        return maxIndexedAnnotations;
+    }
+
+    /**
+     * @return The cap on the estimated memory of all tracked indexes in bytes, or 0 if unbounded
+     */
+    public long getMaxIndexBytes() {
+        return maxIndexBytes;
+    }
+
+    public CallerFilter getCallerFilter() {
+        return callerFilter;
+    }
+
+    /**
+     * @return One in how many accelerated calls are verified against the original implementation, or 0 if none are
+     */
+    public int getShadowPeriod() {
+        return shadowPeriod;
+    }
+
+    /**
+     * @return The number of verification mismatches after which calls from a caller are no longer accelerated, or 0 if
+     * they always are
+     */
+    public int getShadowFallbackAfter() {
+        return shadowFallbackAfter;
+    }
+
+    private IndexImplementation resolveIndexImplementation() {
+        String value = getString("index", null);
+        if (value != null) {
+            for (IndexImplementation impl : IndexImplementation.values()) {
+                if (impl.name().equalsIgnoreCase(value)) {
+                    return impl;
+                }
+            }
+            UIMAAgent.LOGGER.log(Level.WARNING, "Unknown index implementation " + value + ", defaulting to "
+                    + IndexImplementation.TREE.name().toLowerCase());
+        }
+        return IndexImplementation.TREE;
+    }
+
+    public String getString(String key, String def) {
+        String ret = values.get(key);
+        return ret == null || ret.isEmpty() ? def : ret;
+    }
+
+    public boolean getBoolean(String key, boolean def) {
+        String value = values.get(key);
+        if (value == null) {
+            return def;
+        }
+        if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("on") || value.equals("1")) {
+            return true;
+        }
+        if (value.equalsIgnoreCase("false") || value.equalsIgnoreCase("off") || value.equals("0")) {
+            return false;
+        }
+        UIMAAgent.LOGGER.log(Level.WARNING, "Invalid boolean value " + value + " for agent option " + key
+                + ", defaulting to " + def);
+        return def;
+    }
+
+    public long getLong(String key, long def) {
+        String value = values.get(key);
+        if (value == null) {
+            return def;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            UIMAAgent.LOGGER.log(Level.WARNING, "Invalid numeric value " + value + " for agent option " + key
+                    + ", defaulting to " + def);
+            return def;
+        }
+    }
+
+    public double getDouble(String key, double def) {
+        String value = values.get(key);
+        if (value == null) {
+            return def;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            UIMAAgent.LOGGER.log(Level.WARNING, "Invalid numeric value " + value + " for agent option " + key
+                    + ", defaulting to " + def);
+            return def;
+        }
+    }
+
+    /**
+     * @return The colon-separated elements of the given option, empty if not set
+     */
+    public List<String> getList(String key) {
+        String value = values.get(key);
+        List<String> ret = new ArrayList<String>();
+        if (value != null) {
+            for (String element : value.split(":")) {
+                element = element.trim();
+                if (!element.isEmpty()) {
+                    ret.add(element);
+                }
+            }
+        }
+        return ret;
+    }
+
+    private int getPositiveInt(String key, int def) {
+        long value = getLong(key, def);
+        if (value < 1 || value > Integer.MAX_VALUE) {
+            UIMAAgent.LOGGER.log(Level.WARNING, "Agent option " + key + " must be a positive integer, defaulting to "
+                    + def);
+            return def;
+        }
+        return (int) value;
+    }
+
+    private long getNonNegativeLong(String key) {
+        return getNonNegativeLong(key, 0);
+    }
+
+    private long getNonNegativeLong(String key, long def) {
+        long value = getLong(key, def);
+        if (value < 0) {
+            UIMAAgent.LOGGER.log(Level.WARNING, "Agent option " + key + " must not be negative, defaulting to "
+                    + def);
+            return def;
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return values.toString();
+    }
+}
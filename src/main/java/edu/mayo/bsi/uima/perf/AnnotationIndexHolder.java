@@ -0,0 +1,26 @@
+package edu.mayo.bsi.uima.perf;
+
+import edu.mayo.bsi.uima.perf.structures.AnnotationIndex;
+
+/**
+ * Implemented by {@link org.apache.uima.cas.impl.CASImpl} at class load time by {@link UIMAAgent}, which adds a field
+ * holding the {@link AnnotationIndex} of each CAS view so that it can be retrieved without a registry lookup.
+ * <p>
+ * Accessors are named so as not to collide with any existing CAS methods
+ */
+public interface AnnotationIndexHolder {
+    /**
+     * Name of the field injected into {@link org.apache.uima.cas.impl.CASImpl} backing this interface
+     */
+    String FIELD_NAME = "uimaAgentAnnotationIndex";
+
+    /**
+     * @return The annotation index attached to this CAS view, or null if none is attached
+     */
+    AnnotationIndex getUimaAgentAnnotationIndex();
+
+    /**
+     * @param index The annotation index to attach to this CAS view, or null to detach the current one
+     */
+    void setUimaAgentAnnotationIndex(AnnotationIndex index);
+}
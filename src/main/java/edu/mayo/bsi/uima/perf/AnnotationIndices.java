@@ -1,20 +1,30 @@
 package edu.mayo.bsi.uima.perf;
 
 import edu.mayo.bsi.uima.perf.structures.AnnotationIndex;
-import edu.mayo.bsi.uima.perf.structures.AnnotationRoot;
+import edu.mayo.bsi.uima.perf.structures.IndexBuildPool;
+import edu.mayo.bsi.uima.perf.structures.IndexFile;
 import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.CASException;
 import org.apache.uima.cas.FSIterator;
 import org.apache.uima.cas.FeatureStructure;
 import org.apache.uima.cas.Type;
+import org.apache.uima.cas.TypeSystem;
+import org.apache.uima.cas.admin.CASMgr;
+import org.apache.uima.cas.admin.LinearTypeOrder;
 import org.apache.uima.cas.text.AnnotationFS;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
-import org.apache.uima.jcas.tcas.Annotation;
-import org.cliffc.high_scale_lib.NonBlockingHashMap;
 import org.jetbrains.annotations.Contract;
 
-import java.util.Map;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 
 /**
@@ -23,11 +33,22 @@ import java.util.logging.Level;
  * <b>Note:</b> Storage and retrieval of indexes are thread safe at a UUID granularity, but individual
  * {@link AnnotationIndex} are not thread-safe: only one thread should be manipulating an AnnotationIndex
  * of a given UID at any given time. In other words, assuming each CAS is associated with a truly unique UID,
- * while multiple CASes can be processed at once, only one thread should be the index of a given CAS at any time
+ * while multiple CASes can be processed at once, only one thread should be the index of a given CAS at any time.
+ * With the {@code index.concurrent} agent option set, indexes may additionally be queried by multiple threads at once
+ * while not being modified, see {@link edu.mayo.bsi.uima.perf.structures.ConcurrentAnnotationIndex}
+ * </p>
+ * <p>
+ * Each CAS view, i.e. each sofa, has its own index. Indexes are additionally attached directly to the CAS views they
+ * belong to via {@link AnnotationIndexHolder}, so that after the first lookup retrieval from any view is a single field
+ * read, and are released for all views of a CAS together when it is reset. The UID registry remains the fallback for CASes whose
+ * index was not attached to the CAS object itself, such as those that have been serialized and restored. The registry
+ * may be configured to release indexes of CASes that are garbage collected without being reset, and to cap the memory
+ * held by indexes, see {@link IndexRegistry}. An index released while its CAS is in use is rebuilt from the contents of
+ * the CAS on its next retrieval
  * </p>
  */
 public class AnnotationIndices {
-    private static final Map<UUID, AnnotationIndex> CURR_INDICES = new NonBlockingHashMap<UUID, AnnotationIndex>();
+    private static final IndexRegistry CURR_INDICES = new IndexRegistry(AgentOptions.current());
 
     /**
      * Thread-safe: retrieves an Annotation Index by its UID
@@ -39,21 +60,36 @@ public class AnnotationIndices {
         return CURR_INDICES.get(uuid);
     }
 
+    /**
+     * Thread-safe: the tracked Annotation Indexes, for monitoring purposes
+     *
+     * @return The currently tracked indexes
+     */
+    public static Collection<AnnotationIndex> trackedIndexes() {
+        return Collections.unmodifiableCollection(CURR_INDICES.indexes());
+    }
+
     /**
      * Thread-safe: creates, stores, and/or retrieves an Annotation Index by its UID
      *
-     * @param uuid The UUID obtained from metadata stored in the CAS
+     * @param uuid       The UUID obtained from metadata stored in the CAS
+     * @param typeSystem The type system of the CAS, used to partition the index by annotation type
      * @return The {@link AnnotationIndex} associated with this UID if it exists, otherwise returns a new instance
      * associated with the parameter UID
      */
-    public static AnnotationIndex createIndex(final UUID uuid) {
-        if (CURR_INDICES.get(uuid) != null) {
-            return CURR_INDICES.get(uuid);
-        } else {
-            AnnotationIndex ret = new AnnotationRoot();
-            CURR_INDICES.put(uuid, ret);
-            return ret;
+    public static AnnotationIndex createIndex(final UUID uuid, final TypeSystem typeSystem) {
+        return createIndex(uuid, typeSystem, null);
+    }
+
+    /**
+     * @param owner The CAS view the index is for, or null if unknown
+     */
+    private static AnnotationIndex createIndex(final UUID uuid, final TypeSystem typeSystem, final CAS owner) {
+        AnnotationIndex ret = CURR_INDICES.get(uuid);
+        if (ret == null) {
+            ret = CURR_INDICES.register(uuid, newIndex(typeSystem, typeOrder(owner)), owner);
         }
+        return ret;
     }
 
     /**
@@ -68,6 +104,32 @@ public class AnnotationIndices {
         }
     }
 
+    /**
+     * @param typeOrder The type priorities of the CAS the index is for, or null if unknown
+     * @return A new, empty index of the implementation and tuning selected by the agent options
+     */
+    private static AnnotationIndex newIndex(TypeSystem typeSystem, LinearTypeOrder typeOrder) {
+        AgentOptions options = AgentOptions.current();
+        return options.getIndexImplementation().create(typeSystem, typeOrder, options);
+    }
+
+    /**
+     * @param cas A CAS, or null
+     * @return The type priorities the annotation indexes of the CAS are ordered by, or null if unknown
+     */
+    private static LinearTypeOrder typeOrder(CAS cas) {
+        if (!(cas instanceof CASMgr)) {
+            return null;
+        }
+        try {
+            return ((CASMgr) cas).getIndexRepositoryMgr().getDefaultTypeOrder();
+        } catch (RuntimeException e) {
+            UIMAAgent.LOGGER.log(Level.WARNING, "Could not get type priorities of CAS, annotations of distinct types "
+                    + "sharing a span will be ordered by type name", e);
+            return null;
+        }
+    }
+
     /**
      * Not thread-safe: convenience method to get an AnnotationIndex associated with a CAS object
      *
@@ -78,6 +140,128 @@ public class AnnotationIndices {
      */
     @Contract("_, true -> !null")
     public static AnnotationIndex getForCas(final JCas cas, boolean createNew) {
+        // Fast path: the index is attached directly to the CAS view
+        CAS view = cas.getCas();
+        RegisteredAnnotationIndex recycled = null;
+        if (view instanceof AnnotationIndexHolder) {
+            AnnotationIndex attached = ((AnnotationIndexHolder) view).getUimaAgentAnnotationIndex();
+            if (attached != null) {
+                if (!isRecycled(attached)) {
+                    CURR_INDICES.touch(attached);
+                    return attached;
+                }
+                recycled = (RegisteredAnnotationIndex) attached;
+            }
+        }
+        AnnotationIndex ret = getForMetadata(cas, createNew, recycled);
+        if (ret != null && view instanceof AnnotationIndexHolder) {
+            ((AnnotationIndexHolder) view).setUimaAgentAnnotationIndex(ret);
+        }
+        return ret;
+    }
+
+    /**
+     * Not thread-safe: convenience method to get an AnnotationIndex associated with a CAS object
+     *
+     * @param cas       The CAS to retrieve an AnnotationIndex for
+     * @param createNew Whether to create a new annotation index if one does not already exist
+     * @return The AnnotationIndex associated with this cas, if it exists, otherwise
+     * instantiates new index and returns if createNew is true, or returns null
+     * @throws CASException If the index is not attached to the CAS and its JCas cannot be obtained
+     */
+    @Contract("_, true -> !null")
+    public static AnnotationIndex getForCas(final CAS cas, boolean createNew) throws CASException {
+        if (cas instanceof AnnotationIndexHolder) {
+            AnnotationIndex attached = ((AnnotationIndexHolder) cas).getUimaAgentAnnotationIndex();
+            if (attached != null && !isRecycled(attached)) {
+                CURR_INDICES.touch(attached);
+                return attached;
+            }
+        }
+        return getForCas(cas.getJCas(), createNew);
+    }
+
+    /**
+     * @return Whether the index attached to a CAS view was recycled by a reset of the view, and is yet to be refilled
+     * with its new contents
+     */
+    private static boolean isRecycled(AnnotationIndex attached) {
+        return attached instanceof RegisteredAnnotationIndex && ((RegisteredAnnotationIndex) attached).isRecycled();
+    }
+
+    /**
+     * Retrieves the index by the UID stored in the {@link PerformanceMetadata} of a CAS, which is retained across
+     * serialization unlike the index attached to the CAS object itself
+     *
+     * @param recycled The recycled index attached to the CAS view, whose storage is to be reused should a new index be
+     *                 populated, or null if none
+     */
+    private static AnnotationIndex getForMetadata(final JCas cas, boolean createNew,
+                                                  RegisteredAnnotationIndex recycled) {
+        PerformanceMetadata meta = getMetadata(cas);
+        if (meta == null) {
+            if (!createNew) {
+                return null;
+            }
+            UUID uid = UUID.randomUUID();
+            meta = new PerformanceMetadata(cas);
+            meta.setUidLeastSig(uid.getLeastSignificantBits());
+            meta.setUidMostSig(uid.getMostSignificantBits());
+            meta.addToIndexes();
+            // Populate because low-level cas deserializers may have not been instrumented
+            return populate(cas, uid, recycled);
+        } else {
+            long leastSig = meta.getUidLeastSig();
+            long mostSig = meta.getUidMostSig();
+            UUID retrievalUID = new UUID(mostSig, leastSig);
+            AnnotationIndex ret = forUID(retrievalUID);
+            if (ret == null && createNew) {
+                // Released by the registry while the CAS was still in use
+                ret = populate(cas, retrievalUID, recycled);
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * Creates and registers an index under the given UID populated with the current contents of a CAS view
+     *
+     * @param recycled A recycled index whose storage to populate rather than that of a new index, or null if none
+     */
+    private static AnnotationIndex populate(final JCas cas, final UUID uid, RegisteredAnnotationIndex recycled) {
+        AnnotationIndex ret;
+        if (recycled == null) {
+            ret = createIndex(uid, cas.getTypeSystem(), cas.getCas());
+        } else {
+            // Still registered under the UID of the metadata discarded by the reset
+            CURR_INDICES.deregister(recycled);
+            ret = CURR_INDICES.register(uid, recycled.getIndex(), cas.getCas());
+        }
+        String text = cas.getDocumentText();
+        if (text != null) {
+            ret.grow(text.length());
+        }
+        ret.insertAll(contents(cas.getCas()));
+        return ret;
+    }
+
+    /**
+     * Reads the annotations of a CAS view from its UIMA annotation index rather than through
+     * {@link JCasUtil#select(JCas, Class)}, which may itself be redirected to the agent index being populated
+     *
+     * @param view The CAS view to read
+     * @return The annotations indexed in the view, in index order
+     */
+    private static List<AnnotationFS> contents(final CAS view) {
+        FSIterator<AnnotationFS> it = view.getAnnotationIndex().iterator();
+        List<AnnotationFS> ret = new ArrayList<AnnotationFS>();
+        while (it.hasNext()) {
+            ret.add(it.next());
+        }
+        return ret;
+    }
+
+    private static PerformanceMetadata getMetadata(final JCas cas) {
         // We actually can't use selectSingle here because it.....throws an exception (lol) if not exactly one
         // and the cost of throwing/catching exception is significant...
         // so instead we duplicate code from CasUtil#selectSingle.
@@ -93,27 +277,234 @@ public class AnnotationIndices {
         if (iterator.hasNext()) {
             UIMAAgent.LOGGER.log(Level.SEVERE, "Multiple performance metadata associated with cas, this may lead to undefined behaviour and should never happen!");
         }
+        return meta;
+    }
 
-        if (meta == null) {
-            if (!createNew) {
-                return null;
+    /**
+     * Not thread-safe: replaces the Annotation Indexes of every view of a CAS whose contents were loaded wholesale,
+     * e.g. by deserialization or copying, with indexes built from its current contents. Unless disabled by the agent
+     * options, indexes are built in the background, with the first operation on an index waiting for its build to
+     * complete
+     *
+     * @param cas Any view of the CAS to reindex
+     * @throws CASException If the JCas of a view cannot be obtained
+     */
+    public static void rebuildIndexes(final CAS cas) throws CASException {
+        Iterator<CAS> views = cas.getViewIterator();
+        while (views.hasNext()) {
+            rebuildIndex(views.next().getJCas());
+        }
+    }
+
+    /**
+     * Not thread-safe: replaces the Annotation Index of a CAS view with one built, in the background unless disabled by
+     * the agent options, from its current contents, or restored from the index persisted when the CAS was serialized if
+     * there is one, see {@link #persistIndexes(CAS)}. Any existing index or metadata of the view is discarded, as metadata may have been loaded along with
+     * the contents and refer to the index of another CAS
+     *
+     * @param cas The CAS view to reindex
+     */
+    public static void rebuildIndex(final JCas cas) {
+        CAS view = cas.getCas();
+        AnnotationIndex attached = null;
+        if (view instanceof AnnotationIndexHolder) {
+            attached = ((AnnotationIndexHolder) view).getUimaAgentAnnotationIndex();
+            ((AnnotationIndexHolder) view).setUimaAgentAnnotationIndex(null);
+        }
+        PerformanceMetadata meta;
+        UUID loadedUid = null;
+        while ((meta = getMetadata(cas)) != null) {
+            loadedUid = new UUID(meta.getUidMostSig(), meta.getUidLeastSig());
+            meta.removeFromIndexes();
+        }
+        // Only discard the registered index if it is this view's own rather than that of a CAS the metadata came from
+        if (attached != null) {
+            CURR_INDICES.deregister(attached);
+            attached.clear();
+        }
+        UUID uid = UUID.randomUUID();
+        meta = new PerformanceMetadata(cas);
+        meta.setUidLeastSig(uid.getLeastSignificantBits());
+        meta.setUidMostSig(uid.getMostSignificantBits());
+        meta.addToIndexes();
+        final TypeSystem typeSystem = cas.getTypeSystem();
+        final LinearTypeOrder typeOrder = typeOrder(view);
+        final String text = cas.getDocumentText();
+        AnnotationIndex persisted = loadIndex(view, loadedUid, typeSystem, typeOrder, text);
+        if (persisted != null) {
+            register(uid, persisted, view);
+            return;
+        }
+        // The CAS may be used as soon as this returns, so its contents are collected here rather than by the build
+        final List<AnnotationFS> contents = contents(view);
+        Callable<AnnotationIndex> build = new Callable<AnnotationIndex>() {
+            @Override
+            public AnnotationIndex call() {
+                AnnotationIndex index = newIndex(typeSystem, typeOrder);
+                if (text != null) {
+                    index.grow(text.length());
+                }
+                index.insertAll(contents);
+                index.flush();
+                return index;
             }
-            UUID uid = UUID.randomUUID();
-            meta = new PerformanceMetadata(cas);
-            meta.setUidLeastSig(uid.getLeastSignificantBits());
-            meta.setUidMostSig(uid.getMostSignificantBits());
-            meta.addToIndexes();
-            // Populate because low-level cas deserializers may have not been instrumented
-            AnnotationIndex ret = createIndex(uid);
-            for (Annotation ann : JCasUtil.select(cas, Annotation.class)) {
-                ret.insert(ann);
+        };
+        AnnotationIndex ret;
+        if (AgentOptions.current().isBackgroundBuild()) {
+            ret = new DeferredAnnotationIndex(build, IndexBuildPool.executor());
+        } else {
+            try {
+                ret = build.call();
+            } catch (Exception e) {
+                UIMAAgent.LOGGER.log(Level.SEVERE, "Could not build annotation index!", e);
+                throw new RuntimeException("Fatal error, please check logs: ", e);
             }
-            return ret;
+        }
+        register(uid, ret, view);
+    }
+
+    /**
+     * Registers an index under the given UID and attaches it to its CAS view
+     */
+    private static void register(UUID uid, AnnotationIndex index, CAS view) {
+        AnnotationIndex registered = CURR_INDICES.register(uid, index, view);
+        if (view instanceof AnnotationIndexHolder) {
+            ((AnnotationIndexHolder) view).setUimaAgentAnnotationIndex(registered);
+        }
+    }
+
+    /**
+     * @param view       The loaded CAS view
+     * @param uid        The UID of the index the view was serialized with, or null if none
+     * @param typeSystem The type system of the view
+     * @param typeOrder  The type priorities of the view, or null if unknown
+     * @param text       The document text of the view, or null if none
+     * @return The index persisted for the view when it was serialized, if persistence is enabled and the persisted
+     * index matches the view, null otherwise. The persisted index is deleted once read, as the view is given an index
+     * UID of its own and so persists under a new file when next serialized
+     */
+    private static AnnotationIndex loadIndex(CAS view, UUID uid, TypeSystem typeSystem, LinearTypeOrder typeOrder,
+                                             String text) {
+        File dir = AgentOptions.current().getIndexPersistDir();
+        if (dir == null || uid == null) {
+            return null;
+        }
+        File file = indexFile(dir, uid);
+        if (!file.isFile()) {
+            return null;
+        }
+        AnnotationIndex ret = newIndex(typeSystem, typeOrder);
+        if (text != null) {
+            ret.grow(text.length());
+        }
+        try {
+            boolean loaded = IndexFile.load(file, uid, view, ret);
+            // Not read again whether or not it matched, so deleted rather than left to accumulate
+            if (!file.delete()) {
+                UIMAAgent.LOGGER.log(Level.FINE, "Could not delete persisted annotation index " + file);
+            }
+            if (loaded) {
+                return ret;
+            }
+            UIMAAgent.LOGGER.log(Level.FINE, "Persisted annotation index " + file + " does not match the loaded CAS, "
+                    + "rebuilding");
+        } catch (IOException e) {
+            UIMAAgent.LOGGER.log(Level.WARNING, "Could not read persisted annotation index " + file + ", rebuilding", e);
+        }
+        return null;
+    }
+
+    private static File indexFile(File dir, UUID uid) {
+        return new File(dir, uid + ".idx");
+    }
+
+    /**
+     * Not thread-safe: if enabled by the {@code index.persistDir} agent option, writes the Annotation Indexes of every
+     * view of a CAS to that directory, keyed by the UID of each index, so that they may be restored rather than rebuilt
+     * when the CAS is deserialized. Only meaningful for CASes serialized in a form that preserves feature structure
+     * addresses, as persisted indexes not matching a deserialized CAS are discarded. Each persisted index is deleted
+     * by the first deserialization reading it, while those of CASes never deserialized are left in place
+     *
+     * @param cas Any view of the CAS being serialized
+     * @throws CASException If the JCas of a view cannot be obtained
+     */
+    public static void persistIndexes(final CAS cas) throws CASException {
+        File dir = AgentOptions.current().getIndexPersistDir();
+        if (dir == null) {
+            return;
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            UIMAAgent.LOGGER.log(Level.WARNING, "Could not create annotation index directory " + dir);
+            return;
+        }
+        Iterator<CAS> views = cas.getViewIterator();
+        while (views.hasNext()) {
+            JCas view = views.next().getJCas();
+            PerformanceMetadata meta = getMetadata(view);
+            AnnotationIndex index = getForCas(view, false);
+            if (meta == null || index == null) {
+                continue;
+            }
+            UUID uid = new UUID(meta.getUidMostSig(), meta.getUidLeastSig());
+            try {
+                IndexFile.write(index, view.getCas(), uid, indexFile(dir, uid));
+            } catch (IOException e) {
+                UIMAAgent.LOGGER.log(Level.WARNING, "Could not persist annotation index " + uid, e);
+            }
+        }
+    }
+
+    /**
+     * Not thread-safe: releases the Annotation Indexes of every view of a CAS being reset, as a reset through any one
+     * view resets them all. UIMA keeps view objects across resets, so that an index left attached to any of them would
+     * otherwise answer queries about the next document with the annotations of the last. Indexes are emptied for reuse
+     * if the {@code index.recycle} agent option is set, and removed otherwise
+     *
+     * @param cas Any view of the CAS being reset
+     * @throws CASException If the JCas of a view cannot be obtained
+     */
+    public static void resetIndexes(final CAS cas) throws CASException {
+        boolean recycle = AgentOptions.current().isRecycleIndexes();
+        // The base CAS holds no annotations and is not itself a view
+        boolean released = cas.getViewName() == null;
+        Iterator<CAS> views = cas.getViewIterator();
+        while (views.hasNext()) {
+            CAS view = views.next();
+            released |= view == cas;
+            resetIndex(view.getJCas(), recycle);
+        }
+        if (!released) {
+            resetIndex(cas.getJCas(), recycle);
+        }
+    }
+
+    private static void resetIndex(JCas view, boolean recycle) {
+        if (recycle) {
+            recycleIndex(view);
         } else {
-            long leastSig = meta.getUidLeastSig();
-            long mostSig = meta.getUidMostSig();
-            UUID retrievalUID = new UUID(mostSig, leastSig);
-            return forUID(retrievalUID);
+            removeIndex(view);
+        }
+    }
+
+    /**
+     * Not thread-safe: empties the Annotation Index attached to a CAS view being reset while keeping it attached, so
+     * that the next document processed in the CAS reuses its storage rather than allocating a new index. As with an
+     * index removed by {@link #removeIndex(JCas)}, the index is filled from the contents of the view on its next
+     * retrieval, as these may have been indexed without going through the agent, e.g. the document annotation created
+     * by {@link CAS#setDocumentText(String)}. If no index is attached, any tracked index is removed
+     *
+     * @param cas The CAS view being reset
+     */
+    public static void recycleIndex(JCas cas) {
+        CAS view = cas.getCas();
+        AnnotationIndex attached = null;
+        if (view instanceof AnnotationIndexHolder) {
+            attached = ((AnnotationIndexHolder) view).getUimaAgentAnnotationIndex();
+        }
+        if (attached instanceof RegisteredAnnotationIndex) {
+            ((RegisteredAnnotationIndex) attached).recycleForRefill();
+        } else {
+            removeIndex(cas);
         }
     }
 
@@ -123,7 +514,16 @@ public class AnnotationIndices {
      * @param cas The cas associated with the index to remove
      */
     public static void removeIndex(JCas cas) {
-        PerformanceMetadata meta = JCasUtil.selectSingle(cas, PerformanceMetadata.class);
+        CAS view = cas.getCas();
+        if (view instanceof AnnotationIndexHolder) {
+            AnnotationIndex attached = ((AnnotationIndexHolder) view).getUimaAgentAnnotationIndex();
+            ((AnnotationIndexHolder) view).setUimaAgentAnnotationIndex(null);
+            // A recycled index remains registered under the UID of metadata since discarded by the reset
+            if (attached != null && CURR_INDICES.deregister(attached)) {
+                attached.clear();
+            }
+        }
+        PerformanceMetadata meta = getMetadata(cas);
         if (meta != null) {
             long leastSig = meta.getUidLeastSig();
             long mostSig = meta.getUidMostSig();
@@ -0,0 +1,158 @@
+package edu.mayo.bsi.uima.perf;
+
+import org.cliffc.high_scale_lib.NonBlockingHashMap;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides, by the class calling an accelerated uimaFIT method, whether the call is redirected to the annotation index
+ * or left to the original implementation.
+ * <p>
+ * Rules are package or class name prefixes, matching at package or nested class boundaries (i.e. {@code org.foo}
+ * matches {@code org.foo.Bar} but not {@code org.foobar.Baz}). The most specific matching rule applies, with deny
+ * rules taking precedence over equally specific allow rules. Callers matching no rule are redirected only if there are
+ * no allow rules.
+ * <p>
+ * Without any rules, which is the default, no caller lookup takes place. Otherwise each intercepted call inspects the
+ * call stack, so rules should only be used to work around incompatibilities
+ */
+public final class CallerFilter {
+    // Frames of the agent, of uimaFIT itself and of intercepted UIMA indexes between the caller and the decision
+    private static final String[] SKIPPED_PREFIXES = {CallerFilter.class.getName(),
+            "edu.mayo.bsi.uima.perf.interceptors.", "org.apache.uima.fit.util.",
+            "org.apache.uima.cas.impl.AnnotationIndexImpl"};
+    private static final CallerResolver RESOLVER = createResolver();
+
+    private final String[] allow;
+    private final String[] deny;
+    private final Map<String, Boolean> decisions = new NonBlockingHashMap<String, Boolean>();
+
+    /**
+     * @param allow The prefixes of callers to redirect
+     * @param deny  The prefixes of callers not to redirect
+     */
+    public CallerFilter(List<String> allow, List<String> deny) {
+        this.allow = allow.toArray(new String[allow.size()]);
+        this.deny = deny.toArray(new String[deny.size()]);
+    }
+
+    /**
+     * @return Whether the filter has no rules, i.e. redirects every caller
+     */
+    public boolean isEmpty() {
+        return allow.length == 0 && deny.length == 0;
+    }
+
+    /**
+     * Thread-safe: decides for the current call of an accelerated method, to be called from its interceptor
+     *
+     * @return Whether the current call should be redirected to the annotation index
+     */
+    public static boolean redirectCurrentCall() {
+        CallerFilter filter = AgentOptions.current().getCallerFilter();
+        if (filter.isEmpty()) {
+            return true;
+        }
+        String caller = currentCaller();
+        return caller == null || filter.redirects(caller);
+    }
+
+    /**
+     * Inspects the call stack, to be called from the interceptor of an accelerated method
+     *
+     * @return The name of the class calling the accelerated method, or null if it cannot be determined
+     */
+    public static String currentCaller() {
+        return RESOLVER.caller();
+    }
+
+    /**
+     * @param className The fully qualified name of the calling class
+     * @return Whether calls from the given class should be redirected
+     */
+    public boolean redirects(String className) {
+        Boolean ret = decisions.get(className);
+        if (ret == null) {
+            int allowMatch = longestMatch(allow, className);
+            int denyMatch = longestMatch(deny, className);
+            if (allowMatch < 0 && denyMatch < 0) {
+                ret = allow.length == 0;
+            } else {
+                ret = allowMatch > denyMatch;
+            }
+            decisions.put(className, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * @return The length of the longest rule matching the class name, or -1 if none do
+     */
+    private static int longestMatch(String[] rules, String className) {
+        int ret = -1;
+        for (String rule : rules) {
+            if (rule.length() > ret && className.startsWith(rule) && (className.length() == rule.length()
+                    || className.charAt(rule.length()) == '.' || className.charAt(rule.length()) == '$')) {
+                ret = rule.length();
+            }
+        }
+        return ret;
+    }
+
+    private static boolean skipped(String className) {
+        if (className.contains("$auxiliary$")) {
+            // ByteBuddy generated super call proxies
+            return true;
+        }
+        for (String prefix : SKIPPED_PREFIXES) {
+            if (className.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static CallerResolver createResolver() {
+        try {
+            return new ClassContextResolver();
+        } catch (SecurityException e) {
+            // Creating a security manager is not permitted by the installed one
+            return new StackTraceResolver();
+        }
+    }
+
+    private interface CallerResolver {
+        /**
+         * @return The name of the class calling into uimaFIT, or null if it cannot be determined
+         */
+        String caller();
+    }
+
+    /**
+     * Uses the call stack exposed to security managers, as it does not require filling in a full stack trace
+     */
+    private static final class ClassContextResolver extends SecurityManager implements CallerResolver {
+        @Override
+        public String caller() {
+            for (Class<?> frame : getClassContext()) {
+                if (!skipped(frame.getName())) {
+                    return frame.getName();
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class StackTraceResolver implements CallerResolver {
+        @Override
+        public String caller() {
+            for (StackTraceElement frame : new Throwable().getStackTrace()) {
+                if (!skipped(frame.getClassName())) {
+                    return frame.getClassName();
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package edu.mayo.bsi.uima.perf;
+
+import edu.mayo.bsi.uima.perf.structures.AnnotationIndex;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.text.AnnotationFS;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+
+/**
+ * An {@link AnnotationIndex} that is being built in the background. The first operation on it waits for the build to
+ * complete, after which all operations are forwarded to the built index.
+ * <p>
+ * Waiting for the build is thread-safe, so that instances are as safe for concurrent queries as the index built. Like
+ * any other {@link AnnotationIndex}, instances are otherwise not thread-safe
+ */
+class DeferredAnnotationIndex implements AnnotationIndex {
+    private final Callable<AnnotationIndex> build;
+    // Volatile as read by the monitoring methods and concurrent queries, which may be made from other threads. The
+    // index is set before the future is cleared, so that a thread observing the latter also observes the former
+    private volatile Future<AnnotationIndex> future;
+    private volatile AnnotationIndex index;
+
+    /**
+     * @param build    The task building the index. It must not access the CAS, which may be in concurrent use
+     * @param executor The executor to build the index on
+     */
+    DeferredAnnotationIndex(Callable<AnnotationIndex> build, ExecutorService executor) {
+        this.build = build;
+        try {
+            this.future = executor.submit(build);
+        } catch (RejectedExecutionException e) {
+            UIMAAgent.LOGGER.log(Level.WARNING, "Background index build rejected, index will be built on first use", e);
+            this.future = null;
+        }
+    }
+
+    private AnnotationIndex index() {
+        if (index == null) {
+            Future<AnnotationIndex> pending = future;
+            if (pending != null) {
+                try {
+                    index = pending.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    UIMAAgent.LOGGER.log(Level.WARNING, "Interrupted waiting for background index build, building in place");
+                } catch (ExecutionException e) {
+                    UIMAAgent.LOGGER.log(Level.SEVERE, "Background index build failed, building in place", e.getCause());
+                }
+                future = null;
+            }
+            if (index == null) {
+                try {
+                    index = build.call();
+                } catch (Exception e) {
+                    UIMAAgent.LOGGER.log(Level.SEVERE, "Could not build annotation index!", e);
+                    throw new RuntimeException("Fatal error, please check logs: ", e);
+                }
+            }
+        }
+        return index;
+    }
+
+    @Override
+    public void insert(AnnotationFS ann) {
+        index().insert(ann);
+    }
+
+    @Override
+    public void insertAll(Collection<? extends AnnotationFS> anns) {
+        index().insertAll(anns);
+    }
+
+    @Override
+    public void remove(AnnotationFS ann) {
+        index().remove(ann);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getCovering(int start, int end, Class<T> clazz) {
+        return index().getCovering(start, end, clazz);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getCovered(int start, int end, Class<T> clazz) {
+        return index().getCovered(start, end, clazz);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getCovered(AnnotationFS coveringAnnotation, Class<T> clazz) {
+        return index().getCovered(coveringAnnotation, clazz);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getCollisions(int start, int end, Class<T> clazz) {
+        return index().getCollisions(start, end, clazz);
+    }
+
+    @Override
+    public <T extends AnnotationFS, S extends AnnotationFS> Map<T, Collection<S>> indexCovered(Class<? extends T> type, Class<? extends S> coveredType) {
+        return index().indexCovered(type, coveredType);
+    }
+
+    @Override
+    public <T extends AnnotationFS, S extends AnnotationFS> Map<T, Collection<S>> indexCovering(Class<? extends T> type, Class<? extends S> coveringType) {
+        return index().indexCovering(type, coveringType);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getPreceding(Type type, AnnotationFS anchor, int count) {
+        return index().getPreceding(type, anchor, count);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getFollowing(Type type, AnnotationFS anchor, int count) {
+        return index().getFollowing(type, anchor, count);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getBetween(Type type, AnnotationFS first, AnnotationFS second) {
+        return index().getBetween(type, first, second);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getAll(Type type) {
+        return index().getAll(type);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getAt(Type type, int begin, int end) {
+        return index().getAt(type, begin, end);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getSubiterated(Type type, AnnotationFS bound, boolean ambiguous,
+                                                           boolean strict) {
+        return index().getSubiterated(type, bound, ambiguous, strict);
+    }
+
+    @Override
+    public boolean containsCovered(Type type, AnnotationFS coveringAnnotation) {
+        return index().containsCovered(type, coveringAnnotation);
+    }
+
+    @Override
+    public void grow(int size) {
+        index().grow(size);
+    }
+
+    @Override
+    public void flush() {
+        index().flush();
+    }
+
+    @Override
+    public void clear() {
+        index().clear();
+    }
+
+    @Override
+    public void recycle() {
+        index().recycle();
+    }
+
+    @Override
+    public int size() {
+        AnnotationIndex built = built();
+        return built == null ? 0 : built.size();
+    }
+
+    @Override
+    public long estimateMemory() {
+        AnnotationIndex built = built();
+        return built == null ? 0 : built.estimateMemory();
+    }
+
+    /**
+     * @return The built index if the build has completed, otherwise null, without waiting for it
+     */
+    private AnnotationIndex built() {
+        AnnotationIndex ret = index;
+        if (ret == null) {
+            Future<AnnotationIndex> pending = future;
+            if (pending != null && pending.isDone() && !pending.isCancelled()) {
+                try {
+                    ret = pending.get();
+                } catch (Exception ignored) {
+                    // Reported by the thread using the index
+                }
+            }
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,60 @@
+package edu.mayo.bsi.uima.perf;
+
+import edu.mayo.bsi.uima.perf.structures.AnnotationIndex;
+import edu.mayo.bsi.uima.perf.structures.AnnotationRoot;
+import edu.mayo.bsi.uima.perf.structures.CachingAnnotationIndex;
+import edu.mayo.bsi.uima.perf.structures.ConcurrentAnnotationIndex;
+import edu.mayo.bsi.uima.perf.structures.TiledAnnotationIndex;
+import org.apache.uima.cas.TypeSystem;
+import org.apache.uima.cas.admin.LinearTypeOrder;
+
+/**
+ * The {@link AnnotationIndex} implementations that can be selected through the {@code index} agent option
+ */
+public enum IndexImplementation {
+    /**
+     * Per-type flat interval trees, see {@link AnnotationRoot}, queried through immutable copies if the index is to be
+     * read concurrently, see {@link ConcurrentAnnotationIndex}
+     */
+    TREE {
+        @Override
+        AnnotationIndex createIndex(TypeSystem typeSystem, LinearTypeOrder typeOrder, AgentOptions options) {
+            if (options.isConcurrentReads()) {
+                return new ConcurrentAnnotationIndex(typeSystem, typeOrder, options.getLeafSize(),
+                        options.getInitialCapacity(), options.getParallelThreshold());
+            }
+            return new AnnotationRoot(typeSystem, typeOrder, options.getLeafSize(), options.getInitialCapacity(),
+                    options.getParallelThreshold());
+        }
+    },
+    /**
+     * Per-tile flat interval trees over fixed-size blocks of the document, see {@link TiledAnnotationIndex}, for very
+     * long documents. Not supported for concurrent reads
+     */
+    TILED {
+        @Override
+        AnnotationIndex createIndex(TypeSystem typeSystem, LinearTypeOrder typeOrder, AgentOptions options) {
+            return new TiledAnnotationIndex(typeSystem, typeOrder, options.getTileSize(), options.getLeafSize(),
+                    options.getInitialCapacity(), options.getParallelThreshold());
+        }
+    };
+
+    /**
+     * @param typeSystem The type system of the CAS the index is for
+     * @param typeOrder  The type priorities of the CAS the index is for, or null if unknown
+     * @param options    The agent options, for implementation-specific tuning
+     * @return A new, empty index, caching query results if configured to
+     */
+    public AnnotationIndex create(TypeSystem typeSystem, LinearTypeOrder typeOrder, AgentOptions options) {
+        AnnotationIndex ret = createIndex(typeSystem, typeOrder, options);
+        if (options.getQueryCacheSize() > 0) {
+            ret = new CachingAnnotationIndex(ret, options.getQueryCacheSize());
+        }
+        return ret;
+    }
+
+    /**
+     * @return A new, empty index of this implementation
+     */
+    abstract AnnotationIndex createIndex(TypeSystem typeSystem, LinearTypeOrder typeOrder, AgentOptions options);
+}
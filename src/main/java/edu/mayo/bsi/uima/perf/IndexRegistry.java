@@ -0,0 +1,226 @@
+package edu.mayo.bsi.uima.perf;
+
+import edu.mayo.bsi.uima.perf.structures.AnnotationIndex;
+import org.apache.uima.cas.CAS;
+import org.cliffc.high_scale_lib.NonBlockingHashMap;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Thread-safe: the {@link AnnotationIndex} of each tracked CAS view by the UID of its {@link PerformanceMetadata},
+ * backing {@link AnnotationIndices}.
+ * <p>
+ * By default, indexes are held until their CAS is reset. With the {@code registry.weak} agent option set, indexes
+ * attached to their CAS view are instead only held by that view, and deregistered in the background once it is garbage
+ * collected, so that CASes dropped without being reset do not leak their index.
+ * <p>
+ * With the {@code registry.maxAnnotations} or {@code registry.maxBytes} agent options set, the least recently used
+ * indexes are additionally released in the background whenever the tracked indexes exceed either cap. Released indexes
+ * are deregistered and detached from their CAS view, but not cleared as they may be in use, and are rebuilt from the
+ * contents of the CAS should it be queried again. The most recently used index is never released, so that a single CAS
+ * exceeding a cap is not rebuilt over and over
+ */
+final class IndexRegistry {
+    private static final long MAINTENANCE_INTERVAL_MILLIS = 1000;
+
+    private final ConcurrentMap<UUID, Registration> entries = new NonBlockingHashMap<UUID, Registration>();
+    private final ReferenceQueue<RegisteredAnnotationIndex> collected = new ReferenceQueue<RegisteredAnnotationIndex>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final boolean weak;
+    private final long maxAnnotations;
+    private final long maxBytes;
+    // Coarse clock for least recently used tracking, advanced by each maintenance run so that retrievals only write to
+    // an index once per run
+    private volatile long clock;
+
+    IndexRegistry(AgentOptions options) {
+        this.weak = options.isWeakRegistry();
+        this.maxAnnotations = options.getMaxIndexedAnnotations();
+        this.maxBytes = options.getMaxIndexBytes();
+        if (weak || isBounded()) {
+            Thread maintenance = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    maintain();
+                }
+            }, "UIMA-Agent-Index-Registry");
+            maintenance.setDaemon(true);
+            maintenance.start();
+        }
+    }
+
+    private boolean isBounded() {
+        return maxAnnotations > 0 || maxBytes > 0;
+    }
+
+    /**
+     * @param uid   The UID to register the index under, replacing any index already registered under it
+     * @param index The index to register
+     * @param owner The CAS view the index belongs to and is to be attached to, or null if unknown, in which case the
+     *              index is held until removed even if registering weakly
+     * @return The registered index, which is to be used, and attached to the CAS view, in place of the given one
+     */
+    RegisteredAnnotationIndex register(UUID uid, AnnotationIndex index, CAS owner) {
+        RegisteredAnnotationIndex ret = new RegisteredAnnotationIndex(index, uid, owner, sequence.incrementAndGet(),
+                clock);
+        // Weakly held indexes are only reachable through the CAS view they are attached to
+        boolean strong = !weak || !(owner instanceof AnnotationIndexHolder);
+        entries.put(uid, new Registration(ret, strong ? null : collected, strong));
+        return ret;
+    }
+
+    /**
+     * @param uid The UID the index is registered under
+     * @return The index registered under the given UID, or null if there is none
+     */
+    AnnotationIndex get(UUID uid) {
+        Registration registration = entries.get(uid);
+        return registration == null ? null : registration.get();
+    }
+
+    /**
+     * @param uid The UID the index is registered under
+     * @return The deregistered index, or null if none was registered under the given UID
+     */
+    AnnotationIndex remove(UUID uid) {
+        Registration registration = entries.remove(uid);
+        return registration == null ? null : registration.get();
+    }
+
+    /**
+     * @param index An index as returned by {@link #register(UUID, AnnotationIndex, CAS)}
+     * @return Whether the index was registered, in which case it no longer is
+     */
+    boolean deregister(AnnotationIndex index) {
+        if (!(index instanceof RegisteredAnnotationIndex)) {
+            return false;
+        }
+        UUID uid = ((RegisteredAnnotationIndex) index).getUid();
+        Registration registration = entries.get(uid);
+        return registration != null && registration.get() == index && entries.remove(uid, registration);
+    }
+
+    /**
+     * Records the use of an index, for least recently used release. To be called whenever an index is retrieved
+     *
+     * @param index The retrieved index
+     */
+    void touch(AnnotationIndex index) {
+        if (index instanceof RegisteredAnnotationIndex && isBounded()) {
+            ((RegisteredAnnotationIndex) index).touch(clock);
+        }
+    }
+
+    /**
+     * @return The currently registered indexes
+     */
+    List<AnnotationIndex> indexes() {
+        List<AnnotationIndex> ret = new ArrayList<AnnotationIndex>(entries.size());
+        for (Registration registration : entries.values()) {
+            AnnotationIndex index = registration.get();
+            if (index != null) {
+                ret.add(index);
+            }
+        }
+        return ret;
+    }
+
+    private void maintain() {
+        while (true) {
+            try {
+                Reference<? extends RegisteredAnnotationIndex> ref = collected.remove(MAINTENANCE_INTERVAL_MILLIS);
+                while (ref != null) {
+                    Registration registration = (Registration) ref;
+                    entries.remove(registration.uid, registration);
+                    ref = collected.poll();
+                }
+                clock++;
+                if (isBounded()) {
+                    enforceCaps();
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                UIMAAgent.LOGGER.log(Level.SEVERE, "Error maintaining annotation index registry", e);
+            }
+        }
+    }
+
+    /**
+     * Releases the least recently used indexes until the tracked indexes are within the configured caps
+     */
+    private void enforceCaps() {
+        List<RegisteredAnnotationIndex> indexes = new ArrayList<RegisteredAnnotationIndex>();
+        long annotations = 0;
+        long bytes = 0;
+        for (Registration registration : entries.values()) {
+            RegisteredAnnotationIndex index = registration.get();
+            if (index != null) {
+                indexes.add(index);
+                annotations += index.size();
+                bytes += index.estimateMemory();
+            }
+        }
+        if (!exceedsCaps(annotations, bytes)) {
+            return;
+        }
+        Collections.sort(indexes, new Comparator<RegisteredAnnotationIndex>() {
+            @Override
+            public int compare(RegisteredAnnotationIndex o1, RegisteredAnnotationIndex o2) {
+                if (o1.getLastUsed() != o2.getLastUsed()) {
+                    return o1.getLastUsed() < o2.getLastUsed() ? -1 : 1;
+                }
+                return o1.getSequence() < o2.getSequence() ? -1 : o1.getSequence() == o2.getSequence() ? 0 : 1;
+            }
+        });
+        for (int i = 0; i < indexes.size() - 1 && exceedsCaps(annotations, bytes); i++) {
+            RegisteredAnnotationIndex index = indexes.get(i);
+            annotations -= index.size();
+            bytes -= index.estimateMemory();
+            release(index);
+        }
+    }
+
+    private boolean exceedsCaps(long annotations, long bytes) {
+        return (maxAnnotations > 0 && annotations > maxAnnotations) || (maxBytes > 0 && bytes > maxBytes);
+    }
+
+    /**
+     * Deregisters an index and detaches it from its CAS view, such that it is rebuilt should the view be queried again
+     */
+    private void release(RegisteredAnnotationIndex index) {
+        deregister(index);
+        CAS owner = index.getOwner();
+        if (owner instanceof AnnotationIndexHolder
+                && ((AnnotationIndexHolder) owner).getUimaAgentAnnotationIndex() == index) {
+            ((AnnotationIndexHolder) owner).setUimaAgentAnnotationIndex(null);
+        }
+        UIMAAgent.LOGGER.log(Level.FINE, "Released least recently used annotation index " + index.getUid());
+    }
+
+    /**
+     * A registered index, held either strongly or only weakly, in which case it is enqueued once collected
+     */
+    private static final class Registration extends WeakReference<RegisteredAnnotationIndex> {
+        private final UUID uid;
+        // Set if the index is held strongly
+        private final RegisteredAnnotationIndex index;
+
+        Registration(RegisteredAnnotationIndex index, ReferenceQueue<RegisteredAnnotationIndex> queue,
+                     boolean strong) {
+            super(index, queue);
+            this.uid = index.getUid();
+            this.index = strong ? index : null;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package edu.mayo.bsi.uima.perf;
+
+import edu.mayo.bsi.uima.perf.structures.AnnotationIndex;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.text.AnnotationFS;
+
+import java.lang.ref.WeakReference;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * An {@link AnnotationIndex} as tracked by the {@link IndexRegistry}, forwarding all operations to the index itself
+ * while recording what the registry needs to release it: its UID, the CAS view it is attached to and when it was last
+ * used
+ */
+final class RegisteredAnnotationIndex implements AnnotationIndex {
+    private final AnnotationIndex index;
+    private final UUID uid;
+    private final WeakReference<CAS> owner;
+    private final long sequence;
+    // Registry clock value as of the last retrieval of the index
+    private volatile long lastUsed;
+    // Whether the index was emptied for reuse by a reset of its CAS view, and so no longer reflects the view's contents
+    private boolean recycled;
+
+    /**
+     * @param index    The index to track
+     * @param uid      The UID the index is registered under
+     * @param owner    The CAS view the index belongs to, or null if unknown
+     * @param sequence The registration order of the index, breaking ties in last use
+     * @param clock    The current value of the registry clock
+     */
+    RegisteredAnnotationIndex(AnnotationIndex index, UUID uid, CAS owner, long sequence, long clock) {
+        this.index = index;
+        this.uid = uid;
+        this.owner = owner == null ? null : new WeakReference<CAS>(owner);
+        this.sequence = sequence;
+        this.lastUsed = clock;
+    }
+
+    UUID getUid() {
+        return uid;
+    }
+
+    /**
+     * @return The CAS view the index belongs to, or null if unknown or garbage collected
+     */
+    CAS getOwner() {
+        return owner == null ? null : owner.get();
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    long getLastUsed() {
+        return lastUsed;
+    }
+
+    void touch(long clock) {
+        if (lastUsed != clock) {
+            lastUsed = clock;
+        }
+    }
+
+    /**
+     * @return The tracked index itself
+     */
+    AnnotationIndex getIndex() {
+        return index;
+    }
+
+    boolean isRecycled() {
+        return recycled;
+    }
+
+    /**
+     * Empties the index for reuse, as by {@link #recycle()}, and marks it as to be refilled from the contents of its CAS
+     * view rather than used as is
+     */
+    void recycleForRefill() {
+        index.recycle();
+        recycled = true;
+    }
+
+    @Override
+    public void insert(AnnotationFS ann) {
+        index.insert(ann);
+    }
+
+    @Override
+    public void insertAll(Collection<? extends AnnotationFS> anns) {
+        index.insertAll(anns);
+    }
+
+    @Override
+    public void remove(AnnotationFS ann) {
+        index.remove(ann);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getCovering(int start, int end, Class<T> clazz) {
+        return index.getCovering(start, end, clazz);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getCovered(int start, int end, Class<T> clazz) {
+        return index.getCovered(start, end, clazz);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getCovered(AnnotationFS coveringAnnotation, Class<T> clazz) {
+        return index.getCovered(coveringAnnotation, clazz);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getCollisions(int start, int end, Class<T> clazz) {
+        return index.getCollisions(start, end, clazz);
+    }
+
+    @Override
+    public <T extends AnnotationFS, S extends AnnotationFS> Map<T, Collection<S>> indexCovered(Class<? extends T> type, Class<? extends S> coveredType) {
+        return index.indexCovered(type, coveredType);
+    }
+
+    @Override
+    public <T extends AnnotationFS, S extends AnnotationFS> Map<T, Collection<S>> indexCovering(Class<? extends T> type, Class<? extends S> coveringType) {
+        return index.indexCovering(type, coveringType);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getPreceding(Type type, AnnotationFS anchor, int count) {
+        return index.getPreceding(type, anchor, count);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getFollowing(Type type, AnnotationFS anchor, int count) {
+        return index.getFollowing(type, anchor, count);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getBetween(Type type, AnnotationFS first, AnnotationFS second) {
+        return index.getBetween(type, first, second);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getAll(Type type) {
+        return index.getAll(type);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getAt(Type type, int begin, int end) {
+        return index.getAt(type, begin, end);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getSubiterated(Type type, AnnotationFS bound, boolean ambiguous,
+                                                           boolean strict) {
+        return index.getSubiterated(type, bound, ambiguous, strict);
+    }
+
+    @Override
+    public boolean containsCovered(Type type, AnnotationFS coveringAnnotation) {
+        return index.containsCovered(type, coveringAnnotation);
+    }
+
+    @Override
+    public void grow(int size) {
+        index.grow(size);
+    }
+
+    @Override
+    public void flush() {
+        index.flush();
+    }
+
+    @Override
+    public void clear() {
+        index.clear();
+    }
+
+    @Override
+    public void recycle() {
+        index.recycle();
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    @Override
+    public long estimateMemory() {
+        return index.estimateMemory();
+    }
+}
@@ -1,37 +1,124 @@
 package edu.mayo.bsi.uima.perf;
 
+import edu.mayo.bsi.uima.perf.interceptors.perf.ContainsInterceptor;
+import edu.mayo.bsi.uima.perf.interceptors.perf.IndexCoveredInterceptor;
+import edu.mayo.bsi.uima.perf.interceptors.perf.IndexCoveringInterceptor;
+import edu.mayo.bsi.uima.perf.interceptors.perf.SelectAtInterceptor;
+import edu.mayo.bsi.uima.perf.interceptors.perf.SelectBetweenInterceptor;
 import edu.mayo.bsi.uima.perf.interceptors.perf.SelectCoveredInterceptor;
 import edu.mayo.bsi.uima.perf.interceptors.perf.SelectCoveringInterceptor;
+import edu.mayo.bsi.uima.perf.interceptors.perf.SelectFollowingInterceptor;
+import edu.mayo.bsi.uima.perf.interceptors.perf.SelectInterceptor;
+import edu.mayo.bsi.uima.perf.interceptors.perf.SelectPrecedingInterceptor;
+import edu.mayo.bsi.uima.perf.interceptors.perf.SelectSingleAtInterceptor;
+import edu.mayo.bsi.uima.perf.interceptors.perf.SubiteratorInterceptor;
 import edu.mayo.bsi.uima.perf.interceptors.sync.AddFsToIndexesInterceptor;
 import edu.mayo.bsi.uima.perf.interceptors.sync.CASCleanupInterceptor;
+import edu.mayo.bsi.uima.perf.interceptors.sync.CASDeserializationInterceptor;
+import edu.mayo.bsi.uima.perf.interceptors.sync.CASReinitInterceptor;
+import edu.mayo.bsi.uima.perf.interceptors.sync.CASSerializationInterceptor;
+import edu.mayo.bsi.uima.perf.interceptors.sync.CasCopierInterceptor;
+import edu.mayo.bsi.uima.perf.interceptors.sync.IndexProtectionInterceptor;
 import edu.mayo.bsi.uima.perf.interceptors.sync.RemoveFSFromIndexesInterceptor;
+import edu.mayo.bsi.uima.perf.metrics.AgentMetrics;
+import edu.mayo.bsi.uima.perf.structures.AnnotationIndex;
 import net.bytebuddy.agent.builder.AgentBuilder;
+import net.bytebuddy.description.method.MethodDescription;
+import net.bytebuddy.description.modifier.Visibility;
 import net.bytebuddy.description.type.TypeDescription;
 import net.bytebuddy.dynamic.DynamicType;
+import net.bytebuddy.implementation.FieldAccessor;
 import net.bytebuddy.implementation.MethodDelegation;
+import net.bytebuddy.matcher.ElementMatcher;
 import net.bytebuddy.matcher.ElementMatchers;
 import net.bytebuddy.utility.JavaModule;
 
 import java.lang.instrument.Instrumentation;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class UIMAAgent {
     public static Logger LOGGER = Logger.getLogger("UIMA-Agent");
 
     public static void premain(String arg, Instrumentation inst) {
+        final AgentOptions options = AgentOptions.parse(arg);
+        AgentOptions.setCurrent(options);
+        LOGGER.log(Level.CONFIG, "Agent options: " + options);
+        AgentMetrics.configure(options);
+        if (!options.isAnyIntercepted()) {
+            // Indexes would never be queried, so there is no point in maintaining them either
+            LOGGER.log(Level.INFO, "All interceptions disabled, UIMA will remain uninstrumented");
+            return;
+        }
         new AgentBuilder.Default()
-                // Redefine CASImpl
+                // Redefine CASImpl, attaching an annotation index field to each instance
                 .type(ElementMatchers.named("org.apache.uima.cas.impl.CASImpl"))
                 .transform(new AgentBuilder.Transformer() {
                     @Override
                     public DynamicType.Builder<?> transform(DynamicType.Builder<?> builder, TypeDescription type,
                                                             ClassLoader ignored, JavaModule ignored2) {
-                        return builder.method(ElementMatchers.named("addFsToIndexes"))
+                        return builder.defineField(AnnotationIndexHolder.FIELD_NAME, AnnotationIndex.class,
+                                Visibility.PRIVATE)
+                                .implement(AnnotationIndexHolder.class)
+                                .intercept(FieldAccessor.ofField(AnnotationIndexHolder.FIELD_NAME))
+                                .method(ElementMatchers.named("addFsToIndexes"))
                                 .intercept(MethodDelegation.to(AddFsToIndexesInterceptor.class))
                                 .method(ElementMatchers.named("removeFsFromIndexes"))
                                 .intercept(MethodDelegation.to(RemoveFSFromIndexesInterceptor.class))
                                 .method(ElementMatchers.named("reset"))
-                                .intercept(MethodDelegation.to(CASCleanupInterceptor.class));
+                                .intercept(MethodDelegation.to(CASCleanupInterceptor.class))
+                                .method(ElementMatchers.named("reinit").and(ElementMatchers.isPublic()))
+                                .intercept(MethodDelegation.to(CASReinitInterceptor.class))
+                                .method(ElementMatchers.named("removeFromCorruptableIndexAnyView")
+                                        .and(ElementMatchers.takesArguments(2)))
+                                .intercept(MethodDelegation.to(IndexProtectionInterceptor.class));
+                    }
+                })
+                // Redefine the add back of annotations modified while indexed
+                .type(ElementMatchers.named("org.apache.uima.cas.impl.FSsTobeAddedback$FSsTobeAddedbackSingle")
+                        .or(ElementMatchers.named("org.apache.uima.cas.impl.FSsTobeAddedback$FSsTobeAddedbackMultiple")))
+                .transform(new AgentBuilder.Transformer() {
+                    @Override
+                    public DynamicType.Builder<?> transform(DynamicType.Builder<?> builder, TypeDescription type,
+                                                            ClassLoader ignored, JavaModule ignored2) {
+                        return builder.method(ElementMatchers.named("addback").and(ElementMatchers.isDeclaredBy(type)))
+                                .intercept(MethodDelegation.to(IndexProtectionInterceptor.class));
+                    }
+                })
+                // Redefine CAS deserializers and copier so that indexes are rebuilt as contents are loaded
+                .type(ElementMatchers.named("org.apache.uima.cas.impl.XmiCasDeserializer")
+                        .or(ElementMatchers.named("org.apache.uima.cas.impl.XCASDeserializer")))
+                .transform(new AgentBuilder.Transformer() {
+                    @Override
+                    public DynamicType.Builder<?> transform(DynamicType.Builder<?> builder, TypeDescription type,
+                                                            ClassLoader ignored, JavaModule ignored2) {
+                        return builder.method(ElementMatchers.named("deserialize").and(ElementMatchers.isStatic()))
+                                .intercept(MethodDelegation.to(CASDeserializationInterceptor.class));
+                    }
+                })
+                .type(ElementMatchers.named("org.apache.uima.cas.impl.Serialization"))
+                .transform(new AgentBuilder.Transformer() {
+                    @Override
+                    public DynamicType.Builder<?> transform(DynamicType.Builder<?> builder, TypeDescription type,
+                                                            ClassLoader ignored, JavaModule ignored2) {
+                        DynamicType.Builder<?> ret = builder.method(ElementMatchers.named("deserializeCAS"))
+                                .intercept(MethodDelegation.to(CASDeserializationInterceptor.class));
+                        if (options.getIndexPersistDir() == null) {
+                            return ret;
+                        }
+                        return ret.method(ElementMatchers.named("serializeCAS"))
+                                .intercept(MethodDelegation.to(CASSerializationInterceptor.class));
+                    }
+                })
+                .type(ElementMatchers.named("org.apache.uima.util.CasCopier"))
+                .transform(new AgentBuilder.Transformer() {
+                    @Override
+                    public DynamicType.Builder<?> transform(DynamicType.Builder<?> builder, TypeDescription type,
+                                                            ClassLoader ignored, JavaModule ignored2) {
+                        return builder.method(ElementMatchers.named("copyCas"))
+                                .intercept(MethodDelegation.to(CASDeserializationInterceptor.class))
+                                .method(ElementMatchers.named("copyCasView"))
+                                .intercept(MethodDelegation.to(CasCopierInterceptor.class));
                     }
                 })
                 // Redefine JCasUtil
@@ -40,13 +127,76 @@ public class UIMAAgent {
                     @Override
                     public DynamicType.Builder<?> transform(DynamicType.Builder<?> builder, TypeDescription type,
                                                             ClassLoader ignored, JavaModule ignored2) {
-                        return builder.method(ElementMatchers.named("selectCovered"))
-                                .intercept(MethodDelegation.to(SelectCoveredInterceptor.class))
-                                .method(ElementMatchers.named("selectCovering"))
-                                .intercept(MethodDelegation.to(SelectCoveringInterceptor.class));
+                        DynamicType.Builder<?> ret = builder;
+                        ret = intercept(ret, options, "selectCovered", SelectCoveredInterceptor.class);
+                        ret = intercept(ret, options, "selectCovering", SelectCoveringInterceptor.class);
+                        ret = intercept(ret, options, "indexCovered", IndexCoveredInterceptor.class);
+                        ret = intercept(ret, options, "indexCovering", IndexCoveringInterceptor.class);
+                        ret = intercept(ret, options, "selectPreceding", SelectPrecedingInterceptor.class);
+                        ret = intercept(ret, options, "selectFollowing", SelectFollowingInterceptor.class);
+                        ret = intercept(ret, options, "selectBetween", SelectBetweenInterceptor.class);
+                        // Only select(JCas, Class): the FSArray and FSList overloads do not query the CAS indexes
+                        ret = intercept(ret, options, "select",
+                                ElementMatchers.takesArgument(0, ElementMatchers.named("org.apache.uima.jcas.JCas")),
+                                SelectInterceptor.class);
+                        return intercept(ret, options, "contains", ContainsInterceptor.class);
+                    }
+                })
+                // Redefine CasUtil
+                .type(ElementMatchers.named("org.apache.uima.fit.util.CasUtil"))
+                .transform(new AgentBuilder.Transformer() {
+                    @Override
+                    public DynamicType.Builder<?> transform(DynamicType.Builder<?> builder, TypeDescription type,
+                                                            ClassLoader ignored, JavaModule ignored2) {
+                        DynamicType.Builder<?> ret = builder;
+                        ret = intercept(ret, options, "selectPreceding", SelectPrecedingInterceptor.class);
+                        ret = intercept(ret, options, "selectFollowing", SelectFollowingInterceptor.class);
+                        ret = intercept(ret, options, "selectBetween", SelectBetweenInterceptor.class);
+                        // The JCasUtil overloads of these delegate to CasUtil, and are accelerated through it
+                        ret = intercept(ret, options, "selectAt", SelectAtInterceptor.class);
+                        ret = intercept(ret, options, "selectSingleAt", SelectSingleAtInterceptor.class);
+                        // Only select(CAS, Type): the ArrayFS overload does not query the CAS indexes
+                        return intercept(ret, options, "select",
+                                ElementMatchers.takesArgument(0, ElementMatchers.named("org.apache.uima.cas.CAS")),
+                                SelectInterceptor.class);
+                    }
+                })
+                // Redefine the annotation indexes of the CAS, which legacy annotators iterate over directly
+                .type(ElementMatchers.named("org.apache.uima.cas.impl.AnnotationIndexImpl"))
+                .transform(new AgentBuilder.Transformer() {
+                    @Override
+                    public DynamicType.Builder<?> transform(DynamicType.Builder<?> builder, TypeDescription type,
+                                                            ClassLoader ignored, JavaModule ignored2) {
+                        // subiterator(AnnotationFS) delegates to this overload
+                        return intercept(builder, options, "subiterator", ElementMatchers.takesArguments(3),
+                                SubiteratorInterceptor.class);
                     }
                 })
                 .installOn(inst);
     }
 
+    /**
+     * Intercepts all overloads of an accelerated method, unless disabled by the agent options
+     */
+    private static DynamicType.Builder<?> intercept(DynamicType.Builder<?> builder, AgentOptions options,
+                                                    String method, Class<?> interceptor) {
+        if (!options.isIntercepted(method)) {
+            return builder;
+        }
+        return builder.method(ElementMatchers.named(method)).intercept(MethodDelegation.to(interceptor));
+    }
+
+    /**
+     * Intercepts the overloads of an accelerated method matching the given matcher, unless disabled by the agent options
+     */
+    private static DynamicType.Builder<?> intercept(DynamicType.Builder<?> builder, AgentOptions options,
+                                                    String method, ElementMatcher<? super MethodDescription> overloads,
+                                                    Class<?> interceptor) {
+        if (!options.isIntercepted(method)) {
+            return builder;
+        }
+        return builder.method(ElementMatchers.<MethodDescription>named(method).and(overloads))
+                .intercept(MethodDelegation.to(interceptor));
+    }
+
 }
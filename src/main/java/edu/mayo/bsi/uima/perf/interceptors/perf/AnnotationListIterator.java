@@ -0,0 +1,116 @@
+package edu.mayo.bsi.uima.perf.interceptors.perf;
+
+import org.apache.uima.cas.FSIndex;
+import org.apache.uima.cas.FSIterator;
+import org.apache.uima.cas.FeatureStructure;
+import org.apache.uima.cas.text.AnnotationFS;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * An {@link FSIterator} over a list of annotations in index order, as returned in place of UIMA's subiterators. Moving
+ * past either end invalidates the iterator, and {@link #moveTo(FeatureStructure)} positions it at the first annotation
+ * at or after the given one by the comparator of the index the list was taken from.
+ * <p>
+ * Like UIMA's subiterators, moving an invalid iterator only brings it back onto the list once results are held in list
+ * form, which unambiguous subiterators always are and ambiguous ones are from the first {@link #moveToLast()}.
+ * Otherwise, it has no effect. Unlike them, the list is a snapshot, unaffected by subsequent modifications of the index
+ */
+final class AnnotationListIterator<T extends AnnotationFS> implements FSIterator<T> {
+    private final List<T> list;
+    private final FSIndex<T> index;
+    private int pos;
+    private boolean listForm;
+
+    /**
+     * @param list      The annotations to iterate over, in the order of the given index
+     * @param index     The index the annotations were taken from, for its comparator
+     * @param ambiguous Whether the annotations are those of an ambiguous subiterator
+     */
+    AnnotationListIterator(List<T> list, FSIndex<T> index, boolean ambiguous) {
+        this(list, index, 0, !ambiguous);
+    }
+
+    private AnnotationListIterator(List<T> list, FSIndex<T> index, int pos, boolean listForm) {
+        this.list = list;
+        this.index = index;
+        this.pos = pos;
+        this.listForm = listForm;
+    }
+
+    @Override
+    public boolean isValid() {
+        return pos >= 0 && pos < list.size();
+    }
+
+    @Override
+    public T get() throws NoSuchElementException {
+        if (!isValid()) {
+            throw new NoSuchElementException();
+        }
+        return list.get(pos);
+    }
+
+    @Override
+    public void moveToNext() {
+        if (listForm || isValid()) {
+            pos++;
+        }
+    }
+
+    @Override
+    public void moveToPrevious() {
+        if (listForm || isValid()) {
+            pos--;
+        }
+    }
+
+    @Override
+    public void moveToFirst() {
+        pos = 0;
+    }
+
+    @Override
+    public void moveToLast() {
+        pos = list.size() - 1;
+        listForm = true;
+    }
+
+    @Override
+    public void moveTo(FeatureStructure fs) {
+        int low = 0;
+        int high = list.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (index.compare(list.get(mid), fs) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        pos = low;
+    }
+
+    @Override
+    public FSIterator<T> copy() {
+        return new AnnotationListIterator<T>(list, index, pos, listForm);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return isValid();
+    }
+
+    @Override
+    public T next() {
+        T ret = get();
+        moveToNext();
+        return ret;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
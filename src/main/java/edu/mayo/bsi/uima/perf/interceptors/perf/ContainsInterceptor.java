@@ -0,0 +1,36 @@
+package edu.mayo.bsi.uima.perf.interceptors.perf;
+
+import edu.mayo.bsi.uima.perf.AnnotationIndices;
+import edu.mayo.bsi.uima.perf.metrics.AgentMetrics;
+import edu.mayo.bsi.uima.perf.metrics.InterceptorMetrics;
+import net.bytebuddy.implementation.bind.annotation.Argument;
+import net.bytebuddy.implementation.bind.annotation.SuperCall;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Intercepts calls to {@link org.apache.uima.fit.util.JCasUtil#contains(JCas, AnnotationFS, Class)}
+ * and redirects to {@link edu.mayo.bsi.uima.perf.structures.AnnotationIndex#containsCovered(org.apache.uima.cas.Type, AnnotationFS)}
+ */
+public class ContainsInterceptor {
+    private static final InterceptorMetrics METRICS = AgentMetrics.interceptor("contains");
+
+    // JCasUtil#contains(JCas, AnnotationFS, Class)
+    public static boolean intercept(@SuperCall Callable<Boolean> call, @Argument(0) JCas cas, @Argument(1) AnnotationFS coveringAnnotation, @Argument(2) Class<? extends Annotation> clazz) {
+        long start = METRICS.start();
+        try {
+            if (ShadowVerifier.bypass(METRICS)) {
+                METRICS.fallback();
+                return OriginalCall.call(call);
+            }
+            long sample = ShadowVerifier.sample();
+            return ShadowVerifier.verify(METRICS, call, sample, AnnotationIndices.getForCas(cas, true).containsCovered(JCasUtil.getType(cas, clazz), coveringAnnotation));
+        } finally {
+            METRICS.stop(start);
+        }
+    }
+}
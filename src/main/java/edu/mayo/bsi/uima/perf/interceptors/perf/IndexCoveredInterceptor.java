@@ -1,10 +1,36 @@
 package edu.mayo.bsi.uima.perf.interceptors.perf;
 
+import edu.mayo.bsi.uima.perf.AnnotationIndices;
+import edu.mayo.bsi.uima.perf.metrics.AgentMetrics;
+import edu.mayo.bsi.uima.perf.metrics.InterceptorMetrics;
+import net.bytebuddy.implementation.bind.annotation.Argument;
+import net.bytebuddy.implementation.bind.annotation.SuperCall;
 import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 /**
  * Intercepts calls to {@link org.apache.uima.fit.util.JCasUtil#indexCovered(JCas, Class, Class)},
- * and redirects to TODO
+ * and redirects to {@link edu.mayo.bsi.uima.perf.structures.AnnotationIndex#indexCovered(Class, Class)}
  */
 public class IndexCoveredInterceptor {
+    private static final InterceptorMetrics METRICS = AgentMetrics.interceptor("indexCovered");
+
+    // JCasUtil#indexCovered(JCas, Class, Class)
+    public static <T extends Annotation, S extends Annotation> Map<T, Collection<S>> intercept(@SuperCall Callable<Map<T, Collection<S>>> call, @Argument(0) JCas cas, @Argument(1) Class<? extends T> type, @Argument(2) Class<? extends S> coveredType) {
+        long start = METRICS.start();
+        try {
+            if (ShadowVerifier.bypass(METRICS)) {
+                METRICS.fallback();
+                return OriginalCall.call(call);
+            }
+            long sample = ShadowVerifier.sample();
+            return ShadowVerifier.verify(METRICS, call, sample, AnnotationIndices.getForCas(cas, true).indexCovered(type, coveredType));
+        } finally {
+            METRICS.stop(start);
+        }
+    }
 }
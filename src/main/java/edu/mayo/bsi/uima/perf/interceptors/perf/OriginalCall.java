@@ -0,0 +1,30 @@
+package edu.mayo.bsi.uima.perf.interceptors.perf;
+
+import edu.mayo.bsi.uima.perf.UIMAAgent;
+
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+
+/**
+ * Forwards intercepted calls that are not to be redirected, e.g. as excluded by a
+ * {@link edu.mayo.bsi.uima.perf.CallerFilter}, to the original uimaFIT implementation
+ */
+final class OriginalCall {
+    private OriginalCall() {
+    }
+
+    /**
+     * @param call The original implementation
+     * @return The result of the original implementation. Unchecked exceptions it throws are propagated as is
+     */
+    static <T> T call(Callable<T> call) {
+        try {
+            return call.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            UIMAAgent.LOGGER.log(Level.SEVERE, "Could not forward call to original runnable!", e);
+            throw new RuntimeException("Fatal error, please check logs: ", e);
+        }
+    }
+}
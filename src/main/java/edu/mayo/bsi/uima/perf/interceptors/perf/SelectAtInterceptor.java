@@ -0,0 +1,50 @@
+package edu.mayo.bsi.uima.perf.interceptors.perf;
+
+import edu.mayo.bsi.uima.perf.AnnotationIndices;
+import edu.mayo.bsi.uima.perf.UIMAAgent;
+import edu.mayo.bsi.uima.perf.metrics.AgentMetrics;
+import edu.mayo.bsi.uima.perf.metrics.InterceptorMetrics;
+import net.bytebuddy.implementation.bind.annotation.Argument;
+import net.bytebuddy.implementation.bind.annotation.SuperCall;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.CASException;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.text.AnnotationFS;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+
+/**
+ * Intercepts calls to {@link org.apache.uima.fit.util.CasUtil#selectAt(CAS, Type, int, int)}, which
+ * {@link org.apache.uima.fit.util.JCasUtil#selectAt(org.apache.uima.jcas.JCas, Class, int, int)} delegates to,
+ * and redirects to {@link edu.mayo.bsi.uima.perf.structures.AnnotationIndex#getAt(Type, int, int)}
+ */
+public class SelectAtInterceptor {
+    private static final InterceptorMetrics METRICS = AgentMetrics.interceptor("selectAt");
+
+    // CasUtil#selectAt(CAS, Type, int, int)
+    public static List<AnnotationFS> intercept(@SuperCall Callable<List<AnnotationFS>> call, @Argument(0) CAS cas, @Argument(1) Type type, @Argument(2) int begin, @Argument(3) int end) {
+        long start = METRICS.start();
+        try {
+            if (ShadowVerifier.bypass(METRICS)) {
+                METRICS.fallback();
+                return OriginalCall.call(call);
+            }
+            long sample = ShadowVerifier.sample();
+            return ShadowVerifier.verify(METRICS, call, sample, AnnotationIndices.getForCas(cas.getJCas(), true).<AnnotationFS>getAt(type, begin, end));
+        } catch (CASException e) {
+            UIMAAgent.LOGGER.log(Level.SEVERE, "Error getting CAS for CasUtil#selectAt(CAS, Type, int, int)", e);
+            METRICS.fallback();
+            UIMAAgent.LOGGER.log(Level.WARNING, "Method will be delegated back to default");
+            try {
+                return call.call();
+            } catch (Exception e1) {
+                UIMAAgent.LOGGER.log(Level.SEVERE, "Could not forward call to original runnable!", e1);
+                throw new RuntimeException("Fatal error, please check logs: ", e1);
+            }
+        } finally {
+            METRICS.stop(start);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package edu.mayo.bsi.uima.perf.interceptors.perf;
+
+import edu.mayo.bsi.uima.perf.AnnotationIndices;
+import edu.mayo.bsi.uima.perf.UIMAAgent;
+import edu.mayo.bsi.uima.perf.metrics.AgentMetrics;
+import edu.mayo.bsi.uima.perf.metrics.InterceptorMetrics;
+import net.bytebuddy.implementation.bind.annotation.Argument;
+import net.bytebuddy.implementation.bind.annotation.SuperCall;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.CASException;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+
+/**
+ * Intercepts calls to {@link org.apache.uima.fit.util.JCasUtil#selectBetween(JCas, Class, AnnotationFS, AnnotationFS)},
+ * {@link org.apache.uima.fit.util.JCasUtil#selectBetween(Class, AnnotationFS, AnnotationFS)},
+ * {@link org.apache.uima.fit.util.CasUtil#selectBetween(CAS, Type, AnnotationFS, AnnotationFS)}, and
+ * {@link org.apache.uima.fit.util.CasUtil#selectBetween(Type, AnnotationFS, AnnotationFS)}
+ * and redirects to {@link edu.mayo.bsi.uima.perf.structures.AnnotationIndex#getBetween(Type, AnnotationFS, AnnotationFS)}
+ */
+public class SelectBetweenInterceptor {
+    private static final InterceptorMetrics METRICS = AgentMetrics.interceptor("selectBetween");
+
+    // JCasUtil#selectBetween(JCas, Class, AnnotationFS, AnnotationFS)
+    public static <T extends Annotation> List<T> intercept(@SuperCall Callable<List<T>> call, @Argument(0) JCas cas, @Argument(1) Class<T> clazz, @Argument(2) AnnotationFS ann1, @Argument(3) AnnotationFS ann2) {
+        long start = METRICS.start();
+        try {
+            if (ShadowVerifier.bypass(METRICS)) {
+                METRICS.fallback();
+                return OriginalCall.call(call);
+            }
+            long sample = ShadowVerifier.sample();
+            return ShadowVerifier.verify(METRICS, call, sample, AnnotationIndices.getForCas(cas, true).<T>getBetween(JCasUtil.getType(cas, clazz), ann1, ann2));
+        } finally {
+            METRICS.stop(start);
+        }
+    }
+    // JCasUtil#selectBetween(Class, AnnotationFS, AnnotationFS)
+    public static <T extends Annotation> List<T> intercept(@SuperCall Callable<List<T>> call, @Argument(0) Class<T> clazz, @Argument(1) AnnotationFS ann1, @Argument(2) AnnotationFS ann2) {
+        long start = METRICS.start();
+        try {
+            if (ShadowVerifier.bypass(METRICS)) {
+                METRICS.fallback();
+                return OriginalCall.call(call);
+            }
+            JCas cas = ann1.getView().getJCas();
+            long sample = ShadowVerifier.sample();
+            return ShadowVerifier.verify(METRICS, call, sample, AnnotationIndices.getForCas(cas, true).<T>getBetween(JCasUtil.getType(cas, clazz), ann1, ann2));
+        } catch (CASException e) {
+            UIMAAgent.LOGGER.log(Level.SEVERE, "Error getting CAS for JCasUtil#selectBetween(Class, AnnotationFS, AnnotationFS)", e);
+            METRICS.fallback();
+            UIMAAgent.LOGGER.log(Level.WARNING, "Method will be delegated back to default");
+            try {
+                return call.call();
+            } catch (Exception e1) {
+                UIMAAgent.LOGGER.log(Level.SEVERE, "Could not forward call to original runnable!", e1);
+                throw new RuntimeException("Fatal error, please check logs: ", e1);
+            }
+        } finally {
+            METRICS.stop(start);
+        }
+    }
+    // CasUtil#selectBetween(CAS, Type, AnnotationFS, AnnotationFS)
+    public static List<AnnotationFS> intercept(@SuperCall Callable<List<AnnotationFS>> call, @Argument(0) CAS cas, @Argument(1) Type type, @Argument(2) AnnotationFS ann1, @Argument(3) AnnotationFS ann2) {
+        long start = METRICS.start();
+        try {
+            if (ShadowVerifier.bypass(METRICS)) {
+                METRICS.fallback();
+                return OriginalCall.call(call);
+            }
+            long sample = ShadowVerifier.sample();
+            return ShadowVerifier.verify(METRICS, call, sample, AnnotationIndices.getForCas(cas.getJCas(), true).<AnnotationFS>getBetween(type, ann1, ann2));
+        } catch (CASException e) {
+            UIMAAgent.LOGGER.log(Level.SEVERE, "Error getting CAS for CasUtil#selectBetween(CAS, Type, AnnotationFS, AnnotationFS)", e);
+            METRICS.fallback();
+            UIMAAgent.LOGGER.log(Level.WARNING, "Method will be delegated back to default");
+            try {
+                return call.call();
+            } catch (Exception e1) {
+                UIMAAgent.LOGGER.log(Level.SEVERE, "Could not forward call to original runnable!", e1);
+                throw new RuntimeException("Fatal error, please check logs: ", e1);
+            }
+        } finally {
+            METRICS.stop(start);
+        }
+    }
+    // CasUtil#selectBetween(Type, AnnotationFS, AnnotationFS)
+    public static List<AnnotationFS> intercept(@SuperCall Callable<List<AnnotationFS>> call, @Argument(0) Type type, @Argument(1) AnnotationFS ann1, @Argument(2) AnnotationFS ann2) {
+        long start = METRICS.start();
+        try {
+            if (ShadowVerifier.bypass(METRICS)) {
+                METRICS.fallback();
+                return OriginalCall.call(call);
+            }
+            long sample = ShadowVerifier.sample();
+            return ShadowVerifier.verify(METRICS, call, sample, AnnotationIndices.getForCas(ann1.getView(), true).<AnnotationFS>getBetween(type, ann1, ann2));
+        } catch (CASException e) {
+            UIMAAgent.LOGGER.log(Level.SEVERE, "Error getting CAS for CasUtil#selectBetween(Type, AnnotationFS, AnnotationFS)", e);
+            METRICS.fallback();
+            UIMAAgent.LOGGER.log(Level.WARNING, "Method will be delegated back to default");
+            try {
+                return call.call();
+            } catch (Exception e1) {
+                UIMAAgent.LOGGER.log(Level.SEVERE, "Could not forward call to original runnable!", e1);
+                throw new RuntimeException("Fatal error, please check logs: ", e1);
+            }
+        } finally {
+            METRICS.stop(start);
+        }
+    }
+}
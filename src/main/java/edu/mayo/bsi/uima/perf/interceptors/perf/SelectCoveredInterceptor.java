@@ -2,6 +2,8 @@ package edu.mayo.bsi.uima.perf.interceptors.perf;
 
 import edu.mayo.bsi.uima.perf.UIMAAgent;
 import edu.mayo.bsi.uima.perf.AnnotationIndices;
+import edu.mayo.bsi.uima.perf.metrics.AgentMetrics;
+import edu.mayo.bsi.uima.perf.metrics.InterceptorMetrics;
 import net.bytebuddy.implementation.bind.annotation.Argument;
 import net.bytebuddy.implementation.bind.annotation.SuperCall;
 import org.apache.uima.cas.CASException;
@@ -17,19 +19,40 @@ import java.util.logging.Level;
  * Intercepts calls to {@link org.apache.uima.fit.util.JCasUtil#selectCovered(JCas, Class, int, int)},
  * {@link org.apache.uima.fit.util.JCasUtil#selectCovered(Class, AnnotationFS)} , and
  * {@link org.apache.uima.fit.util.JCasUtil#selectCovered(JCas, Class, AnnotationFS)}
- * and redirects to {@link edu.mayo.bsi.uima.perf.structures.AnnotationIndex#getCovered(int, int, Class)}
+ * and redirects to {@link edu.mayo.bsi.uima.perf.structures.AnnotationIndex#getCovered(int, int, Class)} or, for
+ * the overloads taking a covering annotation, which uimaFIT leaves out of the results,
+ * {@link edu.mayo.bsi.uima.perf.structures.AnnotationIndex#getCovered(AnnotationFS, Class)}
  */
 public class SelectCoveredInterceptor {
+    private static final InterceptorMetrics METRICS = AgentMetrics.interceptor("selectCovered");
+
     // JCasUtil#selectCovered(JCas, Class, int, int)
-    public static <T extends Annotation> List<T> intercept(@Argument(0) JCas cas, @Argument(1) Class<T> clazz, @Argument(2) int begin, @Argument(3) int end) {
-        return AnnotationIndices.getForCas(cas, true).getCovered(begin, end, clazz);
+    public static <T extends Annotation> List<T> intercept(@SuperCall Callable<List<T>> call, @Argument(0) JCas cas, @Argument(1) Class<T> clazz, @Argument(2) int begin, @Argument(3) int end) {
+        long start = METRICS.start();
+        try {
+            if (ShadowVerifier.bypass(METRICS)) {
+                METRICS.fallback();
+                return OriginalCall.call(call);
+            }
+            long sample = ShadowVerifier.sample();
+            return ShadowVerifier.verify(METRICS, call, sample, AnnotationIndices.getForCas(cas, true).getCovered(begin, end, clazz));
+        } finally {
+            METRICS.stop(start);
+        }
     }
     // JCasUtil#selectCovered(Class, AnnotationFS)
     public static <T extends Annotation> List<T> intercept(@SuperCall Callable<List<T>> call, @Argument(0) Class<T> clazz, @Argument(1) AnnotationFS coveringAnnotation) {
+        long start = METRICS.start();
         try {
-            return AnnotationIndices.getForCas(coveringAnnotation.getView().getJCas(), true).getCovered(coveringAnnotation.getBegin(), coveringAnnotation.getEnd(), clazz);
+            if (ShadowVerifier.bypass(METRICS)) {
+                METRICS.fallback();
+                return OriginalCall.call(call);
+            }
+            long sample = ShadowVerifier.sample();
+            return ShadowVerifier.verify(METRICS, call, sample, AnnotationIndices.getForCas(coveringAnnotation.getView(), true).getCovered(coveringAnnotation, clazz));
         } catch (CASException e) {
             UIMAAgent.LOGGER.log(Level.SEVERE, "Error getting CAS for JCasUtil#selectCovered(Class, AnnotationFS)", e);
+            METRICS.fallback();
             UIMAAgent.LOGGER.log(Level.WARNING, "Method will be delegated back to default");
             try {
                 return call.call();
@@ -37,10 +60,22 @@ public class SelectCoveredInterceptor {
                 UIMAAgent.LOGGER.log(Level.SEVERE, "Could not forward call to original runnable!", e1);
                 throw new RuntimeException("Fatal error, please check logs: ", e1);
             }
+        } finally {
+            METRICS.stop(start);
         }
     }
     // JCasUtil#selectCovered(JCas, Class, AnnotationFS)
-    public static <T extends Annotation> List<T> intercept(@Argument(0) JCas cas, @Argument(1) Class<T> clazz, @Argument(2) AnnotationFS coveringAnnotation) {
-        return AnnotationIndices.getForCas(cas, true).getCovered(coveringAnnotation.getBegin(), coveringAnnotation.getEnd(), clazz);
+    public static <T extends Annotation> List<T> intercept(@SuperCall Callable<List<T>> call, @Argument(0) JCas cas, @Argument(1) Class<T> clazz, @Argument(2) AnnotationFS coveringAnnotation) {
+        long start = METRICS.start();
+        try {
+            if (ShadowVerifier.bypass(METRICS)) {
+                METRICS.fallback();
+                return OriginalCall.call(call);
+            }
+            long sample = ShadowVerifier.sample();
+            return ShadowVerifier.verify(METRICS, call, sample, AnnotationIndices.getForCas(cas, true).getCovered(coveringAnnotation, clazz));
+        } finally {
+            METRICS.stop(start);
+        }
     }
 }
@@ -2,6 +2,8 @@ package edu.mayo.bsi.uima.perf.interceptors.perf;
 
 import edu.mayo.bsi.uima.perf.UIMAAgent;
 import edu.mayo.bsi.uima.perf.AnnotationIndices;
+import edu.mayo.bsi.uima.perf.metrics.AgentMetrics;
+import edu.mayo.bsi.uima.perf.metrics.InterceptorMetrics;
 import net.bytebuddy.implementation.bind.annotation.Argument;
 import net.bytebuddy.implementation.bind.annotation.SuperCall;
 import org.apache.uima.cas.CASException;
@@ -20,16 +22,35 @@ import java.util.logging.Level;
  * and redirects to {@link edu.mayo.bsi.uima.perf.structures.AnnotationIndex#getCovering(int, int, Class)}
  */
 public class SelectCoveringInterceptor {
+    private static final InterceptorMetrics METRICS = AgentMetrics.interceptor("selectCovering");
+
     // JCasUtil#selectCovering(JCas, Class, int, int)
-    public static <T extends Annotation> List<T> intercept(@Argument(0) JCas cas, @Argument(1) Class<T> clazz, @Argument(2) int begin, @Argument(3) int end) {
-        return AnnotationIndices.getForCas(cas, true).getCovering(begin, end, clazz);
+    public static <T extends Annotation> List<T> intercept(@SuperCall Callable<List<T>> call, @Argument(0) JCas cas, @Argument(1) Class<T> clazz, @Argument(2) int begin, @Argument(3) int end) {
+        long start = METRICS.start();
+        try {
+            if (ShadowVerifier.bypass(METRICS)) {
+                METRICS.fallback();
+                return OriginalCall.call(call);
+            }
+            long sample = ShadowVerifier.sample();
+            return ShadowVerifier.verify(METRICS, call, sample, AnnotationIndices.getForCas(cas, true).getCovering(begin, end, clazz));
+        } finally {
+            METRICS.stop(start);
+        }
     }
     // JCasUtil#selectCovering(Class, AnnotationFS)
     public static <T extends Annotation> List<T> intercept(@SuperCall Callable<List<T>> call, @Argument(0) Class<T> clazz, @Argument(1) AnnotationFS coveredAnnotation) {
+        long start = METRICS.start();
         try {
-            return AnnotationIndices.getForCas(coveredAnnotation.getView().getJCas(), true).getCovering(coveredAnnotation.getBegin(), coveredAnnotation.getEnd(), clazz);
+            if (ShadowVerifier.bypass(METRICS)) {
+                METRICS.fallback();
+                return OriginalCall.call(call);
+            }
+            long sample = ShadowVerifier.sample();
+            return ShadowVerifier.verify(METRICS, call, sample, AnnotationIndices.getForCas(coveredAnnotation.getView(), true).getCovering(coveredAnnotation.getBegin(), coveredAnnotation.getEnd(), clazz));
         } catch (CASException e) {
             UIMAAgent.LOGGER.log(Level.SEVERE, "Error getting CAS for JCasUtil#selectCovering(Class, AnnotationFS)", e);
+            METRICS.fallback();
             UIMAAgent.LOGGER.log(Level.WARNING, "Method will be delegated back to default");
             try {
                 return call.call();
@@ -37,10 +58,22 @@ public class SelectCoveringInterceptor {
                 UIMAAgent.LOGGER.log(Level.SEVERE, "Could not forward call to original runnable!", e1);
                 throw new RuntimeException("Fatal error, please check logs: ", e1);
             }
+        } finally {
+            METRICS.stop(start);
         }
     }
     // JCasUtil#selectCovering(JCas, Class, AnnotationFS)
-    public static <T extends Annotation> List<T> intercept(@Argument(0) JCas cas, @Argument(1) Class<T> clazz, @Argument(2) AnnotationFS coveredAnnotation) {
-        return AnnotationIndices.getForCas(cas, true).getCovering(coveredAnnotation.getBegin(), coveredAnnotation.getEnd(), clazz);
+    public static <T extends Annotation> List<T> intercept(@SuperCall Callable<List<T>> call, @Argument(0) JCas cas, @Argument(1) Class<T> clazz, @Argument(2) AnnotationFS coveredAnnotation) {
+        long start = METRICS.start();
+        try {
+            if (ShadowVerifier.bypass(METRICS)) {
+                METRICS.fallback();
+                return OriginalCall.call(call);
+            }
+            long sample = ShadowVerifier.sample();
+            return ShadowVerifier.verify(METRICS, call, sample, AnnotationIndices.getForCas(cas, true).getCovering(coveredAnnotation.getBegin(), coveredAnnotation.getEnd(), clazz));
+        } finally {
+            METRICS.stop(start);
+        }
     }
 }
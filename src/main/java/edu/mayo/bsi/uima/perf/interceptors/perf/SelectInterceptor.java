@@ -0,0 +1,72 @@
+package edu.mayo.bsi.uima.perf.interceptors.perf;
+
+import edu.mayo.bsi.uima.perf.AnnotationIndices;
+import edu.mayo.bsi.uima.perf.UIMAAgent;
+import edu.mayo.bsi.uima.perf.metrics.AgentMetrics;
+import edu.mayo.bsi.uima.perf.metrics.InterceptorMetrics;
+import net.bytebuddy.implementation.bind.annotation.Argument;
+import net.bytebuddy.implementation.bind.annotation.SuperCall;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.CASException;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.cas.TOP;
+
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+
+/**
+ * Intercepts calls to {@link org.apache.uima.fit.util.JCasUtil#select(JCas, Class)} and
+ * {@link org.apache.uima.fit.util.CasUtil#select(CAS, Type)}
+ * and redirects to {@link edu.mayo.bsi.uima.perf.structures.AnnotationIndex#getAll(Type)}. Selects of types other than
+ * annotation types, which are not indexed by the agent, are delegated back to default
+ */
+public class SelectInterceptor {
+    private static final InterceptorMetrics METRICS = AgentMetrics.interceptor("select");
+
+    // JCasUtil#select(JCas, Class)
+    public static <T extends TOP> Collection<T> intercept(@SuperCall Callable<Collection<T>> call, @Argument(0) JCas cas, @Argument(1) Class<T> clazz) {
+        long start = METRICS.start();
+        try {
+            Type type = JCasUtil.getType(cas, clazz);
+            if (!cas.getTypeSystem().subsumes(cas.getCas().getAnnotationType(), type) || ShadowVerifier.bypass(METRICS)) {
+                METRICS.fallback();
+                return OriginalCall.call(call);
+            }
+            long sample = ShadowVerifier.sample();
+            // T is an annotation class, as its type is an annotation type
+            @SuppressWarnings("unchecked")
+            Collection<T> ret = (Collection<T>) (Collection<?>) AnnotationIndices.getForCas(cas, true).<AnnotationFS>getAll(type);
+            return ShadowVerifier.verify(METRICS, call, sample, ret);
+        } finally {
+            METRICS.stop(start);
+        }
+    }
+    // CasUtil#select(CAS, Type)
+    public static Collection<AnnotationFS> intercept(@SuperCall Callable<Collection<AnnotationFS>> call, @Argument(0) CAS cas, @Argument(1) Type type) {
+        long start = METRICS.start();
+        try {
+            if (ShadowVerifier.bypass(METRICS)) {
+                METRICS.fallback();
+                return OriginalCall.call(call);
+            }
+            long sample = ShadowVerifier.sample();
+            return ShadowVerifier.verify(METRICS, call, sample, AnnotationIndices.getForCas(cas.getJCas(), true).<AnnotationFS>getAll(type));
+        } catch (CASException e) {
+            UIMAAgent.LOGGER.log(Level.SEVERE, "Error getting CAS for CasUtil#select(CAS, Type)", e);
+            METRICS.fallback();
+            UIMAAgent.LOGGER.log(Level.WARNING, "Method will be delegated back to default");
+            try {
+                return call.call();
+            } catch (Exception e1) {
+                UIMAAgent.LOGGER.log(Level.SEVERE, "Could not forward call to original runnable!", e1);
+                throw new RuntimeException("Fatal error, please check logs: ", e1);
+            }
+        } finally {
+            METRICS.stop(start);
+        }
+    }
+}
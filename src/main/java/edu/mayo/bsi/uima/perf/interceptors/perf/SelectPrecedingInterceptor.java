@@ -0,0 +1,93 @@
+package edu.mayo.bsi.uima.perf.interceptors.perf;
+
+import edu.mayo.bsi.uima.perf.AnnotationIndices;
+import edu.mayo.bsi.uima.perf.UIMAAgent;
+import edu.mayo.bsi.uima.perf.metrics.AgentMetrics;
+import edu.mayo.bsi.uima.perf.metrics.InterceptorMetrics;
+import net.bytebuddy.implementation.bind.annotation.Argument;
+import net.bytebuddy.implementation.bind.annotation.SuperCall;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.CASException;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+
+/**
+ * Intercepts calls to {@link org.apache.uima.fit.util.JCasUtil#selectPreceding(JCas, Class, AnnotationFS, int)},
+ * {@link org.apache.uima.fit.util.JCasUtil#selectPreceding(Class, AnnotationFS, int)}, and
+ * {@link org.apache.uima.fit.util.CasUtil#selectPreceding(CAS, Type, AnnotationFS, int)}
+ * and redirects to {@link edu.mayo.bsi.uima.perf.structures.AnnotationIndex#getPreceding(Type, AnnotationFS, int)}
+ */
+public class SelectPrecedingInterceptor {
+    private static final InterceptorMetrics METRICS = AgentMetrics.interceptor("selectPreceding");
+
+    // JCasUtil#selectPreceding(JCas, Class, AnnotationFS, int)
+    public static <T extends Annotation> List<T> intercept(@SuperCall Callable<List<T>> call, @Argument(0) JCas cas, @Argument(1) Class<T> clazz, @Argument(2) AnnotationFS annotation, @Argument(3) int count) {
+        long start = METRICS.start();
+        try {
+            if (ShadowVerifier.bypass(METRICS)) {
+                METRICS.fallback();
+                return OriginalCall.call(call);
+            }
+            long sample = ShadowVerifier.sample();
+            return ShadowVerifier.verify(METRICS, call, sample, AnnotationIndices.getForCas(cas, true).<T>getPreceding(JCasUtil.getType(cas, clazz), annotation, count));
+        } finally {
+            METRICS.stop(start);
+        }
+    }
+    // JCasUtil#selectPreceding(Class, AnnotationFS, int)
+    public static <T extends Annotation> List<T> intercept(@SuperCall Callable<List<T>> call, @Argument(0) Class<T> clazz, @Argument(1) AnnotationFS annotation, @Argument(2) int count) {
+        long start = METRICS.start();
+        try {
+            if (ShadowVerifier.bypass(METRICS)) {
+                METRICS.fallback();
+                return OriginalCall.call(call);
+            }
+            JCas cas = annotation.getView().getJCas();
+            long sample = ShadowVerifier.sample();
+            return ShadowVerifier.verify(METRICS, call, sample, AnnotationIndices.getForCas(cas, true).<T>getPreceding(JCasUtil.getType(cas, clazz), annotation, count));
+        } catch (CASException e) {
+            UIMAAgent.LOGGER.log(Level.SEVERE, "Error getting CAS for JCasUtil#selectPreceding(Class, AnnotationFS, int)", e);
+            METRICS.fallback();
+            UIMAAgent.LOGGER.log(Level.WARNING, "Method will be delegated back to default");
+            try {
+                return call.call();
+            } catch (Exception e1) {
+                UIMAAgent.LOGGER.log(Level.SEVERE, "Could not forward call to original runnable!", e1);
+                throw new RuntimeException("Fatal error, please check logs: ", e1);
+            }
+        } finally {
+            METRICS.stop(start);
+        }
+    }
+    // CasUtil#selectPreceding(CAS, Type, AnnotationFS, int)
+    public static List<AnnotationFS> intercept(@SuperCall Callable<List<AnnotationFS>> call, @Argument(0) CAS cas, @Argument(1) Type type, @Argument(2) AnnotationFS annotation, @Argument(3) int count) {
+        long start = METRICS.start();
+        try {
+            if (ShadowVerifier.bypass(METRICS)) {
+                METRICS.fallback();
+                return OriginalCall.call(call);
+            }
+            long sample = ShadowVerifier.sample();
+            return ShadowVerifier.verify(METRICS, call, sample, AnnotationIndices.getForCas(cas.getJCas(), true).getPreceding(type, annotation, count));
+        } catch (CASException e) {
+            UIMAAgent.LOGGER.log(Level.SEVERE, "Error getting CAS for CasUtil#selectPreceding(CAS, Type, AnnotationFS, int)", e);
+            METRICS.fallback();
+            UIMAAgent.LOGGER.log(Level.WARNING, "Method will be delegated back to default");
+            try {
+                return call.call();
+            } catch (Exception e1) {
+                UIMAAgent.LOGGER.log(Level.SEVERE, "Could not forward call to original runnable!", e1);
+                throw new RuntimeException("Fatal error, please check logs: ", e1);
+            }
+        } finally {
+            METRICS.stop(start);
+        }
+    }
+}
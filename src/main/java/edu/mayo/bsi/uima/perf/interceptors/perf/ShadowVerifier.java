@@ -0,0 +1,228 @@
+package edu.mayo.bsi.uima.perf.interceptors.perf;
+
+import edu.mayo.bsi.uima.perf.AgentOptions;
+import edu.mayo.bsi.uima.perf.CallerFilter;
+import edu.mayo.bsi.uima.perf.UIMAAgent;
+import edu.mayo.bsi.uima.perf.metrics.InterceptorMetrics;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.cliffc.high_scale_lib.NonBlockingHashMap;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * Shadow mode: verifies a sample of accelerated calls, as configured by the {@code shadow.rate} agent option, by also
+ * running the original uimaFIT implementation and comparing results for membership and order. Mismatches and the
+ * relative time taken by each implementation are recorded in the {@link InterceptorMetrics} of the interceptor, and
+ * the original result is returned on mismatch.
+ * <p>
+ * Call sites are identified by interceptor and calling class. Once a call site reaches the number of mismatches set by
+ * the {@code shadow.fallbackAfter} agent option, its calls are no longer accelerated. Until then, call sites are only
+ * looked up for sampled calls.
+ * <p>
+ * Interceptors use this as follows:
+ * <pre>
+ * if (ShadowVerifier.bypass(METRICS)) {
+ *     METRICS.fallback();
+ *     return OriginalCall.call(call);
+ * }
+ * long sample = ShadowVerifier.sample();
+ * return ShadowVerifier.verify(METRICS, call, sample, ACCELERATED_RESULT);
+ * </pre>
+ */
+final class ShadowVerifier {
+    private static final long NOT_SAMPLED = Long.MIN_VALUE;
+    // Mismatches logged in detail per call site, beyond which they are only counted
+    private static final int LOGGED_MISMATCHES = 10;
+
+    // Per thread, the number of calls since the last sample and the depth of original calls being verified against
+    private static final ThreadLocal<int[]> STATE = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[2];
+        }
+    };
+    private static final ConcurrentMap<String, AtomicInteger> MISMATCHES =
+            new NonBlockingHashMap<String, AtomicInteger>();
+    private static final Map<String, Boolean> FALLEN_BACK = new NonBlockingHashMap<String, Boolean>();
+
+    private ShadowVerifier() {
+    }
+
+    /**
+     * @param metrics The metrics of the calling interceptor
+     * @return Whether the current call should be left to the original implementation, be it due to the
+     * {@link CallerFilter}, to its call site having fallen back, or to it being made by an original implementation
+     * under verification
+     */
+    static boolean bypass(InterceptorMetrics metrics) {
+        if (AgentOptions.current().getShadowPeriod() > 0 && STATE.get()[1] > 0) {
+            // Original implementations may call other intercepted methods, which must then not be accelerated either
+            return true;
+        }
+        if (!FALLEN_BACK.isEmpty()) {
+            String caller = CallerFilter.currentCaller();
+            if (caller != null && FALLEN_BACK.containsKey(site(metrics, caller))) {
+                return true;
+            }
+        }
+        return !CallerFilter.redirectCurrentCall();
+    }
+
+    /**
+     * Decides whether to verify the current call, to be called before the accelerated implementation runs
+     *
+     * @return A token to pass to {@link #verify(InterceptorMetrics, Callable, long, Object)}
+     */
+    static long sample() {
+        int period = AgentOptions.current().getShadowPeriod();
+        if (period == 0) {
+            return NOT_SAMPLED;
+        }
+        int[] state = STATE.get();
+        if (++state[0] < period) {
+            return NOT_SAMPLED;
+        }
+        state[0] = 0;
+        return System.nanoTime();
+    }
+
+    /**
+     * Verifies the result of the accelerated implementation if the call was sampled
+     *
+     * @param metrics     The metrics of the calling interceptor
+     * @param original    The original implementation
+     * @param sample      The token returned by {@link #sample()} before the accelerated implementation ran
+     * @param accelerated The result of the accelerated implementation
+     * @return The result to return from the call: the accelerated result, unless verification found a mismatch
+     */
+    static <R> R verify(InterceptorMetrics metrics, Callable<R> original, long sample, R accelerated) {
+        if (sample == NOT_SAMPLED) {
+            return accelerated;
+        }
+        // Results may be lazy, in which case resolving them is part of the accelerated implementation's cost
+        size(accelerated);
+        long acceleratedNanos = System.nanoTime() - sample;
+        int[] state = STATE.get();
+        R expected;
+        long originalStart = System.nanoTime();
+        state[1]++;
+        try {
+            expected = OriginalCall.call(original);
+        } catch (RuntimeException e) {
+            mismatch(metrics, acceleratedNanos, System.nanoTime() - originalStart,
+                    "original implementation threw " + e);
+            throw e;
+        } finally {
+            state[1]--;
+        }
+        long originalNanos = System.nanoTime() - originalStart;
+        String difference = difference(expected, accelerated);
+        if (difference == null) {
+            metrics.shadowed(acceleratedNanos, originalNanos, true);
+            return accelerated;
+        }
+        mismatch(metrics, acceleratedNanos, originalNanos, difference);
+        return expected;
+    }
+
+    private static void mismatch(InterceptorMetrics metrics, long acceleratedNanos, long originalNanos,
+                                 String difference) {
+        metrics.shadowed(acceleratedNanos, originalNanos, false);
+        String caller = CallerFilter.currentCaller();
+        String site = site(metrics, caller == null ? "unknown" : caller);
+        AtomicInteger count = MISMATCHES.get(site);
+        if (count == null) {
+            AtomicInteger created = new AtomicInteger();
+            count = MISMATCHES.putIfAbsent(site, created);
+            if (count == null) {
+                count = created;
+            }
+        }
+        int mismatches = count.incrementAndGet();
+        if (mismatches <= LOGGED_MISMATCHES) {
+            UIMAAgent.LOGGER.log(Level.WARNING, "Shadow mode mismatch #" + mismatches + " at " + site + ": "
+                    + difference);
+        }
+        int fallbackAfter = AgentOptions.current().getShadowFallbackAfter();
+        if (caller != null && fallbackAfter > 0 && mismatches >= fallbackAfter
+                && FALLEN_BACK.put(site, Boolean.TRUE) == null) {
+            UIMAAgent.LOGGER.log(Level.WARNING, "Calls at " + site + " will no longer be accelerated after "
+                    + mismatches + " shadow mode mismatches");
+        }
+    }
+
+    private static String site(InterceptorMetrics metrics, String caller) {
+        return metrics.getName() + "@" + caller;
+    }
+
+    private static void size(Object result) {
+        if (result instanceof Collection) {
+            ((Collection<?>) result).size();
+        } else if (result instanceof Map) {
+            ((Map<?, ?>) result).size();
+        }
+    }
+
+    /**
+     * @return A description of the first difference between the expected and actual results, or null if they are
+     * equivalent: lists must hold the same elements in the same order, and maps the same keys, mapped to collections
+     * holding the same elements in the same order
+     */
+    static String difference(Object expected, Object actual) {
+        if (expected instanceof Collection && actual instanceof Collection) {
+            return difference((Collection<?>) expected, (Collection<?>) actual);
+        }
+        if (expected instanceof Map && actual instanceof Map) {
+            Map<?, ?> expectedMap = (Map<?, ?>) expected;
+            Map<?, ?> actualMap = (Map<?, ?>) actual;
+            if (expectedMap.size() != actualMap.size()) {
+                return "expected " + expectedMap.size() + " keys, got " + actualMap.size();
+            }
+            for (Map.Entry<?, ?> e : expectedMap.entrySet()) {
+                Object value = actualMap.get(e.getKey());
+                if (value == null && !actualMap.containsKey(e.getKey())) {
+                    return "missing key " + describe(e.getKey());
+                }
+                String ret = difference(e.getValue(), value);
+                if (ret != null) {
+                    return "at key " + describe(e.getKey()) + ", " + ret;
+                }
+            }
+            return null;
+        }
+        if (expected == null ? actual == null : expected.equals(actual)) {
+            return null;
+        }
+        return "expected " + expected + ", got " + actual;
+    }
+
+    private static String difference(Collection<?> expected, Collection<?> actual) {
+        if (expected.size() != actual.size()) {
+            return "expected " + expected.size() + " elements, got " + actual.size();
+        }
+        Iterator<?> expectedIt = expected.iterator();
+        Iterator<?> actualIt = actual.iterator();
+        for (int i = 0; expectedIt.hasNext(); i++) {
+            Object e = expectedIt.next();
+            Object a = actualIt.next();
+            if (e == null ? a != null : !e.equals(a)) {
+                return "at index " + i + " expected " + describe(e) + ", got " + describe(a);
+            }
+        }
+        return null;
+    }
+
+    private static String describe(Object o) {
+        if (o instanceof AnnotationFS) {
+            AnnotationFS ann = (AnnotationFS) o;
+            return ann.getType().getShortName() + "[" + ann.getBegin() + ", " + ann.getEnd() + ")";
+        }
+        return String.valueOf(o);
+    }
+}
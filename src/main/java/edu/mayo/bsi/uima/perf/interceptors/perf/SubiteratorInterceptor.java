@@ -0,0 +1,67 @@
+package edu.mayo.bsi.uima.perf.interceptors.perf;
+
+import edu.mayo.bsi.uima.perf.AnnotationIndices;
+import edu.mayo.bsi.uima.perf.UIMAAgent;
+import edu.mayo.bsi.uima.perf.metrics.AgentMetrics;
+import edu.mayo.bsi.uima.perf.metrics.InterceptorMetrics;
+import net.bytebuddy.implementation.bind.annotation.Argument;
+import net.bytebuddy.implementation.bind.annotation.SuperCall;
+import net.bytebuddy.implementation.bind.annotation.This;
+import org.apache.uima.cas.CASException;
+import org.apache.uima.cas.FSIterator;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.cas.text.AnnotationIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+
+/**
+ * Intercepts calls to {@link org.apache.uima.cas.impl.AnnotationIndexImpl#subiterator(AnnotationFS, boolean, boolean)},
+ * which {@link org.apache.uima.cas.impl.AnnotationIndexImpl#subiterator(AnnotationFS)} delegates to, and redirects to
+ * {@link edu.mayo.bsi.uima.perf.structures.AnnotationIndex#getSubiterated(org.apache.uima.cas.Type, AnnotationFS,
+ * boolean, boolean)}, returning an iterator over its results. The UIMA index is assumed to belong to the CAS view of
+ * the bounding annotation, as annotations can only be indexed in the view of their own
+ */
+public class SubiteratorInterceptor {
+    private static final InterceptorMetrics METRICS = AgentMetrics.interceptor("subiterator");
+
+    // AnnotationIndexImpl#subiterator(AnnotationFS, boolean, boolean)
+    public static <T extends AnnotationFS> FSIterator<T> intercept(@SuperCall final Callable<FSIterator<T>> call, @This AnnotationIndex<T> index, @Argument(0) AnnotationFS annot, @Argument(1) boolean ambiguous, @Argument(2) boolean strict) {
+        long start = METRICS.start();
+        try {
+            if (annot == null || ShadowVerifier.bypass(METRICS)) {
+                METRICS.fallback();
+                return OriginalCall.call(call);
+            }
+            long sample = ShadowVerifier.sample();
+            List<T> ret = AnnotationIndices.getForCas(annot.getView().getJCas(), true).getSubiterated(index.getType(), annot, ambiguous, strict);
+            // Verified against the results of the original iterator, collected into a list
+            ret = ShadowVerifier.verify(METRICS, new Callable<List<T>>() {
+                @Override
+                public List<T> call() {
+                    List<T> expected = new ArrayList<T>();
+                    FSIterator<T> it = OriginalCall.call(call);
+                    while (it.hasNext()) {
+                        expected.add(it.next());
+                    }
+                    return expected;
+                }
+            }, sample, ret);
+            return new AnnotationListIterator<T>(ret, index, ambiguous);
+        } catch (CASException e) {
+            UIMAAgent.LOGGER.log(Level.SEVERE, "Error getting CAS for AnnotationIndex#subiterator(AnnotationFS, boolean, boolean)", e);
+            METRICS.fallback();
+            UIMAAgent.LOGGER.log(Level.WARNING, "Method will be delegated back to default");
+            try {
+                return call.call();
+            } catch (Exception e1) {
+                UIMAAgent.LOGGER.log(Level.SEVERE, "Could not forward call to original runnable!", e1);
+                throw new RuntimeException("Fatal error, please check logs: ", e1);
+            }
+        } finally {
+            METRICS.stop(start);
+        }
+    }
+}
@@ -3,6 +3,8 @@ package edu.mayo.bsi.uima.perf.interceptors.sync;
 import edu.mayo.bsi.uima.perf.UIMAAgent;
 import edu.mayo.bsi.uima.perf.AnnotationIndices;
 import edu.mayo.bsi.uima.perf.structures.AnnotationIndex;
+import edu.mayo.bsi.uima.perf.metrics.AgentMetrics;
+import edu.mayo.bsi.uima.perf.metrics.InterceptorMetrics;
 import net.bytebuddy.implementation.bind.annotation.Argument;
 import net.bytebuddy.implementation.bind.annotation.SuperCall;
 import net.bytebuddy.implementation.bind.annotation.This;
@@ -17,15 +19,20 @@ import java.util.logging.Level;
  * the performance AnnotationIndex up to date
  */
 public class AddFsToIndexesInterceptor {
+    private static final InterceptorMetrics METRICS = AgentMetrics.interceptor("addFsToIndexes");
 
     public static void intercept(@SuperCall Runnable call, @This CAS cas, @Argument(0) FeatureStructure fs) {
+        long start = METRICS.start();
         try {
             if (fs instanceof Annotation) {
-                AnnotationIndex index = AnnotationIndices.getForCas(cas.getJCas(), true);
+                AnnotationIndex index = AnnotationIndices.getForCas(cas, true);
                 index.insert((Annotation) fs);
             }
         } catch (Exception e) {
+            METRICS.error();
             UIMAAgent.LOGGER.log(Level.SEVERE, "An error occurred during annotation add interception", e);
+        } finally {
+            METRICS.stop(start);
         }
         call.run();
     }
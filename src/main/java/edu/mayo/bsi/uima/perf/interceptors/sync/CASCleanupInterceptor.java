@@ -2,6 +2,8 @@ package edu.mayo.bsi.uima.perf.interceptors.sync;
 
 import edu.mayo.bsi.uima.perf.UIMAAgent;
 import edu.mayo.bsi.uima.perf.AnnotationIndices;
+import edu.mayo.bsi.uima.perf.metrics.AgentMetrics;
+import edu.mayo.bsi.uima.perf.metrics.InterceptorMetrics;
 import net.bytebuddy.implementation.bind.annotation.SuperCall;
 import net.bytebuddy.implementation.bind.annotation.This;
 import org.apache.uima.cas.CAS;
@@ -9,15 +11,21 @@ import org.apache.uima.cas.CAS;
 import java.util.logging.Level;
 
 /**
- * Intercepts calls to {@link org.apache.uima.cas.impl.CASImpl#reset()} and cleans up the associated annotation index as
- * well
+ * Intercepts calls to {@link org.apache.uima.cas.impl.CASImpl#reset()} and cleans up the annotation indexes of every
+ * view of the CAS as well, or empties them for reuse if the {@code index.recycle} agent option is set
  */
 public class CASCleanupInterceptor {
+    private static final InterceptorMetrics METRICS = AgentMetrics.interceptor("reset");
+
     public static void intercept(@SuperCall Runnable call, @This CAS cas) {
+        long start = METRICS.start();
         try {
-            AnnotationIndices.removeIndex(cas.getJCas());
+            AnnotationIndices.resetIndexes(cas);
         } catch (Exception e) {
+            METRICS.error();
             UIMAAgent.LOGGER.log(Level.SEVERE, "An error occurred during cas reset interception", e);
+        } finally {
+            METRICS.stop(start);
         }
         call.run();
     }
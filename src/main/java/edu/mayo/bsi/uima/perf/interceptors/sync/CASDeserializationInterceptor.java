@@ -0,0 +1,77 @@
+package edu.mayo.bsi.uima.perf.interceptors.sync;
+
+import edu.mayo.bsi.uima.perf.AnnotationIndices;
+import edu.mayo.bsi.uima.perf.UIMAAgent;
+import edu.mayo.bsi.uima.perf.metrics.AgentMetrics;
+import edu.mayo.bsi.uima.perf.metrics.InterceptorMetrics;
+import net.bytebuddy.implementation.bind.annotation.AllArguments;
+import net.bytebuddy.implementation.bind.annotation.RuntimeType;
+import net.bytebuddy.implementation.bind.annotation.SuperCall;
+import org.apache.uima.cas.CAS;
+
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+
+/**
+ * Intercepts the static entry points that load contents into a CAS wholesale without going through
+ * {@link org.apache.uima.cas.impl.CASImpl#addFsToIndexes(org.apache.uima.cas.FeatureStructure)}, namely
+ * {@link org.apache.uima.cas.impl.XmiCasDeserializer#deserialize(java.io.InputStream, CAS)},
+ * {@link org.apache.uima.cas.impl.XCASDeserializer#deserialize(java.io.InputStream, CAS)},
+ * {@link org.apache.uima.cas.impl.Serialization#deserializeCAS(CAS, java.io.InputStream)} and
+ * {@link org.apache.uima.util.CasCopier#copyCas(CAS, CAS, boolean)} (and their overloads), and rebuilds the
+ * annotation indexes of the loaded CAS once loading completes.
+ * <p>
+ * The loaded CAS is taken to be the last CAS argument, i.e. the destination in the case of a copy
+ */
+public class CASDeserializationInterceptor {
+    private static final InterceptorMetrics METRICS = AgentMetrics.interceptor("rebuildIndexes");
+    // Loading methods delegate to one another, so only the outermost call on a thread triggers a rebuild
+    private static final ThreadLocal<int[]> DEPTH = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    @RuntimeType
+    public static Object intercept(@SuperCall Callable<?> call, @AllArguments Object[] args) throws Exception {
+        CAS cas = null;
+        for (Object arg : args) {
+            if (arg instanceof CAS) {
+                cas = (CAS) arg;
+            }
+        }
+        return load(call, cas);
+    }
+
+    /**
+     * Runs a loading call, then rebuilds the indexes of the loaded CAS if this is the outermost loading call
+     *
+     * @param call The loading call
+     * @param cas  The CAS being loaded into
+     * @return The result of the loading call
+     * @throws Exception If thrown by the loading call
+     */
+    static Object load(Callable<?> call, CAS cas) throws Exception {
+        int[] depth = DEPTH.get();
+        depth[0]++;
+        Object ret;
+        try {
+            ret = call.call();
+        } finally {
+            depth[0]--;
+        }
+        if (depth[0] == 0 && cas != null) {
+            long start = METRICS.start();
+            try {
+                AnnotationIndices.rebuildIndexes(cas);
+            } catch (Exception e) {
+                METRICS.error();
+                UIMAAgent.LOGGER.log(Level.SEVERE, "An error occurred rebuilding indexes of a loaded cas", e);
+            } finally {
+                METRICS.stop(start);
+            }
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,20 @@
+package edu.mayo.bsi.uima.perf.interceptors.sync;
+
+import net.bytebuddy.implementation.bind.annotation.RuntimeType;
+import net.bytebuddy.implementation.bind.annotation.SuperCall;
+import net.bytebuddy.implementation.bind.annotation.This;
+import org.apache.uima.cas.CAS;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Intercepts calls to {@link org.apache.uima.cas.impl.CASImpl#reinit(java.io.InputStream)} and its overloads, through
+ * which binary serialized contents are loaded into a CAS, and rebuilds the annotation indexes of the CAS once loading
+ * completes
+ */
+public class CASReinitInterceptor {
+    @RuntimeType
+    public static Object intercept(@SuperCall Callable<?> call, @This CAS cas) throws Exception {
+        return CASDeserializationInterceptor.load(call, cas);
+    }
+}
@@ -0,0 +1,60 @@
+package edu.mayo.bsi.uima.perf.interceptors.sync;
+
+import edu.mayo.bsi.uima.perf.AnnotationIndices;
+import edu.mayo.bsi.uima.perf.UIMAAgent;
+import edu.mayo.bsi.uima.perf.metrics.AgentMetrics;
+import edu.mayo.bsi.uima.perf.metrics.InterceptorMetrics;
+import net.bytebuddy.implementation.bind.annotation.AllArguments;
+import net.bytebuddy.implementation.bind.annotation.RuntimeType;
+import net.bytebuddy.implementation.bind.annotation.SuperCall;
+import org.apache.uima.cas.CAS;
+
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+
+/**
+ * Intercepts {@link org.apache.uima.cas.impl.Serialization#serializeCAS(CAS, java.io.OutputStream)} (and its
+ * overloads), the binary serialization that preserves feature structure addresses, and persists the annotation indexes
+ * of the serialized CAS once serialization completes, see {@link AnnotationIndices#persistIndexes(CAS)}. Only installed
+ * if the {@code index.persistDir} agent option is set
+ */
+public class CASSerializationInterceptor {
+    private static final InterceptorMetrics METRICS = AgentMetrics.interceptor("persistIndexes");
+    // Serialization methods delegate to one another, so only the outermost call on a thread persists indexes
+    private static final ThreadLocal<int[]> DEPTH = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    @RuntimeType
+    public static Object intercept(@SuperCall Callable<?> call, @AllArguments Object[] args) throws Exception {
+        CAS cas = null;
+        for (Object arg : args) {
+            if (arg instanceof CAS) {
+                cas = (CAS) arg;
+            }
+        }
+        int[] depth = DEPTH.get();
+        depth[0]++;
+        Object ret;
+        try {
+            ret = call.call();
+        } finally {
+            depth[0]--;
+        }
+        if (depth[0] == 0 && cas != null) {
+            long start = METRICS.start();
+            try {
+                AnnotationIndices.persistIndexes(cas);
+            } catch (Exception e) {
+                METRICS.error();
+                UIMAAgent.LOGGER.log(Level.SEVERE, "An error occurred persisting indexes of a serialized cas", e);
+            } finally {
+                METRICS.stop(start);
+            }
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,21 @@
+package edu.mayo.bsi.uima.perf.interceptors.sync;
+
+import net.bytebuddy.implementation.bind.annotation.FieldValue;
+import net.bytebuddy.implementation.bind.annotation.RuntimeType;
+import net.bytebuddy.implementation.bind.annotation.SuperCall;
+import org.apache.uima.cas.CAS;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Intercepts calls to {@link org.apache.uima.util.CasCopier#copyCasView(CAS, boolean)} and its overloads, which add
+ * copied contents to the destination CAS without going through
+ * {@link org.apache.uima.cas.impl.CASImpl#addFsToIndexes(org.apache.uima.cas.FeatureStructure)}, and rebuilds the
+ * annotation indexes of the destination CAS once copying completes
+ */
+public class CasCopierInterceptor {
+    @RuntimeType
+    public static Object intercept(@SuperCall Callable<?> call, @FieldValue("originalTgtCas") CAS cas) throws Exception {
+        return CASDeserializationInterceptor.load(call, cas);
+    }
+}
@@ -0,0 +1,124 @@
+package edu.mayo.bsi.uima.perf.interceptors.sync;
+
+import edu.mayo.bsi.uima.perf.AnnotationIndices;
+import edu.mayo.bsi.uima.perf.UIMAAgent;
+import edu.mayo.bsi.uima.perf.structures.AnnotationIndex;
+import edu.mayo.bsi.uima.perf.metrics.AgentMetrics;
+import edu.mayo.bsi.uima.perf.metrics.InterceptorMetrics;
+import net.bytebuddy.implementation.bind.annotation.Argument;
+import net.bytebuddy.implementation.bind.annotation.FieldValue;
+import net.bytebuddy.implementation.bind.annotation.SuperCall;
+import net.bytebuddy.implementation.bind.annotation.This;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.FeatureStructure;
+import org.apache.uima.cas.text.AnnotationFS;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+
+/**
+ * Keeps the performance AnnotationIndex up to date when annotation offsets are modified while indexed, in which case
+ * UIMA temporarily takes the annotation out of its indexes and adds it back once the modification is complete, without
+ * going through {@link org.apache.uima.cas.impl.CASImpl#removeFsFromIndexes(FeatureStructure)} and
+ * {@link org.apache.uima.cas.impl.CASImpl#addFsToIndexes(FeatureStructure)}.
+ * <p>
+ * Intercepts the removal ({@code CASImpl#removeFromCorruptableIndexAnyView(int, FSsTobeAddedback)}), at which point
+ * the annotation still has its old offsets and can be removed by key, and both forms of adding back: single
+ * annotations ({@code FSsTobeAddedbackSingle#addback(int)}, after each individual modification) and batches
+ * ({@code FSsTobeAddedbackMultiple#addback()}, at the end of {@link CAS#protectIndexes(Runnable)}), which are
+ * reinserted into the index together.
+ */
+public class IndexProtectionInterceptor {
+    private static final InterceptorMetrics METRICS = AgentMetrics.interceptor("indexProtection");
+    // Annotations taken out of the index by their address, pending being added back. Modification and adding back
+    // always occur on the same thread
+    private static final ThreadLocal<Map<Integer, AnnotationFS>> DISPLACED = new ThreadLocal<Map<Integer, AnnotationFS>>() {
+        @Override
+        protected Map<Integer, AnnotationFS> initialValue() {
+            return new HashMap<Integer, AnnotationFS>();
+        }
+    };
+
+    // CASImpl#removeFromCorruptableIndexAnyView(int, FSsTobeAddedback)
+    public static boolean intercept(@SuperCall Callable<Boolean> call, @This CAS cas, @Argument(0) int addr) throws Exception {
+        boolean ret = call.call();
+        if (ret) {
+            long start = METRICS.start();
+            try {
+                FeatureStructure fs = cas.getLowLevelCAS().ll_getFSForRef(addr);
+                if (fs instanceof AnnotationFS) {
+                    AnnotationFS ann = (AnnotationFS) fs;
+                    AnnotationIndex index = AnnotationIndices.getForCas(ann.getView(), false);
+                    if (index != null) {
+                        index.remove(ann);
+                        DISPLACED.get().put(addr, ann);
+                    }
+                }
+            } catch (Exception e) {
+                METRICS.error();
+                UIMAAgent.LOGGER.log(Level.SEVERE, "An error occurred during protected annotation remove interception", e);
+            } finally {
+                METRICS.stop(start);
+            }
+        }
+        return ret;
+    }
+
+    // FSsTobeAddedbackSingle#addback(int)
+    public static void intercept(@SuperCall Runnable call, @Argument(0) int addr) {
+        call.run();
+        long start = METRICS.start();
+        try {
+            AnnotationFS ann = DISPLACED.get().remove(addr);
+            if (ann != null) {
+                AnnotationIndex index = AnnotationIndices.getForCas(ann.getView(), false);
+                if (index != null) {
+                    index.insert(ann);
+                }
+            }
+        } catch (Exception e) {
+            METRICS.error();
+            UIMAAgent.LOGGER.log(Level.SEVERE, "An error occurred during protected annotation add back interception", e);
+        } finally {
+            METRICS.stop(start);
+        }
+    }
+
+    // FSsTobeAddedbackMultiple#addback()
+    public static void intercept(@SuperCall Runnable call, @FieldValue("fss2views") Map<Integer, ?> fss) {
+        List<Integer> addrs = new ArrayList<Integer>(fss.keySet());
+        call.run();
+        long start = METRICS.start();
+        try {
+            Map<Integer, AnnotationFS> displaced = DISPLACED.get();
+            Map<AnnotationIndex, List<AnnotationFS>> batches = new HashMap<AnnotationIndex, List<AnnotationFS>>();
+            for (Integer addr : addrs) {
+                AnnotationFS ann = displaced.remove(addr);
+                if (ann == null) {
+                    continue;
+                }
+                AnnotationIndex index = AnnotationIndices.getForCas(ann.getView(), false);
+                if (index != null) {
+                    List<AnnotationFS> batch = batches.get(index);
+                    if (batch == null) {
+                        batch = new ArrayList<AnnotationFS>();
+                        batches.put(index, batch);
+                    }
+                    batch.add(ann);
+                }
+            }
+            for (Map.Entry<AnnotationIndex, List<AnnotationFS>> e : batches.entrySet()) {
+                e.getKey().insertAll(e.getValue());
+            }
+        } catch (Exception e) {
+            METRICS.error();
+            UIMAAgent.LOGGER.log(Level.SEVERE, "An error occurred during protected annotation add back interception", e);
+        } finally {
+            METRICS.stop(start);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package edu.mayo.bsi.uima.perf.metrics;
+
+import edu.mayo.bsi.uima.perf.AgentOptions;
+import edu.mayo.bsi.uima.perf.UIMAAgent;
+import org.cliffc.high_scale_lib.NonBlockingHashMap;
+
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Registry of the agent's runtime metrics: per-interceptor {@link InterceptorMetrics} and {@link IndexStatistics}.
+ * <p>
+ * Metrics are disabled by default, in which case interceptors only pay for a volatile read per call. They are
+ * configured through the agent options, see {@link #configure(AgentOptions)}:
+ * <ul>
+ * <li>{@code metrics}: whether to collect metrics, defaults to false</li>
+ * <li>{@code metrics.jmx}: whether to expose metrics through JMX as {@link #OBJECT_NAME}, defaults to true</li>
+ * <li>{@code metrics.interval}: the period in seconds at which to report metrics, defaults to 0 (never)</li>
+ * <li>{@code metrics.log}: whether periodic reports are logged, defaults to true</li>
+ * <li>{@code metrics.csv}: the path of a CSV file periodic reports are appended to, if any</li>
+ * </ul>
+ */
+public final class AgentMetrics {
+    /**
+     * The JMX object name metrics are registered under
+     */
+    public static final String OBJECT_NAME = "edu.mayo.bsi.uima.perf:type=AgentMetrics";
+    private static final String CSV_HEADER = "timestamp,metric,value";
+
+    private static final ConcurrentMap<String, InterceptorMetrics> INTERCEPTORS = new NonBlockingHashMap<String, InterceptorMetrics>();
+    private static volatile boolean enabled = false;
+
+    private AgentMetrics() {
+    }
+
+    /**
+     * Thread-safe: retrieves or creates the metrics of an interceptor
+     *
+     * @param name The name of the interceptor, typically that of the intercepted method
+     * @return The metrics of the named interceptor
+     */
+    public static InterceptorMetrics interceptor(String name) {
+        InterceptorMetrics ret = INTERCEPTORS.get(name);
+        if (ret == null) {
+            InterceptorMetrics created = new InterceptorMetrics(name);
+            ret = INTERCEPTORS.putIfAbsent(name, created);
+            if (ret == null) {
+                ret = created;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return The metrics of all interceptors, by name
+     */
+    public static SortedMap<String, InterceptorMetrics> interceptors() {
+        return new TreeMap<String, InterceptorMetrics>(INTERCEPTORS);
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        AgentMetrics.enabled = enabled;
+    }
+
+    /**
+     * Clears the metrics of all interceptors
+     */
+    public static void reset() {
+        for (InterceptorMetrics metrics : INTERCEPTORS.values()) {
+            metrics.reset();
+        }
+    }
+
+    /**
+     * Enables metrics and starts their reporting as specified by the agent options, see the class documentation
+     *
+     * @param options The agent options
+     */
+    public static void configure(AgentOptions options) {
+        if (!options.getBoolean("metrics", false)) {
+            return;
+        }
+        setEnabled(true);
+        if (options.getBoolean("metrics.jmx", true)) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new AgentMetricsBean(),
+                        new ObjectName(OBJECT_NAME));
+            } catch (Exception e) {
+                UIMAAgent.LOGGER.log(Level.WARNING, "Could not register agent metrics with JMX", e);
+            }
+        }
+        long interval = options.getLong("metrics.interval", 0);
+        final boolean log = options.getBoolean("metrics.log", true);
+        String csvPath = options.getString("metrics.csv", null);
+        final File csv = csvPath == null ? null : new File(csvPath);
+        if (interval <= 0 || (!log && csv == null)) {
+            return;
+        }
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread ret = new Thread(r, "UIMA-Agent-Metrics-Reporter");
+                ret.setDaemon(true);
+                return ret;
+            }
+        });
+        final Runnable report = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    report(log, csv);
+                } catch (Throwable t) {
+                    // An exception would cancel further reports
+                    UIMAAgent.LOGGER.log(Level.WARNING, "Could not report agent metrics", t);
+                }
+            }
+        };
+        reporter.scheduleAtFixedRate(report, interval, interval, TimeUnit.SECONDS);
+        // Report once more on exit so that metrics of short runs are not lost
+        Runtime.getRuntime().addShutdownHook(new Thread(report, "UIMA-Agent-Metrics-Final-Report"));
+    }
+
+    /**
+     * Reports current metrics
+     *
+     * @param log Whether to log the report
+     * @param csv The CSV file to append the report to, or null
+     */
+    static synchronized void report(boolean log, File csv) {
+        long timestamp = System.currentTimeMillis();
+        SortedMap<String, Number> values = snapshot();
+        if (log) {
+            StringBuilder sb = new StringBuilder("UIMA Agent metrics:");
+            for (Map.Entry<String, Number> e : values.entrySet()) {
+                sb.append("\n\t").append(e.getKey()).append(" = ").append(e.getValue());
+            }
+            UIMAAgent.LOGGER.log(Level.INFO, sb.toString());
+        }
+        if (csv != null) {
+            boolean header = !csv.exists() || csv.length() == 0;
+            Writer out = null;
+            try {
+                out = new FileWriter(csv, true);
+                if (header) {
+                    out.write(CSV_HEADER + "\n");
+                }
+                for (Map.Entry<String, Number> e : values.entrySet()) {
+                    out.write(timestamp + "," + e.getKey() + "," + e.getValue() + "\n");
+                }
+            } catch (IOException e) {
+                UIMAAgent.LOGGER.log(Level.WARNING, "Could not write agent metrics to " + csv, e);
+            } finally {
+                if (out != null) {
+                    try {
+                        out.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return All current metric values by metric name, of the form {@code interceptor.NAME.METRIC} and
+     * {@code indexes.METRIC}
+     */
+    static SortedMap<String, Number> snapshot() {
+        SortedMap<String, Number> ret = new TreeMap<String, Number>();
+        for (InterceptorMetrics metrics : INTERCEPTORS.values()) {
+            String prefix = "interceptor." + metrics.getName() + ".";
+            LatencyHistogram.Snapshot latency = metrics.getLatency();
+            ret.put(prefix + "calls", metrics.getCalls());
+            ret.put(prefix + "fallbacks", metrics.getFallbacks());
+            ret.put(prefix + "errors", metrics.getErrors());
+            ret.put(prefix + "hitRate", metrics.getHitRate());
+            ret.put(prefix + "meanMicros", latency.getMean() / 1000);
+            ret.put(prefix + "p50Micros", latency.getPercentile(50) / 1000D);
+            ret.put(prefix + "p90Micros", latency.getPercentile(90) / 1000D);
+            ret.put(prefix + "p99Micros", latency.getPercentile(99) / 1000D);
+            ret.put(prefix + "maxMicros", latency.getMax() / 1000D);
+            if (metrics.getShadowChecks() > 0) {
+                ret.put(prefix + "shadowChecks", metrics.getShadowChecks());
+                ret.put(prefix + "shadowMismatches", metrics.getShadowMismatches());
+                ret.put(prefix + "shadowSpeedup", metrics.getShadowSpeedup());
+            }
+        }
+        IndexStatistics indexes = IndexStatistics.gather();
+        ret.put("indexes.count", indexes.getIndexCount());
+        ret.put("indexes.annotations", indexes.getAnnotations());
+        ret.put("indexes.largest", indexes.getLargestIndex());
+        ret.put("indexes.memoryBytes", indexes.getMemoryEstimate());
+        return ret;
+    }
+}
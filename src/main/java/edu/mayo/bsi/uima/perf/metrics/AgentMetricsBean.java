@@ -0,0 +1,155 @@
+package edu.mayo.bsi.uima.perf.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Exposes {@link AgentMetrics} through JMX
+ */
+class AgentMetricsBean implements AgentMetricsMXBean {
+    private static final int MEAN = 0;
+    private static final int P50 = 1;
+    private static final int P99 = 2;
+    private static final int MAX = 3;
+
+    @Override
+    public boolean isEnabled() {
+        return AgentMetrics.isEnabled();
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        AgentMetrics.setEnabled(enabled);
+    }
+
+    @Override
+    public Map<String, Long> getCalls() {
+        Map<String, Long> ret = new TreeMap<String, Long>();
+        for (InterceptorMetrics metrics : AgentMetrics.interceptors().values()) {
+            ret.put(metrics.getName(), metrics.getCalls());
+        }
+        return ret;
+    }
+
+    @Override
+    public Map<String, Long> getFallbacks() {
+        Map<String, Long> ret = new TreeMap<String, Long>();
+        for (InterceptorMetrics metrics : AgentMetrics.interceptors().values()) {
+            ret.put(metrics.getName(), metrics.getFallbacks());
+        }
+        return ret;
+    }
+
+    @Override
+    public Map<String, Long> getErrors() {
+        Map<String, Long> ret = new TreeMap<String, Long>();
+        for (InterceptorMetrics metrics : AgentMetrics.interceptors().values()) {
+            ret.put(metrics.getName(), metrics.getErrors());
+        }
+        return ret;
+    }
+
+    @Override
+    public Map<String, Double> getHitRates() {
+        Map<String, Double> ret = new TreeMap<String, Double>();
+        for (InterceptorMetrics metrics : AgentMetrics.interceptors().values()) {
+            ret.put(metrics.getName(), metrics.getHitRate());
+        }
+        return ret;
+    }
+
+    @Override
+    public Map<String, Double> getMeanLatencyMicros() {
+        return latencies(MEAN);
+    }
+
+    @Override
+    public Map<String, Double> getP50LatencyMicros() {
+        return latencies(P50);
+    }
+
+    @Override
+    public Map<String, Double> getP99LatencyMicros() {
+        return latencies(P99);
+    }
+
+    @Override
+    public Map<String, Double> getMaxLatencyMicros() {
+        return latencies(MAX);
+    }
+
+    @Override
+    public Map<String, Long> getShadowChecks() {
+        Map<String, Long> ret = new TreeMap<String, Long>();
+        for (InterceptorMetrics metrics : AgentMetrics.interceptors().values()) {
+            ret.put(metrics.getName(), metrics.getShadowChecks());
+        }
+        return ret;
+    }
+
+    @Override
+    public Map<String, Long> getShadowMismatches() {
+        Map<String, Long> ret = new TreeMap<String, Long>();
+        for (InterceptorMetrics metrics : AgentMetrics.interceptors().values()) {
+            ret.put(metrics.getName(), metrics.getShadowMismatches());
+        }
+        return ret;
+    }
+
+    @Override
+    public Map<String, Double> getShadowSpeedups() {
+        Map<String, Double> ret = new TreeMap<String, Double>();
+        for (InterceptorMetrics metrics : AgentMetrics.interceptors().values()) {
+            ret.put(metrics.getName(), metrics.getShadowSpeedup());
+        }
+        return ret;
+    }
+
+    @Override
+    public int getIndexCount() {
+        return IndexStatistics.gather().getIndexCount();
+    }
+
+    @Override
+    public long getIndexedAnnotations() {
+        return IndexStatistics.gather().getAnnotations();
+    }
+
+    @Override
+    public long getLargestIndex() {
+        return IndexStatistics.gather().getLargestIndex();
+    }
+
+    @Override
+    public long getIndexMemoryEstimate() {
+        return IndexStatistics.gather().getMemoryEstimate();
+    }
+
+    @Override
+    public void reset() {
+        AgentMetrics.reset();
+    }
+
+    private static Map<String, Double> latencies(int statistic) {
+        Map<String, Double> ret = new TreeMap<String, Double>();
+        for (InterceptorMetrics metrics : AgentMetrics.interceptors().values()) {
+            LatencyHistogram.Snapshot latency = metrics.getLatency();
+            double nanos;
+            switch (statistic) {
+                case MEAN:
+                    nanos = latency.getMean();
+                    break;
+                case P50:
+                    nanos = latency.getPercentile(50);
+                    break;
+                case P99:
+                    nanos = latency.getPercentile(99);
+                    break;
+                default:
+                    nanos = latency.getMax();
+            }
+            ret.put(metrics.getName(), nanos / 1000);
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,54 @@
+package edu.mayo.bsi.uima.perf.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX management interface of the agent's metrics, registered as {@link AgentMetrics#OBJECT_NAME}.
+ * <p>
+ * Per-interceptor attributes are maps keyed by interceptor name. Latencies are of the work done by the agent, in
+ * microseconds
+ */
+public interface AgentMetricsMXBean {
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    Map<String, Long> getCalls();
+
+    Map<String, Long> getFallbacks();
+
+    Map<String, Long> getErrors();
+
+    Map<String, Double> getHitRates();
+
+    Map<String, Double> getMeanLatencyMicros();
+
+    Map<String, Double> getP50LatencyMicros();
+
+    Map<String, Double> getP99LatencyMicros();
+
+    Map<String, Double> getMaxLatencyMicros();
+
+    Map<String, Long> getShadowChecks();
+
+    Map<String, Long> getShadowMismatches();
+
+    /**
+     * @return By interceptor, the ratio of time taken by the original implementation to that of the accelerated one
+     * over calls verified in shadow mode
+     */
+    Map<String, Double> getShadowSpeedups();
+
+    int getIndexCount();
+
+    long getIndexedAnnotations();
+
+    long getLargestIndex();
+
+    long getIndexMemoryEstimate();
+
+    /**
+     * Clears all interceptor counters and latencies
+     */
+    void reset();
+}
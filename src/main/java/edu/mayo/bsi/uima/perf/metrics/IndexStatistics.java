@@ -0,0 +1,69 @@
+package edu.mayo.bsi.uima.perf.metrics;
+
+import edu.mayo.bsi.uima.perf.AnnotationIndices;
+import edu.mayo.bsi.uima.perf.structures.AnnotationIndex;
+
+/**
+ * Aggregate size and memory estimates of all tracked {@link AnnotationIndex}es at a point in time
+ */
+public final class IndexStatistics {
+    private final int indexCount;
+    private final long annotations;
+    private final long largestIndex;
+    private final long memoryEstimate;
+
+    private IndexStatistics(int indexCount, long annotations, long largestIndex, long memoryEstimate) {
+        this.indexCount = indexCount;
+        this.annotations = annotations;
+        this.largestIndex = largestIndex;
+        this.memoryEstimate = memoryEstimate;
+    }
+
+    /**
+     * Thread-safe: gathers statistics of currently tracked indexes, which may be in concurrent use
+     *
+     * @return The gathered statistics
+     */
+    public static IndexStatistics gather() {
+        int count = 0;
+        long annotations = 0;
+        long largest = 0;
+        long memory = 0;
+        for (AnnotationIndex index : AnnotationIndices.trackedIndexes()) {
+            int size = index.size();
+            count++;
+            annotations += size;
+            largest = Math.max(largest, size);
+            memory += index.estimateMemory();
+        }
+        return new IndexStatistics(count, annotations, largest, memory);
+    }
+
+    /**
+     * @return The number of tracked indexes, i.e. of CAS views with an index
+     */
+    public int getIndexCount() {
+        return indexCount;
+    }
+
+    /**
+     * @return The number of annotations across all tracked indexes
+     */
+    public long getAnnotations() {
+        return annotations;
+    }
+
+    /**
+     * @return The number of annotations in the largest tracked index
+     */
+    public long getLargestIndex() {
+        return largestIndex;
+    }
+
+    /**
+     * @return An estimate, in bytes, of the heap memory used by all tracked indexes
+     */
+    public long getMemoryEstimate() {
+        return memoryEstimate;
+    }
+}
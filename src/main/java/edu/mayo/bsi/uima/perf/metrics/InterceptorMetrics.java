@@ -0,0 +1,147 @@
+package edu.mayo.bsi.uima.perf.metrics;
+
+import org.cliffc.high_scale_lib.Counter;
+
+/**
+ * Metrics of a single interceptor: the number of calls it handled, how many of those were delegated back to the
+ * original UIMA implementation or failed, and the latency of the work done by the agent.
+ * <p>
+ * Usage is of the form:
+ * <pre>
+ * long start = METRICS.start();
+ * try {
+ *     ...
+ * } finally {
+ *     METRICS.stop(start);
+ * }
+ * </pre>
+ * When metrics are disabled, {@link #start()} and {@link #stop(long)} do not read the clock or record anything
+ */
+public final class InterceptorMetrics {
+    private static final long NOT_STARTED = Long.MIN_VALUE;
+
+    private final String name;
+    private final Counter calls = new Counter();
+    private final Counter fallbacks = new Counter();
+    private final Counter errors = new Counter();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    // Shadow verification of sampled calls, see edu.mayo.bsi.uima.perf.interceptors.perf.ShadowVerifier
+    private final Counter shadowChecks = new Counter();
+    private final Counter shadowMismatches = new Counter();
+    private final Counter shadowAcceleratedNanos = new Counter();
+    private final Counter shadowOriginalNanos = new Counter();
+
+    InterceptorMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return A token to pass to {@link #stop(long)} once the intercepted work completes
+     */
+    public long start() {
+        return AgentMetrics.isEnabled() ? System.nanoTime() : NOT_STARTED;
+    }
+
+    /**
+     * Records an intercepted call, with its latency measured from the given start token
+     *
+     * @param start The token returned by {@link #start()}
+     */
+    public void stop(long start) {
+        if (start != NOT_STARTED) {
+            calls.increment();
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records that an intercepted call was delegated back to the original implementation
+     */
+    public void fallback() {
+        if (AgentMetrics.isEnabled()) {
+            fallbacks.increment();
+        }
+    }
+
+    /**
+     * Records that an error occurred during an intercepted call
+     */
+    public void error() {
+        if (AgentMetrics.isEnabled()) {
+            errors.increment();
+        }
+    }
+
+    /**
+     * Records the verification of an accelerated call against the original implementation. Recorded regardless of
+     * whether metrics are enabled, as verification is only done when explicitly configured
+     *
+     * @param acceleratedNanos The time taken by the accelerated implementation
+     * @param originalNanos    The time taken by the original implementation
+     * @param match            Whether both implementations returned the same result
+     */
+    public void shadowed(long acceleratedNanos, long originalNanos, boolean match) {
+        shadowChecks.increment();
+        if (!match) {
+            shadowMismatches.increment();
+        }
+        shadowAcceleratedNanos.add(acceleratedNanos);
+        shadowOriginalNanos.add(originalNanos);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getFallbacks() {
+        return fallbacks.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * @return The fraction of calls served by the agent rather than delegated back, or 1 if there were no calls
+     */
+    public double getHitRate() {
+        long total = calls.get();
+        return total == 0 ? 1 : 1 - (double) Math.min(fallbacks.get(), total) / total;
+    }
+
+    public long getShadowChecks() {
+        return shadowChecks.get();
+    }
+
+    public long getShadowMismatches() {
+        return shadowMismatches.get();
+    }
+
+    /**
+     * @return The ratio of the time taken by the original implementation to that taken by the accelerated one over
+     * verified calls, or 0 if no calls were verified
+     */
+    public double getShadowSpeedup() {
+        long accelerated = shadowAcceleratedNanos.get();
+        return accelerated == 0 ? 0 : (double) shadowOriginalNanos.get() / accelerated;
+    }
+
+    public LatencyHistogram.Snapshot getLatency() {
+        return latency.snapshot();
+    }
+
+    void reset() {
+        calls.set(0);
+        fallbacks.set(0);
+        errors.set(0);
+        latency.reset();
+        shadowChecks.set(0);
+        shadowMismatches.set(0);
+        shadowAcceleratedNanos.set(0);
+        shadowOriginalNanos.set(0);
+    }
+}
@@ -0,0 +1,169 @@
+package edu.mayo.bsi.uima.perf.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent latency histogram with log-linear buckets in the style of HdrHistogram: each power of two range is split
+ * into {@link #SUB_BUCKETS} equal buckets, bounding the relative error of any reported value to 1/{@link #SUB_BUCKETS}
+ * over the full range of recordable values.
+ * <p>
+ * Bucket counts are striped by recording thread so that threads recording concurrently rarely contend on the same
+ * counter. Recording is wait-free other than for the running maximum, which is only contended when a new maximum is
+ * being set
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    /**
+     * The number of buckets each power of two range of values is split into
+     */
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values up to 2^40ns, or roughly 18 minutes, are recorded precisely, greater values in the last bucket
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+    private static final int STRIPES;
+
+    static {
+        int stripes = 1;
+        while (stripes < 8 && stripes < Runtime.getRuntime().availableProcessors()) {
+            stripes <<= 1;
+        }
+        STRIPES = stripes;
+    }
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS * STRIPES);
+    private final AtomicLongArray sums = new AtomicLongArray(STRIPES);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param value The value to record, typically a duration in nanoseconds. Negative values are recorded as 0
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        counts.incrementAndGet(stripe * BUCKETS + bucket(value));
+        sums.addAndGet(stripe, value);
+        long currMax;
+        while (value > (currMax = max.get())) {
+            if (max.compareAndSet(currMax, value)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Clears all recorded values. Values recorded concurrently may be partially retained
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        for (int i = 0; i < sums.length(); i++) {
+            sums.set(i, 0);
+        }
+        max.set(0);
+    }
+
+    /**
+     * @return A point in time copy of the recorded values. Values recorded concurrently may be partially reflected
+     */
+    public Snapshot snapshot() {
+        long[] merged = new long[BUCKETS];
+        long count = 0;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            for (int i = 0; i < BUCKETS; i++) {
+                long c = counts.get(stripe * BUCKETS + i);
+                merged[i] += c;
+                count += c;
+            }
+        }
+        long sum = 0;
+        for (int i = 0; i < sums.length(); i++) {
+            sum += sums.get(i);
+        }
+        return new Snapshot(merged, count, sum, max.get());
+    }
+
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return The greatest value falling into the given bucket
+     */
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * Recorded values of a {@link LatencyHistogram} at a point in time
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * @return The number of recorded values
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return The mean of recorded values, or 0 if none were recorded
+         */
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * @return The greatest recorded value, or 0 if none were recorded
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * @param percentile The percentile, between 0 and 100
+         * @return An upper bound of the value at the given percentile, or 0 if no values were recorded
+         */
+        public long getPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(Math.max(0, Math.min(100, percentile)) / 100 * count);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(upperBound(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package edu.mayo.bsi.uima.perf.structures;
 
+import org.apache.uima.cas.Type;
 import org.apache.uima.cas.text.AnnotationFS;
 import org.apache.uima.jcas.JCas;
 
@@ -12,16 +13,35 @@ import java.util.Map;
  * {@link org.apache.uima.cas.CAS} objects, which are in and of themselves not-threadsafe, implementations
  * of this class similarly need not be threadsafe.
  * <p>
- * The algorithmic implementation of collision and positional checking for the index is extremely similar to that of
- * an axis-aligned bounding box
+ * The algorithmic implementation of collision and positional checking for the index is that of an augmented interval
+ * tree laid out implicitly over annotations sorted by starting position
+ * <p>
+ * Lists returned by queries are views over the index storage, filtered lazily as they are consumed. They remain valid,
+ * and unaffected, if the index is subsequently modified. Like the lists returned by uimaFIT, they may be modified by
+ * their caller, which copies them on the first modification and leaves the index untouched
  */
 public interface AnnotationIndex {
 
     /**
-     * The size at which a leaf should be constructed in the tree as opposed to the node
+     * The default entry count at or below which a subtree is scanned linearly as opposed to traversed
      */
     int MIN_LEAF_SIZE = 20;
 
+    /**
+     * The default initial storage capacity of each type partition of an index
+     */
+    int INITIAL_CAPACITY = 16;
+
+    /**
+     * The default annotation count at or above which bulk inserts are sorted in parallel
+     */
+    int PARALLEL_THRESHOLD = 100000;
+
+    /**
+     * The default number of character offsets covered by each tile of a {@link TiledAnnotationIndex}
+     */
+    int TILE_SIZE = 16384;
+
     /**
      * Adds a new Annotation to the index
      *
@@ -29,6 +49,14 @@ public interface AnnotationIndex {
      */
     void insert(AnnotationFS ann);
 
+    /**
+     * Adds a batch of annotations to the index, sizing storage for the entire batch up front. Preferable to repeated
+     * {@link #insert(AnnotationFS)} calls when populating an index from an existing CAS
+     *
+     * @param anns The annotations to add
+     */
+    void insertAll(Collection<? extends AnnotationFS> anns);
+
     /**
      * Removes an annotation from the index
      *
@@ -54,6 +82,16 @@ public interface AnnotationIndex {
      */
     <T extends AnnotationFS> List<T> getCovered(int start, int end, Class<T> clazz);
 
+    /**
+     * See: {@link org.apache.uima.fit.util.JCasUtil#selectCovered(Class, AnnotationFS)}
+     * @param coveringAnnotation The annotation whose bounds to search within
+     * @param clazz A class definition for the Annotation type to retrieve
+     * @param <T>   An implementation of {@link AnnotationFS}
+     * @return As {@link #getCovered(int, int, Class)} over the bounds of the covering annotation, excluding the covering
+     * annotation itself but not other annotations sharing its span
+     */
+    <T extends AnnotationFS> List<T> getCovered(AnnotationFS coveringAnnotation, Class<T> clazz);
+
     /**
      * @param start The starting bound character position
      * @param end   The end bound character position
@@ -63,37 +101,134 @@ public interface AnnotationIndex {
      */
     <T extends AnnotationFS> List<T> getCollisions(int start, int end, Class<T> clazz);
 
-//    /**
-//     * See: {@link org.apache.uima.fit.util.JCasUtil#indexCovered(JCas, Class, Class)}
-//     * @param type The type to create an index for
-//     * @param coveredType The type of annotation covered to search for
-//     * @param <T> The covering type
-//     * @param <S> The covered type
-//     * @return A map of T to a collection of S that they cover
-//     */
-//    <T extends AnnotationFS, S extends AnnotationFS> Map<T,Collection<S>> indexCovered(Class<? extends T> type, Class<? extends S> coveredType);
-//
-//    /**
-//     * See: {@link org.apache.uima.fit.util.JCasUtil#indexCovering(JCas, Class, Class)}
-//     * @param type The type to create an index for
-//     * @param coveredType The type of annotation covered to search for
-//     * @param <T> The covering type
-//     * @param <S> The covered type
-//     * @return A map of T to a collection of S that they cover
-//     */
-//    <T extends AnnotationFS, S extends AnnotationFS> Map<T,Collection<S>> indexCovering(Class<? extends T> type, Class<? extends S> coveredType);
-
-    // TODO add other JCasUtil interceptions
-
-    /**
-     * Grows the index until it can contain a character count of a given size
+    /**
+     * See: {@link org.apache.uima.fit.util.JCasUtil#indexCovered(JCas, Class, Class)}
+     * @param type The type to create an index for
+     * @param coveredType The type of annotation covered to search for
+     * @param <T> The covering type
+     * @param <S> The covered type
+     * @return An unmodifiable map of T to a modifiable collection of S that they cover
+     */
+    <T extends AnnotationFS, S extends AnnotationFS> Map<T, Collection<S>> indexCovered(Class<? extends T> type, Class<? extends S> coveredType);
+
+    /**
+     * See: {@link org.apache.uima.fit.util.JCasUtil#indexCovering(JCas, Class, Class)}
+     * @param type The type to create an index for
+     * @param coveringType The type of annotation covering to search for
+     * @param <T> The covered type
+     * @param <S> The covering type
+     * @return An unmodifiable map of T to a modifiable collection of S that cover them
+     */
+    <T extends AnnotationFS, S extends AnnotationFS> Map<T, Collection<S>> indexCovering(Class<? extends T> type, Class<? extends S> coveringType);
+
+    /**
+     * See: {@link org.apache.uima.fit.util.CasUtil#selectPreceding(org.apache.uima.cas.CAS, Type, AnnotationFS, int)}
+     * @param type The type of annotation to retrieve
+     * @param anchor The annotation to search before
+     * @param count The maximum number of annotations to retrieve
+     * @param <T> An implementation of {@link AnnotationFS}
+     * @return Up to count annotations of the given type ending at or before the start of the anchor, closest to the
+     * anchor, ordered by starting position
+     */
+    <T extends AnnotationFS> List<T> getPreceding(Type type, AnnotationFS anchor, int count);
+
+    /**
+     * See: {@link org.apache.uima.fit.util.CasUtil#selectFollowing(org.apache.uima.cas.CAS, Type, AnnotationFS, int)}
+     * @param type The type of annotation to retrieve
+     * @param anchor The annotation to search after
+     * @param count The maximum number of annotations to retrieve
+     * @param <T> An implementation of {@link AnnotationFS}
+     * @return Up to count annotations of the given type starting at or after the end of the anchor, closest to the
+     * anchor, ordered by starting position
+     */
+    <T extends AnnotationFS> List<T> getFollowing(Type type, AnnotationFS anchor, int count);
+
+    /**
+     * See: {@link org.apache.uima.fit.util.CasUtil#selectBetween(org.apache.uima.cas.CAS, Type, AnnotationFS, AnnotationFS)}
+     * @param type The type of annotation to retrieve
+     * @param first An annotation delimiting one side of the range, in either order with second
+     * @param second An annotation delimiting the other side of the range
+     * @param <T> An implementation of {@link AnnotationFS}
+     * @return An ordered set of T in list form lying between the two annotations, excluding either delimiter
+     */
+    <T extends AnnotationFS> List<T> getBetween(Type type, AnnotationFS first, AnnotationFS second);
+
+    /**
+     * See: {@link org.apache.uima.fit.util.CasUtil#select(org.apache.uima.cas.CAS, Type)}
+     * @param type The type of annotation to retrieve
+     * @param <T> An implementation of {@link AnnotationFS}
+     * @return All annotations of the given type or any of its subtypes in list form, ordered by starting position
+     */
+    <T extends AnnotationFS> List<T> getAll(Type type);
+
+    /**
+     * See: {@link org.apache.uima.fit.util.CasUtil#selectAt(org.apache.uima.cas.CAS, Type, int, int)}
+     * @param type The type of annotation to retrieve
+     * @param begin The begin of the span to look up
+     * @param end The end of the span to look up
+     * @param <T> An implementation of {@link AnnotationFS}
+     * @return The annotations of the given type located at the given span in list form, ordered by starting position
+     */
+    <T extends AnnotationFS> List<T> getAt(Type type, int begin, int end);
+
+    /**
+     * See: {@link org.apache.uima.cas.text.AnnotationIndex#subiterator(AnnotationFS, boolean, boolean)}
+     * @param type The type of annotation to retrieve
+     * @param bound The annotation bounding the results
+     * @param ambiguous Whether to return overlapping annotations, as opposed to only those beginning at or after the
+     *                  end of the previously returned annotation
+     * @param strict Whether to only return annotations ending at or before the end of the bounding annotation
+     * @param <T> An implementation of {@link AnnotationFS}
+     * @return The annotations of the given type following the bounding annotation in index order and beginning within
+     * it in list form, ordered by starting position
+     */
+    <T extends AnnotationFS> List<T> getSubiterated(Type type, AnnotationFS bound, boolean ambiguous, boolean strict);
+
+    /**
+     * See: {@link org.apache.uima.fit.util.JCasUtil#contains(JCas, AnnotationFS, Class)}
+     * @param type The type of annotation to search for
+     * @param coveringAnnotation The annotation to search within
+     * @return Whether any annotation of the given type other than the covering annotation itself lies within it
+     */
+    boolean containsCovered(Type type, AnnotationFS coveringAnnotation);
+
+    /**
+     * Grows the index until it can contain annotations spanning a character count of a given size
      *
      * @param size The size to grow to (the actual end size may be larger)
      */
     void grow(int size);
 
+    /**
+     * Applies any buffered modifications to the index structure, such that they are not paid for by the next query
+     */
+    void flush();
+
     /**
      * Empties the index of its contents
      */
     void clear();
+
+    /**
+     * Empties the index of its contents like {@link #clear()}, but retains its storage for reuse by the annotations
+     * subsequently inserted, e.g. those of the next document processed in a pooled CAS. Unlike with {@link #clear()},
+     * results of queries made before are invalidated
+     */
+    void recycle();
+
+    /**
+     * Unlike other operations, may be called for monitoring purposes from threads other than the one using the index,
+     * in which case the result is approximate and does not wait for or reflect in-progress modifications
+     *
+     * @return The number of annotations in the index
+     */
+    int size();
+
+    /**
+     * Like {@link #size()}, may be called for monitoring purposes from other threads
+     *
+     * @return An estimate, in bytes, of the heap memory used by the index structure itself, excluding the indexed
+     * annotations, which belong to the CAS
+     */
+    long estimateMemory();
 }
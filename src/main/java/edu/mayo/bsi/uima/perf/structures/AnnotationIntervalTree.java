@@ -0,0 +1,839 @@
+package edu.mayo.bsi.uima.perf.structures;
+
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.text.AnnotationFS;
+
+import java.util.*;
+
+/**
+ * A flat interval index in which every annotation is stored exactly once, regardless of its length. Instances hold a
+ * single partition of an {@link AnnotationRoot}.
+ * <p>
+ * Annotations are kept in parallel arrays sorted by begin ascending, end descending (ties retain insertion order),
+ * which is also the order UIMA's built-in annotation index iterates in. The sorted arrays are additionally treated as
+ * an implicit binary tree in the style of Heng Li's cgranges, where each position records the maximum end offset
+ * found in the subtree rooted at it. Covered queries are then a binary search followed by a linear scan, while
+ * covering and collision queries are a top-down traversal that prunes every subtree ending before the query span.
+ * <p>
+ * Inserts are appended to an unsorted pending buffer and merged into the sorted arrays on the next query, so that
+ * runs of inserts pay for a single merge rather than one shift each.
+ * <p>
+ * Query results and snapshots are views over the sorted storage rather than copies of it. Once any has been handed
+ * out, the storage is copied before it is next modified, so that outstanding views remain valid.
+ * <p>
+ * Removals from sorted storage are located by binary search on (begin, end) followed by an identity (i.e. FS address)
+ * match among annotations sharing that span, and only mark the annotation as removed rather than shifting storage.
+ * Each mark records a stamp that increases with every removal, so that views taken before a removal still see the
+ * removed annotation. Marked annotations are compacted away once they make up a quarter of the storage, or at the next
+ * merge.
+ * <p>
+ * Trees are not thread-safe, as even queries merge pending inserts and rebuild the augmentation. {@link #freeze()}
+ * instead provides an immutable copy sharing the tree's storage, which any number of threads may query at once.
+ */
+final class AnnotationIntervalTree {
+
+    // Approximate JVM object layout, assuming compressed references, for memory estimates
+    private static final int OBJECT_OVERHEAD = 16;
+    private static final int REFERENCE_SIZE = 4;
+
+    /**
+     * Subtrees at or below this level are small enough (no more than the leaf size the tree was created with) that
+     * they are scanned linearly rather than descended into
+     */
+    private final int scanLevel;
+    private final int initialCapacity;
+    private final Type type;
+
+    // Sorted storage
+    private AnnotationFS[] fs;
+    private int[] begin;
+    private int[] end;
+    private int[] maxEnd;
+    private int size;
+    private int rootLevel;
+    private boolean augmented;
+    // Whether the sorted storage is referenced by an outstanding view or snapshot
+    private boolean shared;
+    // Stamp of the removal of each position, 0 if not removed. Allocated on the first removal since the last compaction
+    private int[] removedAt;
+    private int removed;
+    private int stamp;
+
+    // Annotations inserted since the last merge, in insertion order
+    private AnnotationFS[] pendingFs;
+    private int[] pendingBegin;
+    private int[] pendingEnd;
+    private int pendingSize;
+
+    // Immutable copy of the current contents, if one was requested since the last modification
+    private AnnotationIntervalTree frozen;
+
+    /**
+     * @param type            The type of the annotations of this partition
+     * @param leafSize        The entry count at or below which a subtree is scanned linearly as opposed to traversed
+     * @param initialCapacity The initial capacity of the sorted storage and pending buffer
+     */
+    AnnotationIntervalTree(Type type, int leafSize, int initialCapacity) {
+        this.type = type;
+        int k = 0;
+        while ((1 << (k + 2)) - 1 <= leafSize) {
+            k++;
+        }
+        scanLevel = k;
+        this.initialCapacity = Math.max(1, initialCapacity);
+        fs = new AnnotationFS[this.initialCapacity];
+        begin = new int[this.initialCapacity];
+        end = new int[this.initialCapacity];
+        maxEnd = new int[this.initialCapacity];
+        size = 0;
+        rootLevel = -1;
+        augmented = true;
+        shared = false;
+        pendingFs = new AnnotationFS[this.initialCapacity];
+        pendingBegin = new int[this.initialCapacity];
+        pendingEnd = new int[this.initialCapacity];
+        pendingSize = 0;
+    }
+
+    /**
+     * Creates an immutable copy of a merged, compacted and augmented tree, sharing its sorted storage
+     */
+    private AnnotationIntervalTree(AnnotationIntervalTree source) {
+        scanLevel = source.scanLevel;
+        initialCapacity = source.initialCapacity;
+        type = source.type;
+        fs = source.fs;
+        begin = source.begin;
+        end = source.end;
+        // The augmentation is rebuilt in place by the source tree, unlike the storage it copies before modifying
+        maxEnd = source.maxEnd.clone();
+        size = source.size;
+        rootLevel = source.rootLevel;
+        augmented = true;
+        shared = true;
+        pendingFs = new AnnotationFS[0];
+        pendingBegin = new int[0];
+        pendingEnd = new int[0];
+        pendingSize = 0;
+        frozen = this;
+    }
+
+    /**
+     * @return The type of the annotations of this partition
+     */
+    Type type() {
+        return type;
+    }
+
+    void insert(AnnotationFS ann) {
+        insert(ann, ann.getBegin(), ann.getEnd());
+    }
+
+    /**
+     * @param ann   The annotation to insert
+     * @param begin The begin of the annotation, as already read by the caller
+     * @param end   The end of the annotation, as already read by the caller
+     */
+    void insert(AnnotationFS ann, int begin, int end) {
+        frozen = null;
+        if (pendingSize == pendingFs.length) {
+            int cap = pendingSize << 1;
+            pendingFs = Arrays.copyOf(pendingFs, cap);
+            pendingBegin = Arrays.copyOf(pendingBegin, cap);
+            pendingEnd = Arrays.copyOf(pendingEnd, cap);
+        }
+        pendingFs[pendingSize] = ann;
+        pendingBegin[pendingSize] = begin;
+        pendingEnd[pendingSize] = end;
+        pendingSize++;
+    }
+
+    /**
+     * Ensures the pending buffer can take the given number of further inserts without being resized
+     */
+    void ensurePendingCapacity(int additional) {
+        int required = pendingSize + additional;
+        if (required > pendingFs.length) {
+            pendingFs = Arrays.copyOf(pendingFs, required);
+            pendingBegin = Arrays.copyOf(pendingBegin, required);
+            pendingEnd = Arrays.copyOf(pendingEnd, required);
+        }
+    }
+
+    void remove(AnnotationFS ann) {
+        frozen = null;
+        int b = ann.getBegin();
+        int e = ann.getEnd();
+        // Most removals are of recently added annotations, so check the pending buffer first
+        for (int i = pendingSize - 1; i >= 0; i--) {
+            if (pendingBegin[i] == b && pendingEnd[i] == e && pendingFs[i].equals(ann)) {
+                int tail = pendingSize - i - 1;
+                System.arraycopy(pendingFs, i + 1, pendingFs, i, tail);
+                System.arraycopy(pendingBegin, i + 1, pendingBegin, i, tail);
+                System.arraycopy(pendingEnd, i + 1, pendingEnd, i, tail);
+                pendingFs[--pendingSize] = null;
+                return;
+            }
+        }
+        for (int i = lowerBound(b, e); i < size && begin[i] == b && end[i] == e; i++) {
+            if (alive(i) && fs[i].equals(ann)) {
+                if (removedAt == null) {
+                    removedAt = new int[fs.length];
+                }
+                // Stamps are only ever set once per position until compaction, so views holding this array are
+                // unaffected by later removals
+                removedAt[i] = ++stamp;
+                removed++;
+                if (removed > size >> 2) {
+                    compact();
+                }
+                return;
+            }
+        }
+    }
+
+    <T extends AnnotationFS> AnnotationView<T> getCovering(int start, int end, Class<T> clazz) {
+        merge();
+        augment();
+        PositionList hits = new PositionList();
+        stab(start, end, hits);
+        return view(hits.elements(), 0, hits.size(), Integer.MAX_VALUE, clazz);
+    }
+
+    <T extends AnnotationFS> AnnotationView<T> getAll(Class<T> clazz) {
+        merge();
+        return view(null, 0, size, Integer.MAX_VALUE, clazz);
+    }
+
+    /**
+     * @param excluded An annotation to leave out of the results, or null
+     */
+    <T extends AnnotationFS> AnnotationView<T> getCovered(int start, int end, Class<T> clazz, AnnotationFS excluded) {
+        merge();
+        return view(null, lowerBound(start), upperBound(end), end, clazz, excluded);
+    }
+
+    <T extends AnnotationFS> AnnotationView<T> getCollisions(int start, int end, Class<T> clazz) {
+        merge();
+        augment();
+        // Every collision begins no later than the query end and ends no earlier than the query start
+        PositionList hits = new PositionList();
+        stab(end, start, hits);
+        int[] positions = hits.elements();
+        int count = 0;
+        for (int i = 0; i < hits.size(); i++) {
+            int pos = positions[i];
+            // Exclude annotations ending exactly at a query start they also begin before
+            if (!(this.begin[pos] < start && this.end[pos] == start)) {
+                positions[count++] = pos;
+            }
+        }
+        return view(positions, 0, count, Integer.MAX_VALUE, clazz);
+    }
+
+    /**
+     * @param start      The anchor begin
+     * @param end        The anchor end
+     * @param tiesBefore Whether annotations sharing the anchor span sort before the anchor, i.e. this partition's type
+     *                   precedes the anchor's in type priority
+     * @param count      The maximum number of annotations to return
+     * @return The annotations ending at or before the begin of an anchor span that are closest to it in index order,
+     * mirroring {@link org.apache.uima.fit.util.CasUtil#selectPreceding(org.apache.uima.cas.CAS,
+     * org.apache.uima.cas.Type, AnnotationFS, int)}
+     */
+    SortedAnnotations getPreceding(int start, int end, boolean tiesBefore, int count) {
+        merge();
+        // Walk backwards from the last annotation sorting before the anchor, skipping anything still open at the anchor
+        int found = 0;
+        int from = anchorPosition(start, end, tiesBefore) - 1;
+        int i = from;
+        while (i >= 0 && found < count) {
+            if (this.end[i] <= start && alive(i)) {
+                found++;
+            }
+            i--;
+        }
+        return run(i + 1, from + 1, start, found);
+    }
+
+    /**
+     * @param start      The anchor begin
+     * @param end        The anchor end
+     * @param tiesBefore Whether annotations sharing the anchor span sort before the anchor
+     * @return The position of the first annotation at or after the given anchor in index order, or -1 if there is
+     * none. Valid until the tree is next modified
+     */
+    int ceiling(int start, int end, boolean tiesBefore) {
+        merge();
+        int i = anchorPosition(start, end, tiesBefore);
+        while (i < size && !alive(i)) {
+            i++;
+        }
+        return i < size ? i : -1;
+    }
+
+    AnnotationFS annotationAt(int pos) {
+        return fs[pos];
+    }
+
+    int beginAt(int pos) {
+        return begin[pos];
+    }
+
+    int endAt(int pos) {
+        return end[pos];
+    }
+
+    /**
+     * @param start      The anchor begin
+     * @param end        The anchor end
+     * @param tiesBefore Whether annotations sharing the anchor span sort before the anchor
+     * @param count      The maximum number of annotations to return
+     * @return The annotations beginning at or after the end of an anchor span that are closest to it in index order,
+     * mirroring {@link org.apache.uima.fit.util.CasUtil#selectFollowing(org.apache.uima.cas.CAS,
+     * org.apache.uima.cas.Type, AnnotationFS, int)}
+     */
+    SortedAnnotations getFollowing(int start, int end, boolean tiesBefore, int count) {
+        merge();
+        int i = anchorPosition(start, end, tiesBefore);
+        while (i < size && begin[i] < end) {
+            i++;
+        }
+        return run(i, size, Integer.MAX_VALUE, count);
+    }
+
+    /**
+     * @param start The starting bound character position
+     * @param end   The end bound character position
+     * @return The annotations within the given bounds, as a run that, unlike
+     * {@link #getCovered(int, int, Class, AnnotationFS)}, can be merged with those of other trees by offset
+     */
+    SortedAnnotations getCoveredRun(int start, int end) {
+        merge();
+        return run(lowerBound(start), upperBound(end), end, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param start The first begin to include
+     * @param end   The last begin to include
+     * @return The annotations beginning within the given bounds, irrespective of where they end, as a run
+     */
+    SortedAnnotations getStartingRun(int start, int end) {
+        merge();
+        return run(lowerBound(start), upperBound(end), Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return A copy of the live annotations at positions [from, to) ending at or before the given bound, up to the
+     * given count, along with their offsets
+     */
+    private SortedAnnotations run(int from, int to, int endBound, int limit) {
+        int capacity = Math.max(0, Math.min(to - from, limit));
+        if (capacity == 0) {
+            return SortedAnnotations.EMPTY;
+        }
+        AnnotationFS[] retFs = new AnnotationFS[capacity];
+        int[] retBegin = new int[capacity];
+        int[] retEnd = new int[capacity];
+        int count = 0;
+        for (int i = from; i < to && count < limit; i++) {
+            if (end[i] <= endBound && alive(i)) {
+                retFs[count] = fs[i];
+                retBegin[count] = begin[i];
+                retEnd[count] = end[i];
+                count++;
+            }
+        }
+        return new SortedAnnotations(retFs, retBegin, retEnd, count);
+    }
+
+    /**
+     * @param start   The starting bound character position
+     * @param end     The end bound character position
+     * @param exclude An annotation to disregard, or null
+     * @return Whether any annotation other than the excluded one lies within the given bounds
+     */
+    boolean hasCovered(int start, int end, AnnotationFS exclude) {
+        merge();
+        for (int i = lowerBound(start); i < size && begin[i] <= end; i++) {
+            if (this.end[i] <= end && alive(i) && (exclude == null || !fs[i].equals(exclude))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The number of inserts not yet merged into sorted storage
+     */
+    int pendingSize() {
+        return pendingSize;
+    }
+
+    /**
+     * Merges pending inserts and rebuilds the augmentation ahead of the next query
+     */
+    void flush() {
+        merge();
+        augment();
+    }
+
+    void clear() {
+        frozen = null;
+        removedAt = null;
+        removed = 0;
+        stamp = 0;
+        if (shared) {
+            fs = new AnnotationFS[initialCapacity];
+            begin = new int[initialCapacity];
+            end = new int[initialCapacity];
+            maxEnd = new int[initialCapacity];
+            shared = false;
+        } else {
+            Arrays.fill(fs, 0, size, null);
+        }
+        Arrays.fill(pendingFs, 0, pendingSize, null);
+        size = 0;
+        pendingSize = 0;
+        rootLevel = -1;
+        augmented = true;
+    }
+
+    /**
+     * Empties this tree in place, retaining its storage whether or not it is referenced by outstanding views or
+     * snapshots, which are invalidated
+     */
+    void recycle() {
+        frozen = null;
+        removedAt = null;
+        removed = 0;
+        stamp = 0;
+        Arrays.fill(fs, 0, size, null);
+        Arrays.fill(pendingFs, 0, pendingSize, null);
+        size = 0;
+        pendingSize = 0;
+        rootLevel = -1;
+        augmented = true;
+        shared = false;
+    }
+
+    /**
+     * @return The number of annotations in this tree, including pending inserts
+     */
+    int size() {
+        return size - removed + pendingSize;
+    }
+
+    /**
+     * @return An estimate, in bytes, of the memory used by this tree's storage. Storage shared with outstanding views
+     * is included
+     */
+    long estimateMemory() {
+        long ret = OBJECT_OVERHEAD + 12L * REFERENCE_SIZE + 8L * 4;
+        ret += referenceArrayMemory(fs) + intArrayMemory(begin) + intArrayMemory(end) + intArrayMemory(maxEnd)
+                + intArrayMemory(removedAt);
+        ret += referenceArrayMemory(pendingFs) + intArrayMemory(pendingBegin) + intArrayMemory(pendingEnd);
+        return ret;
+    }
+
+    private static long referenceArrayMemory(Object[] array) {
+        return array == null ? 0 : OBJECT_OVERHEAD + (long) array.length * REFERENCE_SIZE;
+    }
+
+    private static long intArrayMemory(int[] array) {
+        return array == null ? 0 : OBJECT_OVERHEAD + (long) array.length * 4;
+    }
+
+    /**
+     * @return The sorted contents of this tree, sharing its storage
+     */
+    SortedAnnotations snapshot() {
+        merge();
+        compact();
+        share();
+        return new SortedAnnotations(fs, begin, end, size);
+    }
+
+    /**
+     * Not thread-safe itself, but the returned tree is: it is never modified, and querying it does not modify it
+     * either, so once safely published it may be queried by any number of threads without synchronization
+     *
+     * @return An immutable copy of the current contents of this tree, sharing its storage until the tree is next
+     * modified. Repeated calls without intervening modifications return the same copy
+     */
+    AnnotationIntervalTree freeze() {
+        if (frozen == null) {
+            merge();
+            compact();
+            augment();
+            shared = true;
+            frozen = new AnnotationIntervalTree(this);
+        }
+        return frozen;
+    }
+
+    private <T extends AnnotationFS> AnnotationView<T> view(int[] positions, int from, int to, int maxEnd,
+                                                            Class<T> clazz) {
+        return view(positions, from, to, maxEnd, clazz, null);
+    }
+
+    private <T extends AnnotationFS> AnnotationView<T> view(int[] positions, int from, int to, int maxEnd,
+                                                            Class<T> clazz, AnnotationFS excluded) {
+        share();
+        return new AnnotationView<T>(fs, begin, end, removedAt, stamp, positions, from, to, maxEnd, clazz, excluded);
+    }
+
+    /**
+     * Marks the sorted storage as referenced from outside the tree. Frozen trees are always shared, and so are not
+     * written to by the queries of concurrent readers
+     */
+    private void share() {
+        if (!shared) {
+            shared = true;
+        }
+    }
+
+    private boolean alive(int i) {
+        return removedAt == null || removedAt[i] == 0;
+    }
+
+    /**
+     * Drops annotations marked as removed from sorted storage, preserving the order of the remainder
+     */
+    private void compact() {
+        if (removed == 0) {
+            return;
+        }
+        AnnotationFS[] toFs = fs;
+        int[] toBegin = begin;
+        int[] toEnd = end;
+        if (shared) {
+            toFs = new AnnotationFS[fs.length];
+            toBegin = new int[begin.length];
+            toEnd = new int[end.length];
+        }
+        int k = 0;
+        for (int i = 0; i < size; i++) {
+            if (removedAt[i] == 0) {
+                toFs[k] = fs[i];
+                toBegin[k] = begin[i];
+                toEnd[k] = end[i];
+                k++;
+            }
+        }
+        if (!shared) {
+            Arrays.fill(fs, k, size, null);
+        }
+        fs = toFs;
+        begin = toBegin;
+        end = toEnd;
+        size = k;
+        shared = false;
+        removedAt = null;
+        removed = 0;
+        stamp = 0;
+        augmented = false;
+    }
+
+    /**
+     * Copies the sorted storage ahead of a modification if it is referenced by an outstanding view or snapshot
+     */
+    private void unshare() {
+        if (shared) {
+            fs = fs.clone();
+            begin = begin.clone();
+            end = end.clone();
+            shared = false;
+        }
+    }
+
+    /**
+     * Collects, in sorted order, the positions of all annotations beginning at or before maxBegin and ending at or
+     * after minEnd
+     */
+    private void stab(int maxBegin, int minEnd, PositionList out) {
+        if (size == 0) {
+            return;
+        }
+        // Each stack frame is a (node position, node level, left child visited) triple
+        int[] stackPos = new int[rootLevel + 2];
+        int[] stackLevel = new int[rootLevel + 2];
+        boolean[] stackVisited = new boolean[rootLevel + 2];
+        int t = 0;
+        stackPos[t] = (1 << rootLevel) - 1;
+        stackLevel[t] = rootLevel;
+        stackVisited[t++] = false;
+        while (t > 0) {
+            --t;
+            int x = stackPos[t];
+            int k = stackLevel[t];
+            if (k <= scanLevel) {
+                int i0 = x >> k << k;
+                int i1 = Math.min(i0 + (1 << (k + 1)) - 1, size);
+                for (int i = i0; i < i1 && begin[i] <= maxBegin; i++) {
+                    if (end[i] >= minEnd) {
+                        out.add(i);
+                    }
+                }
+            } else if (!stackVisited[t]) {
+                int y = x - (1 << (k - 1));
+                stackVisited[t++] = true;
+                // The left child may be out of range while some of its own descendants are not
+                if (y >= size || maxEnd[y] >= minEnd) {
+                    stackPos[t] = y;
+                    stackLevel[t] = k - 1;
+                    stackVisited[t++] = false;
+                }
+            } else if (x < size && begin[x] <= maxBegin) {
+                if (end[x] >= minEnd) {
+                    out.add(x);
+                }
+                stackPos[t] = x + (1 << (k - 1));
+                stackLevel[t] = k - 1;
+                stackVisited[t++] = false;
+            }
+        }
+    }
+
+    /**
+     * @return The first position at or after the given span in index order
+     */
+    private int lowerBound(int start, int end) {
+        int lo = lowerBound(start);
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (SortedAnnotations.compare(begin[mid], this.end[mid], start, end) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * @return The position an anchor of the given span would be moved to in index order: before any annotations
+     * sharing its span, unless these sort before it by type priority
+     */
+    private int anchorPosition(int start, int end, boolean tiesBefore) {
+        int lo = lowerBound(start, end);
+        if (!tiesBefore) {
+            return lo;
+        }
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (SortedAnnotations.compare(begin[mid], this.end[mid], start, end) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * @return The first position whose begin is at or after the given offset
+     */
+    private int lowerBound(int offset) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (begin[mid] < offset) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * @return The first position whose begin is after the given offset
+     */
+    private int upperBound(int offset) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (begin[mid] <= offset) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Merges the pending buffer into sorted storage
+     */
+    private void merge() {
+        if (pendingSize == 0) {
+            return;
+        }
+        compact();
+        sortPending();
+        if (size == 0) {
+            // Nothing to merge with (e.g. a bulk load), so the sorted buffer simply becomes the sorted storage
+            AnnotationFS[] swapFs = fs;
+            int[] swapBegin = begin;
+            int[] swapEnd = end;
+            fs = pendingFs;
+            begin = pendingBegin;
+            end = pendingEnd;
+            if (maxEnd.length < fs.length) {
+                maxEnd = new int[fs.length];
+            }
+            size = pendingSize;
+            // Any view of the old storage was taken while it was empty and so never reads it
+            pendingFs = swapFs;
+            pendingBegin = swapBegin;
+            pendingEnd = swapEnd;
+            pendingSize = 0;
+            shared = false;
+            augmented = false;
+            return;
+        }
+        int total = size + pendingSize;
+        if (total > fs.length) {
+            int cap = Math.max(total, fs.length << 1);
+            fs = Arrays.copyOf(fs, cap);
+            begin = Arrays.copyOf(begin, cap);
+            end = Arrays.copyOf(end, cap);
+            maxEnd = new int[cap];
+            shared = false;
+        } else {
+            unshare();
+        }
+        // Merge from the back so that no scratch space is needed and in-order appends move nothing. On ties the
+        // pending annotation is placed last, as it was inserted later
+        int i = size - 1;
+        int j = pendingSize - 1;
+        int k = total - 1;
+        while (j >= 0) {
+            if (i >= 0 && SortedAnnotations.compare(begin[i], end[i], pendingBegin[j], pendingEnd[j]) > 0) {
+                fs[k] = fs[i];
+                begin[k] = begin[i];
+                end[k] = end[i];
+                i--;
+            } else {
+                fs[k] = pendingFs[j];
+                begin[k] = pendingBegin[j];
+                end[k] = pendingEnd[j];
+                pendingFs[j] = null;
+                j--;
+            }
+            k--;
+        }
+        size = total;
+        pendingSize = 0;
+        augmented = false;
+    }
+
+    /**
+     * Stable sort of the pending buffer. Appends usually arrive in document order, so the already-sorted case is
+     * checked for first
+     */
+    private void sortPending() {
+        boolean sorted = true;
+        for (int i = 1; i < pendingSize && sorted; i++) {
+            sorted = SortedAnnotations.compare(pendingBegin[i - 1], pendingEnd[i - 1], pendingBegin[i], pendingEnd[i]) <= 0;
+        }
+        if (sorted) {
+            return;
+        }
+        int[] order = new int[pendingSize];
+        for (int i = 0; i < pendingSize; i++) {
+            order[i] = i;
+        }
+        mergeSort(order, new int[pendingSize], 0, pendingSize);
+        AnnotationFS[] sortedFs = new AnnotationFS[pendingFs.length];
+        int[] sortedBegin = new int[pendingBegin.length];
+        int[] sortedEnd = new int[pendingEnd.length];
+        for (int i = 0; i < pendingSize; i++) {
+            sortedFs[i] = pendingFs[order[i]];
+            sortedBegin[i] = pendingBegin[order[i]];
+            sortedEnd[i] = pendingEnd[order[i]];
+        }
+        pendingFs = sortedFs;
+        pendingBegin = sortedBegin;
+        pendingEnd = sortedEnd;
+    }
+
+    private void mergeSort(int[] order, int[] scratch, int from, int to) {
+        if (to - from <= AnnotationIndex.MIN_LEAF_SIZE) {
+            for (int i = from + 1; i < to; i++) {
+                int cur = order[i];
+                int j = i - 1;
+                while (j >= from && SortedAnnotations.compare(pendingBegin[order[j]], pendingEnd[order[j]],
+                        pendingBegin[cur], pendingEnd[cur]) > 0) {
+                    order[j + 1] = order[j];
+                    j--;
+                }
+                order[j + 1] = cur;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(order, scratch, from, mid);
+        mergeSort(order, scratch, mid, to);
+        System.arraycopy(order, from, scratch, from, to - from);
+        int l = from;
+        int r = mid;
+        for (int k = from; k < to; k++) {
+            if (r >= to || (l < mid && SortedAnnotations.compare(pendingBegin[scratch[l]], pendingEnd[scratch[l]],
+                    pendingBegin[scratch[r]], pendingEnd[scratch[r]]) <= 0)) {
+                order[k] = scratch[l++];
+            } else {
+                order[k] = scratch[r++];
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the max-end augmentation of the implicit tree over sorted storage if it is stale
+     */
+    private void augment() {
+        if (augmented) {
+            return;
+        }
+        augmented = true;
+        if (size == 0) {
+            rootLevel = -1;
+            return;
+        }
+        // Leaves sit at even positions. The last node of each level is tracked so that nodes whose right subtree lies
+        // partially past the end of the array still account for it
+        int lastI = 0;
+        int last = 0;
+        for (int i = 0; i < size; i += 2) {
+            lastI = i;
+            last = maxEnd[i] = end[i];
+        }
+        int k;
+        for (k = 1; (1L << k) <= size; k++) {
+            int x = 1 << (k - 1);
+            int step = x << 2;
+            for (int i = (x << 1) - 1; i < size; i += step) {
+                int e = end[i];
+                int el = maxEnd[i - x];
+                int er = i + x < size ? maxEnd[i + x] : last;
+                if (el > e) {
+                    e = el;
+                }
+                if (er > e) {
+                    e = er;
+                }
+                maxEnd[i] = e;
+            }
+            lastI = ((lastI >> k) & 1) != 0 ? lastI - x : lastI + x;
+            if (lastI < size && maxEnd[lastI] > last) {
+                last = maxEnd[lastI];
+            }
+        }
+        rootLevel = k - 1;
+    }
+}
@@ -1,67 +1,663 @@
 package edu.mayo.bsi.uima.perf.structures;
 
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.TypeSystem;
+import org.apache.uima.cas.admin.LinearTypeOrder;
 import org.apache.uima.cas.text.AnnotationFS;
 
-import java.util.List;
+import java.util.*;
 
+/**
+ * Entry point of the annotation index for a single CAS.
+ * <p>
+ * Annotations are partitioned by their UIMA {@link Type}, each partition being its own {@link AnnotationIntervalTree},
+ * so that a query only ever touches the partitions of the requested type and its subtypes (as determined by the
+ * {@link TypeSystem} of the owning CAS) rather than every annotation in the CAS.
+ * <p>
+ * Results are in UIMA's annotation index order: begin ascending, end descending, then type priority, as given by the
+ * {@link LinearTypeOrder} of the owning CAS. Partitions are kept in type priority order, so that merging the sorted
+ * results of several partitions, which orders ties by partition, yields that order directly.
+ * <p>
+ * {@link #freeze()} provides immutable copies of an index for concurrent readers, see
+ * {@link ConcurrentAnnotationIndex}.
+ * <p>
+ * Bulk inserts of at least a configurable number of annotations, such as the initial build of the index of a large
+ * document, eagerly sort and augment the modified partitions in parallel on the {@link IndexBuildPool}, rather than
+ * leaving each to be sorted by the first query against it.
+ */
 public final class AnnotationRoot implements AnnotationIndex {
-    private int start;
+    private static final String JCAS_BUILTIN_PREFIX = "org.apache.uima.jcas.";
+    private static final String CAS_BUILTIN_PREFIX = "uima.";
+    private static final AnnotationIntervalTree[] NO_PARTITIONS = new AnnotationIntervalTree[0];
+
+    private final TypeSystem typeSystem;
+    private final LinearTypeOrder typeOrder;
+    private final int leafSize;
+    private final int initialCapacity;
+    private final int parallelThreshold;
     private int end;
-    private AnnotationIndex child;
+    private final Map<Type, AnnotationIntervalTree> partitions;
+    // The values of partitions, replaced whenever a partition is created or the index cleared, so that size and memory
+    // estimates may be read from monitoring threads while the index is modified
+    private volatile AnnotationIntervalTree[] partitionSnapshot;
+    // Query caches, the latter of which is invalidated whenever a new partition is created. Cache maps are replaced
+    // rather than modified, so that frozen copies may populate them from concurrent queries without locking: a racing
+    // update is at worst lost and recomputed by a later query
+    private volatile Map<Class<?>, Type> resolvedTypes;
+    private volatile Map<Type, AnnotationIntervalTree[]> subsumedPartitions;
+
+    public AnnotationRoot(TypeSystem typeSystem) {
+        this(typeSystem, MIN_LEAF_SIZE, INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param typeSystem      The type system of the owning CAS
+     * @param leafSize        The entry count at or below which a subtree is scanned linearly as opposed to traversed
+     * @param initialCapacity The initial storage capacity of each type partition
+     */
+    public AnnotationRoot(TypeSystem typeSystem, int leafSize, int initialCapacity) {
+        this(typeSystem, leafSize, initialCapacity, 0);
+    }
+
+    /**
+     * @param typeSystem        The type system of the owning CAS
+     * @param leafSize          The entry count at or below which a subtree is scanned linearly as opposed to traversed
+     * @param initialCapacity   The initial storage capacity of each type partition
+     * @param parallelThreshold The annotation count at or above which bulk inserts are sorted in parallel, or 0 to
+     *                          never sort in parallel
+     */
+    public AnnotationRoot(TypeSystem typeSystem, int leafSize, int initialCapacity, int parallelThreshold) {
+        this(typeSystem, null, leafSize, initialCapacity, parallelThreshold);
+    }
+
+    /**
+     * @param typeSystem        The type system of the owning CAS
+     * @param typeOrder         The type priorities of the owning CAS, or null to order annotations of distinct types
+     *                          sharing a span by type name
+     * @param leafSize          The entry count at or below which a subtree is scanned linearly as opposed to traversed
+     * @param initialCapacity   The initial storage capacity of each type partition
+     * @param parallelThreshold The annotation count at or above which bulk inserts are sorted in parallel, or 0 to
+     *                          never sort in parallel
+     */
+    public AnnotationRoot(TypeSystem typeSystem, LinearTypeOrder typeOrder, int leafSize, int initialCapacity,
+                          int parallelThreshold) {
+        if (leafSize < 1 || initialCapacity < 1) {
+            throw new IllegalArgumentException("Leaf size and initial capacity must be positive");
+        }
+        // The interval trees store each annotation once irrespective of position, so the tracked extent is purely
+        // informational and starts empty
+        this.typeSystem = typeSystem;
+        this.typeOrder = typeOrder;
+        this.leafSize = leafSize;
+        this.initialCapacity = initialCapacity;
+        this.parallelThreshold = parallelThreshold;
+        this.end = 0;
+        this.partitions = new HashMap<Type, AnnotationIntervalTree>();
+        this.partitionSnapshot = NO_PARTITIONS;
+        this.resolvedTypes = Collections.emptyMap();
+        this.subsumedPartitions = Collections.emptyMap();
+    }
 
-    public AnnotationRoot() {
-        // This guarantees that we only need to grow to the right. While this does come at a potential hit on
-        // performance in some cases (where there are no annotations in say the first half of the document,
-        // testing of sample data suggests that the cases where such is the case is relatively rare
-        // compared to the added cost of a start check and leftwards growth, especially as annotations
-        // tend to be inserted in sequential order anyways
-        start = 0;
-        end = MIN_LEAF_SIZE;
-        child = new AnnotationLeaf();
+    /**
+     * Creates a frozen copy of an index over frozen copies of its partitions
+     */
+    private AnnotationRoot(AnnotationRoot source, Map<Type, AnnotationIntervalTree> partitions) {
+        this.typeSystem = source.typeSystem;
+        this.typeOrder = source.typeOrder;
+        this.leafSize = source.leafSize;
+        this.initialCapacity = source.initialCapacity;
+        this.parallelThreshold = source.parallelThreshold;
+        this.end = source.end;
+        this.partitions = partitions;
+        this.partitionSnapshot = partitions.values().toArray(NO_PARTITIONS);
+        this.resolvedTypes = source.resolvedTypes;
+        this.subsumedPartitions = Collections.emptyMap();
     }
 
 
     @Override
     public void insert(AnnotationFS ann) {
-        if (ann.getEnd() > end) {
-            grow(ann.getEnd());
+        int annBegin = ann.getBegin();
+        int annEnd = ann.getEnd();
+        if (annEnd > end) {
+            grow(annEnd);
+        }
+        Type type = ann.getType();
+        AnnotationIntervalTree partition = partitions.get(type);
+        if (partition == null) {
+            partition = createPartition(type);
+        }
+        partition.insert(ann, annBegin, annEnd);
+    }
+
+    @Override
+    public void insertAll(Collection<? extends AnnotationFS> anns) {
+        if (anns instanceof LoadedAnnotations) {
+            LoadedAnnotations loaded = (LoadedAnnotations) anns;
+            insertAll(loaded.fs, loaded.types, loaded.begin, loaded.end, loaded.size);
+            return;
+        }
+        // Each annotation's type and offsets are read once, with types counted first so that each partition is sized
+        // once rather than repeatedly doubled
+        int total = anns.size();
+        AnnotationFS[] fs = anns.toArray(new AnnotationFS[total]);
+        Type[] types = new Type[total];
+        int[] begins = new int[total];
+        int[] ends = new int[total];
+        for (int i = 0; i < total; i++) {
+            AnnotationFS ann = fs[i];
+            types[i] = ann.getType();
+            begins[i] = ann.getBegin();
+            ends[i] = ann.getEnd();
         }
-        child.insert(ann);
+        insertAll(fs, types, begins, ends, total);
+    }
+
+    private void insertAll(AnnotationFS[] fs, Type[] types, int[] begins, int[] ends, int total) {
+        Map<Type, int[]> counts = new HashMap<Type, int[]>();
+        int maxEnd = end;
+        for (int i = 0; i < total; i++) {
+            Type type = types[i];
+            int[] count = counts.get(type);
+            if (count == null) {
+                counts.put(type, new int[]{1});
+            } else {
+                count[0]++;
+            }
+            maxEnd = Math.max(maxEnd, ends[i]);
+        }
+        grow(maxEnd);
+        for (Map.Entry<Type, int[]> e : counts.entrySet()) {
+            AnnotationIntervalTree partition = partitions.get(e.getKey());
+            if (partition == null) {
+                partition = createPartition(e.getKey());
+            }
+            partition.ensurePendingCapacity(e.getValue()[0]);
+        }
+        AnnotationIntervalTree partition = null;
+        for (int i = 0; i < total; i++) {
+            // Annotations generally arrive grouped by type
+            if (i == 0 || types[i] != types[i - 1]) {
+                partition = partitions.get(types[i]);
+            }
+            partition.insert(fs[i], begins[i], ends[i]);
+        }
+        if (parallelThreshold > 0 && total >= parallelThreshold && counts.size() > 1) {
+            flushParallel(counts.keySet());
+        }
+    }
+
+    /**
+     * Sorts and augments the partitions of the given types in parallel, largest first so that the longest running
+     * sort starts earliest
+     */
+    private void flushParallel(Collection<Type> types) {
+        List<AnnotationIntervalTree> modified = new ArrayList<AnnotationIntervalTree>(types.size());
+        for (Type type : types) {
+            modified.add(partitions.get(type));
+        }
+        Collections.sort(modified, new Comparator<AnnotationIntervalTree>() {
+            @Override
+            public int compare(AnnotationIntervalTree o1, AnnotationIntervalTree o2) {
+                return o2.pendingSize() < o1.pendingSize() ? -1 : o2.pendingSize() == o1.pendingSize() ? 0 : 1;
+            }
+        });
+        List<Runnable> tasks = new ArrayList<Runnable>(modified.size());
+        for (final AnnotationIntervalTree partition : modified) {
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    partition.flush();
+                }
+            });
+        }
+        IndexBuildPool.runAll(tasks);
     }
 
     @Override
     public void remove(AnnotationFS ann) {
-        child.remove(ann);
+        AnnotationIntervalTree partition = partitions.get(ann.getType());
+        if (partition != null) {
+            partition.remove(ann);
+        }
     }
 
     @Override
     public <T extends AnnotationFS> List<T> getCovering(int start, int end, Class<T> clazz) {
-        return child.getCovering(start, end, clazz);
+        AnnotationIntervalTree[] targets = partitionsFor(clazz);
+        if (targets.length == 1) {
+            return targets[0].getCovering(start, end, clazz);
+        }
+        ArrayList<AnnotationView<T>> views = new ArrayList<AnnotationView<T>>(targets.length);
+        for (AnnotationIntervalTree partition : targets) {
+            views.add(partition.getCovering(start, end, clazz));
+        }
+        return AnnotationView.merge(views);
     }
 
     @Override
     public <T extends AnnotationFS> List<T> getCovered(int start, int end, Class<T> clazz) {
-        return child.getCovered(start, end, clazz);
+        return getCovered(start, end, clazz, null);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getCovered(AnnotationFS coveringAnnotation, Class<T> clazz) {
+        return getCovered(coveringAnnotation.getBegin(), coveringAnnotation.getEnd(), clazz, coveringAnnotation);
+    }
+
+    private <T extends AnnotationFS> List<T> getCovered(int start, int end, Class<T> clazz, AnnotationFS excluded) {
+        AnnotationIntervalTree[] targets = partitionsFor(clazz);
+        if (targets.length == 1) {
+            return targets[0].getCovered(start, end, clazz, excluded);
+        }
+        ArrayList<AnnotationView<T>> views = new ArrayList<AnnotationView<T>>(targets.length);
+        for (AnnotationIntervalTree partition : targets) {
+            views.add(partition.getCovered(start, end, clazz, excluded));
+        }
+        return AnnotationView.merge(views);
     }
 
     @Override
     public <T extends AnnotationFS> List<T> getCollisions(int start, int end, Class<T> clazz) {
-        return child.getCollisions(start, end, clazz);
+        AnnotationIntervalTree[] targets = partitionsFor(clazz);
+        if (targets.length == 1) {
+            return targets[0].getCollisions(start, end, clazz);
+        }
+        ArrayList<AnnotationView<T>> views = new ArrayList<AnnotationView<T>>(targets.length);
+        for (AnnotationIntervalTree partition : targets) {
+            views.add(partition.getCollisions(start, end, clazz));
+        }
+        return AnnotationView.merge(views);
+    }
+
+    @Override
+    public <T extends AnnotationFS, S extends AnnotationFS> Map<T, Collection<S>> indexCovered(Class<? extends T> type, Class<? extends S> coveredType) {
+        return CoverageMap.covered(sortedFor(type), sortedFor(coveredType));
+    }
+
+    @Override
+    public <T extends AnnotationFS, S extends AnnotationFS> Map<T, Collection<S>> indexCovering(Class<? extends T> type, Class<? extends S> coveringType) {
+        return CoverageMap.covering(sortedFor(type), sortedFor(coveringType));
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getPreceding(Type type, AnnotationFS anchor, int count) {
+        AnnotationIntervalTree[] targets = partitionsFor(checkAnnotationType(type));
+        int anchorBegin = anchor.getBegin();
+        int anchorEnd = anchor.getEnd();
+        ArrayList<SortedAnnotations> runs = new ArrayList<SortedAnnotations>(targets.length);
+        AnnotationIntervalTree ceilingPartition = null;
+        int ceiling = -1;
+        for (AnnotationIntervalTree partition : targets) {
+            boolean tiesBefore = sortsBefore(partition.type(), anchor.getType());
+            runs.add(partition.getPreceding(anchorBegin, anchorEnd, tiesBefore, count));
+            int candidate = partition.ceiling(anchorBegin, anchorEnd, tiesBefore);
+            if (candidate >= 0 && (ceilingPartition == null
+                    || SortedAnnotations.compare(partition.beginAt(candidate), partition.endAt(candidate),
+                    ceilingPartition.beginAt(ceiling), ceilingPartition.endAt(ceiling)) < 0)) {
+                ceilingPartition = partition;
+                ceiling = candidate;
+            }
+        }
+        SortedAnnotations merged = SortedAnnotations.merge(runs);
+        // uimaFIT starts its backwards walk at the position the anchor would be moved to, so a zero-width annotation
+        // at the anchor begin that directly follows the anchor is itself preceding
+        boolean withCeiling = ceilingPartition != null && ceilingPartition.endAt(ceiling) <= anchorBegin && count > 0;
+        // Each partition contributed its own closest annotations, of which only the overall closest are kept
+        int from = Math.max(0, merged.size + (withCeiling ? 1 : 0) - count);
+        ArrayList<AnnotationFS> ret = merged.toList(Math.min(from, merged.size), merged.size);
+        if (withCeiling) {
+            ret.add(ceilingPartition.annotationAt(ceiling));
+        }
+        //noinspection unchecked
+        return (List<T>) ret;
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getFollowing(Type type, AnnotationFS anchor, int count) {
+        AnnotationIntervalTree[] targets = partitionsFor(checkAnnotationType(type));
+        int anchorBegin = anchor.getBegin();
+        int anchorEnd = anchor.getEnd();
+        ArrayList<SortedAnnotations> runs = new ArrayList<SortedAnnotations>(targets.length);
+        for (AnnotationIntervalTree partition : targets) {
+            boolean tiesBefore = sortsBefore(partition.type(), anchor.getType());
+            runs.add(partition.getFollowing(anchorBegin, anchorEnd, tiesBefore, count));
+        }
+        SortedAnnotations merged = SortedAnnotations.merge(runs);
+        //noinspection unchecked
+        return (List<T>) merged.toList(0, Math.min(count, merged.size));
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getBetween(Type type, AnnotationFS first, AnnotationFS second) {
+        AnnotationFS left = first;
+        AnnotationFS right = second;
+        if (first.getEnd() > second.getBegin()) {
+            left = second;
+            right = first;
+        }
+        AnnotationIntervalTree[] targets = partitionsFor(type);
+        ArrayList<SortedAnnotations> runs = new ArrayList<SortedAnnotations>(targets.length);
+        for (AnnotationIntervalTree partition : targets) {
+            runs.add(partition.getCoveredRun(left.getEnd(), right.getBegin()));
+        }
+        SortedAnnotations merged = SortedAnnotations.merge(runs);
+        ArrayList<AnnotationFS> ret = new ArrayList<AnnotationFS>(merged.size);
+        for (int i = 0; i < merged.size; i++) {
+            AnnotationFS ann = merged.fs[i];
+            if (!ann.equals(first) && !ann.equals(second)) {
+                ret.add(ann);
+            }
+        }
+        //noinspection unchecked
+        return (List<T>) ret;
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getAll(Type type) {
+        AnnotationIntervalTree[] targets = partitionsFor(checkAnnotationType(type));
+        if (targets.length == 1) {
+            //noinspection unchecked
+            return (List<T>) targets[0].getAll(AnnotationFS.class);
+        }
+        ArrayList<AnnotationView<AnnotationFS>> views = new ArrayList<AnnotationView<AnnotationFS>>(targets.length);
+        for (AnnotationIntervalTree partition : targets) {
+            views.add(partition.getAll(AnnotationFS.class));
+        }
+        //noinspection unchecked
+        return (List<T>) AnnotationView.merge(views);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getAt(Type type, int begin, int end) {
+        //noinspection unchecked
+        return (List<T>) at(getStartingRun(checkAnnotationType(type), begin, end), begin, end);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getSubiterated(Type type, AnnotationFS bound, boolean ambiguous,
+                                                           boolean strict) {
+        SortedAnnotations candidates = getStartingRun(checkAnnotationType(type), bound.getBegin(), bound.getEnd());
+        //noinspection unchecked
+        return (List<T>) subiterated(candidates, typeOrder, bound, ambiguous, strict);
+    }
+
+    /**
+     * @param type  The queried type
+     * @param start The first begin to include
+     * @param end   The last begin to include
+     * @return The annotations of the given type or any of its subtypes beginning within the given bounds, merged into a
+     * single sorted run
+     */
+    SortedAnnotations getStartingRun(Type type, int start, int end) {
+        AnnotationIntervalTree[] targets = partitionsFor(type);
+        ArrayList<SortedAnnotations> runs = new ArrayList<SortedAnnotations>(targets.length);
+        for (AnnotationIntervalTree partition : targets) {
+            runs.add(partition.getStartingRun(start, end));
+        }
+        return SortedAnnotations.merge(runs);
+    }
+
+    /**
+     * Walks annotations in index order from a span begin as uimaFIT's selectAt does: past any annotation ending after
+     * the span, then collecting for as long as either bound matches that of the span. The walk never reaches past
+     * annotations beginning within the span, so these are the only candidates needed
+     *
+     * @param candidates The annotations beginning within the span
+     * @return The annotations at the span
+     */
+    static ArrayList<AnnotationFS> at(SortedAnnotations candidates, int begin, int end) {
+        ArrayList<AnnotationFS> ret = new ArrayList<AnnotationFS>();
+        int i = 0;
+        while (i < candidates.size && candidates.end[i] > end) {
+            i++;
+        }
+        for (; i < candidates.size && (candidates.begin[i] == begin || candidates.end[i] == end); i++) {
+            ret.add(candidates.fs[i]);
+        }
+        return ret;
+    }
+
+    /**
+     * Walks annotations in index order from a bound begin as UIMA's subiterator does: past the annotations not
+     * following the bound in index order, up to the first annotation beginning after the bound
+     *
+     * @param candidates The annotations beginning within the bound
+     * @param typeOrder  The type priorities ordering annotations sharing the span of the bound, or null
+     * @return The annotations returned by a subiterator over the bound
+     */
+    static ArrayList<AnnotationFS> subiterated(SortedAnnotations candidates, LinearTypeOrder typeOrder,
+                                               AnnotationFS bound, boolean ambiguous, boolean strict) {
+        int begin = bound.getBegin();
+        int end = bound.getEnd();
+        ArrayList<AnnotationFS> ret = new ArrayList<AnnotationFS>();
+        int prevEnd = Integer.MIN_VALUE;
+        for (int i = 0; i < candidates.size; i++) {
+            int annBegin = candidates.begin[i];
+            int annEnd = candidates.end[i];
+            if (annBegin == begin && (annEnd > end || annEnd == end
+                    && compareTypes(typeOrder, candidates.fs[i].getType(), bound.getType()) <= 0)) {
+                // Precedes or is equal to the bound in index order
+                continue;
+            }
+            if ((strict && annEnd > end) || (!ambiguous && annBegin < prevEnd)) {
+                continue;
+            }
+            ret.add(candidates.fs[i]);
+            prevEnd = annEnd;
+        }
+        return ret;
+    }
+
+    @Override
+    public boolean containsCovered(Type type, AnnotationFS coveringAnnotation) {
+        for (AnnotationIntervalTree partition : partitionsFor(type)) {
+            if (partition.hasCovered(coveringAnnotation.getBegin(), coveringAnnotation.getEnd(), coveringAnnotation)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     @Override
     public void grow(int size) {
-        // We only grow to the right, since our starting index is always 0.
-        while (size > end) {
-            end = end * 2;
-            AnnotationNode temp = new AnnotationNode(start, end);
-            temp.setLeft(child);
-            child = temp;
+        // Storage is not positional, so growing only extends the tracked extent
+        if (size > end) {
+            end = size;
+        }
+    }
+
+    @Override
+    public void flush() {
+        for (AnnotationIntervalTree partition : partitions.values()) {
+            partition.flush();
         }
     }
 
     @Override
     public void clear() {
-        child.clear();
+        for (AnnotationIntervalTree partition : partitions.values()) {
+            partition.clear();
+        }
+        partitions.clear();
+        partitionSnapshot = NO_PARTITIONS;
+        subsumedPartitions = Collections.emptyMap();
+        end = 0;
+    }
+
+    /**
+     * Empties every partition in place, keeping partitions and query caches for the next document, which is likely to
+     * hold annotations of the same types
+     */
+    @Override
+    public void recycle() {
+        for (AnnotationIntervalTree partition : partitions.values()) {
+            partition.recycle();
+        }
+        end = 0;
+    }
+
+    @Override
+    public int size() {
+        int ret = 0;
+        for (AnnotationIntervalTree partition : partitionSnapshot) {
+            ret += partition.size();
+        }
+        return ret;
+    }
+
+    @Override
+    public long estimateMemory() {
+        AnnotationIntervalTree[] partitions = partitionSnapshot;
+        // Map entries of the partition and query cache maps
+        long ret = 64 + 32L * (partitions.length + resolvedTypes.size() + subsumedPartitions.size());
+        for (AnnotationIntervalTree partition : partitions) {
+            ret += partition.estimateMemory();
+        }
+        return ret;
+    }
+
+    /**
+     * Not thread-safe itself, but the returned index is: it is never modified, and querying it does not modify it
+     * either, so once safely published it may be queried by any number of threads without synchronization. Modifying
+     * the returned index is unsupported
+     *
+     * @return An immutable copy of the current contents of this index, sharing the storage of partitions that have not
+     * been modified since the last call
+     */
+    AnnotationRoot freeze() {
+        Map<Type, AnnotationIntervalTree> frozen = new HashMap<Type, AnnotationIntervalTree>();
+        for (Map.Entry<Type, AnnotationIntervalTree> e : partitions.entrySet()) {
+            frozen.put(e.getKey(), e.getValue().freeze());
+        }
+        return new AnnotationRoot(this, frozen);
+    }
+
+    /**
+     * @return A new, empty partition for annotations of the given type, registered with this index
+     */
+    private AnnotationIntervalTree createPartition(Type type) {
+        AnnotationIntervalTree partition = new AnnotationIntervalTree(type, leafSize, initialCapacity);
+        partitions.put(type, partition);
+        AnnotationIntervalTree[] snapshot = Arrays.copyOf(partitionSnapshot, partitionSnapshot.length + 1);
+        snapshot[snapshot.length - 1] = partition;
+        partitionSnapshot = snapshot;
+        subsumedPartitions = Collections.emptyMap();
+        return partition;
+    }
+
+    /**
+     * @param clazz The queried class
+     * @return The partitions holding annotations of the type corresponding to the given class or any of its subtypes.
+     * If the class does not correspond to a type in the type system, all partitions are returned and results are
+     * instead filtered by class
+     */
+    private AnnotationIntervalTree[] partitionsFor(Class<?> clazz) {
+        return partitionsFor(resolveType(clazz));
+    }
+
+    /**
+     * @return Whether annotations of the first type sort before annotations of the second sharing their span, as UIMA
+     * positions an anchor among annotations of other types
+     */
+    boolean sortsBefore(Type type, Type anchorType) {
+        return compareTypes(typeOrder, type, anchorType) < 0;
+    }
+
+    /**
+     * @param typeOrder The type priorities to order by, or null if unknown
+     * @return The order of two types in the given type priorities, or by name if unknown
+     */
+    private static int compareTypes(LinearTypeOrder typeOrder, Type o1, Type o2) {
+        if (typeOrder != null) {
+            if (typeOrder.lessThan(o1, o2)) {
+                return -1;
+            }
+            if (typeOrder.lessThan(o2, o1)) {
+                return 1;
+            }
+        }
+        return o1.getName().compareTo(o2.getName());
+    }
+
+    /**
+     * @param type The queried type, or null for all partitions
+     * @return The partitions holding annotations of the given type or any of its subtypes, in type priority order
+     */
+    private AnnotationIntervalTree[] partitionsFor(Type type) {
+        Map<Type, AnnotationIntervalTree[]> cached = subsumedPartitions;
+        AnnotationIntervalTree[] ret = cached.get(type);
+        if (ret == null) {
+            ArrayList<Type> matches = new ArrayList<Type>();
+            for (Type partitionType : partitions.keySet()) {
+                if (type == null || typeSystem.subsumes(type, partitionType)) {
+                    matches.add(partitionType);
+                }
+            }
+            Collections.sort(matches, new Comparator<Type>() {
+                @Override
+                public int compare(Type o1, Type o2) {
+                    return compareTypes(typeOrder, o1, o2);
+                }
+            });
+            ret = new AnnotationIntervalTree[matches.size()];
+            for (int i = 0; i < ret.length; i++) {
+                ret[i] = partitions.get(matches.get(i));
+            }
+            Map<Type, AnnotationIntervalTree[]> updated = new HashMap<Type, AnnotationIntervalTree[]>(cached);
+            updated.put(type, ret);
+            subsumedPartitions = updated;
+        }
+        return ret;
+    }
+
+    /**
+     * @param clazz The queried class
+     * @return All annotations of the type corresponding to the given class or any of its subtypes, merged into a
+     * single sorted run
+     */
+    SortedAnnotations sortedFor(Class<?> clazz) {
+        AnnotationIntervalTree[] targets = partitionsFor(clazz);
+        ArrayList<SortedAnnotations> runs = new ArrayList<SortedAnnotations>(targets.length);
+        for (AnnotationIntervalTree partition : targets) {
+            runs.add(partition.snapshot());
+        }
+        SortedAnnotations ret = SortedAnnotations.merge(runs);
+        if (resolveType(clazz) == null) {
+            return ret.filter(clazz);
+        }
+        return ret;
+    }
+
+    /**
+     * Positional queries are only defined for annotation types, consistent with
+     * {@link org.apache.uima.fit.util.CasUtil#selectPreceding(org.apache.uima.cas.CAS, Type, AnnotationFS, int)}
+     */
+    Type checkAnnotationType(Type type) {
+        if (!typeSystem.subsumes(typeSystem.getType(CAS.TYPE_NAME_ANNOTATION), type)) {
+            throw new IllegalArgumentException("Type [" + type.getName() + "] is not an annotation type");
+        }
+        return type;
+    }
+
+    /**
+     * Resolves the CAS type for a JCas class, mirroring the naming convention used by
+     * {@link org.apache.uima.fit.util.CasUtil#getType(org.apache.uima.cas.CAS, Class)}
+     */
+    private Type resolveType(Class<?> clazz) {
+        Map<Class<?>, Type> cached = resolvedTypes;
+        if (cached.containsKey(clazz)) {
+            return cached.get(clazz);
+        }
+        String name = clazz.getName();
+        if (name.startsWith(JCAS_BUILTIN_PREFIX)) {
+            name = CAS_BUILTIN_PREFIX + name.substring(JCAS_BUILTIN_PREFIX.length());
+        }
+        Type type = typeSystem.getType(name);
+        Map<Class<?>, Type> updated = new HashMap<Class<?>, Type>(cached);
+        updated.put(clazz, type);
+        resolvedTypes = updated;
+        return type;
     }
 }
@@ -0,0 +1,277 @@
+package edu.mayo.bsi.uima.perf.structures;
+
+import org.apache.uima.cas.text.AnnotationFS;
+
+import java.util.*;
+
+/**
+ * A list view over the sorted storage of an {@link AnnotationIntervalTree}, as returned by {@link AnnotationIndex}
+ * queries.
+ * <p>
+ * Candidates are either a contiguous range of storage positions or an explicit set of positions, and are filtered
+ * lazily by an end bound, by class and by identity with a single excluded annotation: {@link #isEmpty()} and iteration only examine as many candidates as they need,
+ * while the filtered positions are resolved once, on the first call that requires them, to support random access.
+ * The storage backing a view is never modified, as trees copy their storage before next modifying it once a view has
+ * been handed out.
+ * <p>
+ * Like the lists returned by uimaFIT, views may be modified by their caller. The first modification copies the view
+ * into a list of its own, which the view reads from then on, leaving the storage untouched.
+ *
+ * @param <T> The annotation type of the view
+ */
+final class AnnotationView<T extends AnnotationFS> extends AbstractList<T> implements RandomAccess {
+    private static final int[] NO_POSITIONS = new int[0];
+    private static final AnnotationFS[] NO_ANNOTATIONS = new AnnotationFS[0];
+
+    final AnnotationFS[] fs;
+    final int[] begin;
+    final int[] end;
+    // Removal stamps of the storage, of which only removals up to the view's stamp apply to it
+    private final int[] removedAt;
+    private final int stamp;
+    // Candidates are positions[from] ... positions[to - 1], or storage positions from ... to - 1 if positions is null
+    private final int[] positions;
+    private final int from;
+    private final int to;
+    private final int maxEnd;
+    private final Class<?> clazz;
+    // Only candidates sharing the span of the excluded annotation need be compared with it
+    private final AnnotationFS excluded;
+    private final int excludedBegin;
+    private final int excludedEnd;
+    // Positions of the candidates passing the filters, resolved on demand
+    private int[] matches;
+    // Contents of the view as modified by its caller, copied on the first modification
+    private ArrayList<T> copy;
+
+    /**
+     * @param fs        The annotation storage
+     * @param begin     The begin offsets of the annotation storage
+     * @param end       The end offsets of the annotation storage
+     * @param removedAt The removal stamps of the annotation storage, or null if nothing has been removed
+     * @param stamp     The latest removal stamp applying to this view
+     * @param positions The candidate storage positions, or null if candidates are a contiguous storage range
+     * @param from      The first candidate index
+     * @param to        The candidate index bound
+     * @param maxEnd    The maximum end offset of a candidate to be included
+     * @param clazz     The class candidates must be an instance of to be included, or null if not filtered by class
+     * @param excluded  An annotation to leave out, or null
+     */
+    AnnotationView(AnnotationFS[] fs, int[] begin, int[] end, int[] removedAt, int stamp, int[] positions, int from,
+                   int to, int maxEnd, Class<?> clazz, AnnotationFS excluded) {
+        this.fs = fs;
+        this.begin = begin;
+        this.end = end;
+        this.removedAt = removedAt;
+        this.stamp = stamp;
+        this.positions = positions;
+        this.from = from;
+        this.to = Math.max(from, to);
+        this.maxEnd = maxEnd;
+        this.clazz = clazz == AnnotationFS.class ? null : clazz;
+        this.excluded = excluded;
+        this.excludedBegin = excluded == null ? 0 : excluded.getBegin();
+        this.excludedEnd = excluded == null ? 0 : excluded.getEnd();
+    }
+
+    @Override
+    public T get(int index) {
+        if (copy != null) {
+            return copy.get(index);
+        }
+        int[] m = matches();
+        if (index < 0 || index >= m.length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + m.length);
+        }
+        //noinspection unchecked
+        return (T) fs[m[index]];
+    }
+
+    @Override
+    public int size() {
+        return copy != null ? copy.size() : matches().length;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        if (copy != null) {
+            return copy.isEmpty();
+        }
+        if (matches != null) {
+            return matches.length == 0;
+        }
+        return advance(from) >= to;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        if (copy != null || matches != null) {
+            return super.iterator();
+        }
+        return new Iterator<T>() {
+            private int cursor = advance(from);
+            // Index in the view of the next annotation, and of the last one returned if not yet removed
+            private int index = 0;
+            private int last = -1;
+            private int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return cursor < to;
+            }
+
+            @Override
+            public T next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (cursor >= to) {
+                    throw new NoSuchElementException();
+                }
+                //noinspection unchecked
+                T ret = (T) fs[position(cursor)];
+                cursor = advance(cursor + 1);
+                last = index++;
+                return ret;
+            }
+
+            @Override
+            public void remove() {
+                if (last < 0) {
+                    throw new IllegalStateException();
+                }
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                // The storage is unaffected, so iteration continues over it in step with the copy
+                AnnotationView.this.remove(last);
+                index = last;
+                last = -1;
+                expectedModCount = modCount;
+            }
+        };
+    }
+
+    @Override
+    public T set(int index, T element) {
+        return modifiable().set(index, element);
+    }
+
+    @Override
+    public void add(int index, T element) {
+        modifiable().add(index, element);
+        modCount++;
+    }
+
+    @Override
+    public T remove(int index) {
+        T ret = modifiable().remove(index);
+        modCount++;
+        return ret;
+    }
+
+    /**
+     * @return The copy of this view that modifications apply to, made on the first call
+     */
+    private List<T> modifiable() {
+        if (copy == null) {
+            int[] m = matches();
+            ArrayList<T> ret = new ArrayList<T>(m.length);
+            for (int pos : m) {
+                //noinspection unchecked
+                ret.add((T) fs[pos]);
+            }
+            copy = ret;
+        }
+        return copy;
+    }
+
+    /**
+     * @return The filtered storage positions of this view
+     */
+    int[] matches() {
+        if (matches == null) {
+            int count = 0;
+            int[] ret = new int[to - from];
+            for (int i = advance(from); i < to; i = advance(i + 1)) {
+                ret[count++] = position(i);
+            }
+            matches = count == 0 ? NO_POSITIONS : count == ret.length ? ret : Arrays.copyOf(ret, count);
+        }
+        return matches;
+    }
+
+    /**
+     * @return The first candidate index at or after the given one that passes the filters, or {@link #to} if none
+     */
+    private int advance(int i) {
+        for (; i < to; i++) {
+            int pos = position(i);
+            if (end[pos] <= maxEnd && (removedAt == null || removedAt[pos] == 0 || removedAt[pos] > stamp)
+                    && (clazz == null || clazz.isInstance(fs[pos])) && !isExcluded(pos)) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    private boolean isExcluded(int pos) {
+        return excluded != null && begin[pos] == excludedBegin && end[pos] == excludedEnd && fs[pos].equals(excluded);
+    }
+
+    private int position(int i) {
+        return positions == null ? i : positions[i];
+    }
+
+    /**
+     * @param views Views over distinct partitions, each in sorted order
+     * @return A single view containing the annotations of all the given views in sorted order. Ties are ordered by
+     * the position of their view in the supplied list
+     */
+    static <T extends AnnotationFS> List<T> merge(List<AnnotationView<T>> views) {
+        int total = 0;
+        AnnotationView<T> nonEmpty = null;
+        for (AnnotationView<T> view : views) {
+            int size = view.size();
+            if (size > 0) {
+                total += size;
+                nonEmpty = view;
+            }
+        }
+        if (nonEmpty == null) {
+            return new AnnotationView<T>(NO_ANNOTATIONS, NO_POSITIONS, NO_POSITIONS, null, 0, null, 0, 0,
+                    Integer.MAX_VALUE, null, null);
+        }
+        if (total == nonEmpty.size()) {
+            return nonEmpty;
+        }
+        // Each view is already sorted, so repeatedly take the smallest head across views
+        AnnotationFS[] retFs = new AnnotationFS[total];
+        int[] retBegin = new int[total];
+        int[] retEnd = new int[total];
+        int[] heads = new int[views.size()];
+        for (int k = 0; k < total; k++) {
+            int best = -1;
+            int bestPos = -1;
+            for (int v = 0; v < heads.length; v++) {
+                AnnotationView<T> view = views.get(v);
+                int[] m = view.matches;
+                if (heads[v] >= m.length) {
+                    continue;
+                }
+                int pos = m[heads[v]];
+                if (best < 0 || SortedAnnotations.compare(view.begin[pos], view.end[pos],
+                        views.get(best).begin[bestPos], views.get(best).end[bestPos]) < 0) {
+                    best = v;
+                    bestPos = pos;
+                }
+            }
+            AnnotationView<T> view = views.get(best);
+            retFs[k] = view.fs[bestPos];
+            retBegin[k] = view.begin[bestPos];
+            retEnd[k] = view.end[bestPos];
+            heads[best]++;
+        }
+        return new AnnotationView<T>(retFs, retBegin, retEnd, null, 0, null, 0, total, Integer.MAX_VALUE, null, null);
+    }
+}
@@ -0,0 +1,325 @@
+package edu.mayo.bsi.uima.perf.structures;
+
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.text.AnnotationFS;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link AnnotationIndex} that caches query results, for pipelines in which successive annotators repeat the same
+ * lookups, e.g. the tokens covered by each sentence.
+ * <p>
+ * Results are cached by query kind, type and bounds, up to a fixed number of entries beyond which the least recently
+ * used are evicted. Modifications only increment a counter, with the cache emptied by the next query that finds it
+ * out of date, so that runs of modifications cost nothing extra.
+ * <p>
+ * Cached results are shared by every caller making the same query, each of which receives its own
+ * {@link SharedResultList} or {@link SharedResultMap} over the result, so that modifications by one caller are not seen
+ * by others.
+ * Queries covered by an annotation are cached by that annotation, which they exclude. Other queries excluding specific
+ * annotations, i.e. {@link #getBetween(Type, AnnotationFS, AnnotationFS)} and
+ * {@link #containsCovered(Type, AnnotationFS)}, are not cached.
+ * <p>
+ * Like the index it caches for, instances are not thread-safe
+ */
+public final class CachingAnnotationIndex implements AnnotationIndex {
+    private static final int COVERING = 0;
+    private static final int COVERED = 1;
+    private static final int COLLISIONS = 2;
+    private static final int INDEX_COVERED = 3;
+    private static final int INDEX_COVERING = 4;
+    private static final int PRECEDING = 5;
+    private static final int FOLLOWING = 6;
+    private static final int ALL = 7;
+    private static final int AT = 8;
+    private static final int SUBITERATED = 9;
+    private static final int COVERED_BY = 10;
+
+    private final AnnotationIndex index;
+    private final Map<Key, Object> cache;
+    // Incremented by each modification. The cache holds results as of the value it was last emptied at
+    private long modifications;
+    private long cachedAt;
+
+    /**
+     * @param index      The index to cache query results of
+     * @param maxEntries The maximum number of results to cache
+     */
+    public CachingAnnotationIndex(AnnotationIndex index, final int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        this.index = index;
+        this.cache = new LinkedHashMap<Key, Object>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return The cached result of the given query, or null if not cached
+     */
+    private Object lookup(Key key) {
+        if (cachedAt != modifications) {
+            cache.clear();
+            cachedAt = modifications;
+            return null;
+        }
+        return cache.get(key);
+    }
+
+    @Override
+    public void insert(AnnotationFS ann) {
+        index.insert(ann);
+        modifications++;
+    }
+
+    @Override
+    public void insertAll(Collection<? extends AnnotationFS> anns) {
+        index.insertAll(anns);
+        modifications++;
+    }
+
+    @Override
+    public void remove(AnnotationFS ann) {
+        index.remove(ann);
+        modifications++;
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getCovering(int start, int end, Class<T> clazz) {
+        Key key = new Key(COVERING, clazz, start, end, 0);
+        @SuppressWarnings("unchecked")
+        List<T> ret = (List<T>) lookup(key);
+        if (ret == null) {
+            ret = index.getCovering(start, end, clazz);
+            cache.put(key, ret);
+        }
+        return new SharedResultList<T>(ret);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getCovered(int start, int end, Class<T> clazz) {
+        Key key = new Key(COVERED, clazz, start, end, 0);
+        @SuppressWarnings("unchecked")
+        List<T> ret = (List<T>) lookup(key);
+        if (ret == null) {
+            ret = index.getCovered(start, end, clazz);
+            cache.put(key, ret);
+        }
+        return new SharedResultList<T>(ret);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getCovered(AnnotationFS coveringAnnotation, Class<T> clazz) {
+        // Results exclude the covering annotation itself, so are cached by it rather than by its span alone
+        Key key = new Key(COVERED_BY, clazz, coveringAnnotation.getBegin(), coveringAnnotation.getEnd(), 0,
+                coveringAnnotation);
+        @SuppressWarnings("unchecked")
+        List<T> ret = (List<T>) lookup(key);
+        if (ret == null) {
+            ret = index.getCovered(coveringAnnotation, clazz);
+            cache.put(key, ret);
+        }
+        return new SharedResultList<T>(ret);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getCollisions(int start, int end, Class<T> clazz) {
+        Key key = new Key(COLLISIONS, clazz, start, end, 0);
+        @SuppressWarnings("unchecked")
+        List<T> ret = (List<T>) lookup(key);
+        if (ret == null) {
+            ret = index.getCollisions(start, end, clazz);
+            cache.put(key, ret);
+        }
+        return new SharedResultList<T>(ret);
+    }
+
+    @Override
+    public <T extends AnnotationFS, S extends AnnotationFS> Map<T, Collection<S>> indexCovered(Class<? extends T> type, Class<? extends S> coveredType) {
+        Key key = new Key(INDEX_COVERED, type, 0, 0, 0, coveredType);
+        @SuppressWarnings("unchecked")
+        Map<T, Collection<S>> ret = (Map<T, Collection<S>>) lookup(key);
+        if (ret == null) {
+            ret = index.indexCovered(type, coveredType);
+            cache.put(key, ret);
+        }
+        return new SharedResultMap<T, S>(ret);
+    }
+
+    @Override
+    public <T extends AnnotationFS, S extends AnnotationFS> Map<T, Collection<S>> indexCovering(Class<? extends T> type, Class<? extends S> coveringType) {
+        Key key = new Key(INDEX_COVERING, type, 0, 0, 0, coveringType);
+        @SuppressWarnings("unchecked")
+        Map<T, Collection<S>> ret = (Map<T, Collection<S>>) lookup(key);
+        if (ret == null) {
+            ret = index.indexCovering(type, coveringType);
+            cache.put(key, ret);
+        }
+        return new SharedResultMap<T, S>(ret);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getPreceding(Type type, AnnotationFS anchor, int count) {
+        // Results depend on the anchor through its span and, for annotations sharing it, its type
+        Key key = new Key(PRECEDING, type, anchor.getBegin(), anchor.getEnd(), count, anchor.getType());
+        @SuppressWarnings("unchecked")
+        List<T> ret = (List<T>) lookup(key);
+        if (ret == null) {
+            ret = index.<T>getPreceding(type, anchor, count);
+            cache.put(key, ret);
+        }
+        return new SharedResultList<T>(ret);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getFollowing(Type type, AnnotationFS anchor, int count) {
+        Key key = new Key(FOLLOWING, type, anchor.getBegin(), anchor.getEnd(), count, anchor.getType());
+        @SuppressWarnings("unchecked")
+        List<T> ret = (List<T>) lookup(key);
+        if (ret == null) {
+            ret = index.<T>getFollowing(type, anchor, count);
+            cache.put(key, ret);
+        }
+        return new SharedResultList<T>(ret);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getBetween(Type type, AnnotationFS first, AnnotationFS second) {
+        return index.getBetween(type, first, second);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getAll(Type type) {
+        Key key = new Key(ALL, type, 0, 0, 0);
+        @SuppressWarnings("unchecked")
+        List<T> ret = (List<T>) lookup(key);
+        if (ret == null) {
+            ret = index.getAll(type);
+            cache.put(key, ret);
+        }
+        return new SharedResultList<T>(ret);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getAt(Type type, int begin, int end) {
+        Key key = new Key(AT, type, begin, end, 0);
+        @SuppressWarnings("unchecked")
+        List<T> ret = (List<T>) lookup(key);
+        if (ret == null) {
+            ret = index.<T>getAt(type, begin, end);
+            cache.put(key, ret);
+        }
+        return new SharedResultList<T>(ret);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getSubiterated(Type type, AnnotationFS bound, boolean ambiguous,
+                                                           boolean strict) {
+        // Results depend on the bounding annotation through its span and, for annotations sharing it, its type
+        Key key = new Key(SUBITERATED, type, bound.getBegin(), bound.getEnd(), (ambiguous ? 1 : 0) | (strict ? 2 : 0),
+                bound.getType());
+        @SuppressWarnings("unchecked")
+        List<T> ret = (List<T>) lookup(key);
+        if (ret == null) {
+            ret = index.<T>getSubiterated(type, bound, ambiguous, strict);
+            cache.put(key, ret);
+        }
+        return new SharedResultList<T>(ret);
+    }
+
+    @Override
+    public boolean containsCovered(Type type, AnnotationFS coveringAnnotation) {
+        return index.containsCovered(type, coveringAnnotation);
+    }
+
+    @Override
+    public void grow(int size) {
+        index.grow(size);
+    }
+
+    @Override
+    public void flush() {
+        index.flush();
+    }
+
+    @Override
+    public void clear() {
+        index.clear();
+        cache.clear();
+        modifications++;
+    }
+
+    @Override
+    public void recycle() {
+        index.recycle();
+        cache.clear();
+        modifications++;
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Excludes cached results, which are views over the index storage or share their elements with it
+     */
+    @Override
+    public long estimateMemory() {
+        return index.estimateMemory();
+    }
+
+    /**
+     * A query: its kind, queried type or class, bounds or anchor span, result count or flags, and secondary class, type
+     * or excluded annotation
+     */
+    private static final class Key {
+        private final int kind;
+        private final Object type;
+        private final int begin;
+        private final int end;
+        private final int count;
+        private final Object secondaryType;
+
+        Key(int kind, Object type, int begin, int end, int count) {
+            this(kind, type, begin, end, count, null);
+        }
+
+        Key(int kind, Object type, int begin, int end, int count, Object secondaryType) {
+            this.kind = kind;
+            this.type = type;
+            this.begin = begin;
+            this.end = end;
+            this.count = count;
+            this.secondaryType = secondaryType;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return kind == other.kind && begin == other.begin && end == other.end && count == other.count
+                    && type.equals(other.type)
+                    && (secondaryType == null ? other.secondaryType == null : secondaryType.equals(other.secondaryType));
+        }
+
+        @Override
+        public int hashCode() {
+            int ret = kind;
+            ret = 31 * ret + type.hashCode();
+            ret = 31 * ret + begin;
+            ret = 31 * ret + end;
+            ret = 31 * ret + count;
+            return secondaryType == null ? ret : 31 * ret + secondaryType.hashCode();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package edu.mayo.bsi.uima.perf.structures;
+
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.TypeSystem;
+import org.apache.uima.cas.admin.LinearTypeOrder;
+import org.apache.uima.cas.text.AnnotationFS;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link AnnotationIndex} that may be queried from multiple threads at once, such as by read-only feature
+ * extractors fanned out over a shared CAS.
+ * <p>
+ * Modifications are applied to an {@link AnnotationRoot} that only the writing thread accesses, and queries are
+ * answered from an immutable copy of it (see {@link AnnotationRoot#freeze()}) published through a volatile field.
+ * Queries against a published copy take no locks and never modify shared state, so concurrent readers neither block
+ * each other nor trigger a merge or sort. The first query following a modification publishes a new copy, which only
+ * re-merges the type partitions that were modified and otherwise shares storage with the previous copy. Should several
+ * readers make that first query at once, one publishes while the others wait for it; {@link #flush()} publishes ahead
+ * of time, e.g. before fanning out readers.
+ * <p>
+ * As required by UIMA for the CAS itself, modifications must not be concurrent with each other or with queries
+ */
+public final class ConcurrentAnnotationIndex implements AnnotationIndex {
+    private final AnnotationRoot writer;
+    private final Object publishLock = new Object();
+    private volatile AnnotationRoot published;
+    // Whether the writer has been modified since the published copy was taken. Always written after the copy, so that
+    // readers observing it unset also observe the latest copy
+    private volatile boolean stale;
+
+    /**
+     * @param typeSystem      The type system of the owning CAS
+     * @param leafSize        The entry count at or below which a subtree is scanned linearly as opposed to traversed
+     * @param initialCapacity The initial storage capacity of each type partition
+     */
+    public ConcurrentAnnotationIndex(TypeSystem typeSystem, int leafSize, int initialCapacity) {
+        this(typeSystem, leafSize, initialCapacity, 0);
+    }
+
+    /**
+     * @param typeSystem        The type system of the owning CAS
+     * @param leafSize          The entry count at or below which a subtree is scanned linearly as opposed to traversed
+     * @param initialCapacity   The initial storage capacity of each type partition
+     * @param parallelThreshold The annotation count at or above which bulk inserts are sorted in parallel, or 0 to
+     *                          never sort in parallel, see {@link AnnotationRoot}
+     */
+    public ConcurrentAnnotationIndex(TypeSystem typeSystem, int leafSize, int initialCapacity, int parallelThreshold) {
+        this(typeSystem, null, leafSize, initialCapacity, parallelThreshold);
+    }
+
+    /**
+     * @param typeSystem        The type system of the owning CAS
+     * @param typeOrder         The type priorities of the owning CAS, or null, see {@link AnnotationRoot}
+     * @param leafSize          The entry count at or below which a subtree is scanned linearly as opposed to traversed
+     * @param initialCapacity   The initial storage capacity of each type partition
+     * @param parallelThreshold The annotation count at or above which bulk inserts are sorted in parallel, or 0 to
+     *                          never sort in parallel, see {@link AnnotationRoot}
+     */
+    public ConcurrentAnnotationIndex(TypeSystem typeSystem, LinearTypeOrder typeOrder, int leafSize,
+                                     int initialCapacity, int parallelThreshold) {
+        this.writer = new AnnotationRoot(typeSystem, typeOrder, leafSize, initialCapacity, parallelThreshold);
+        this.published = writer.freeze();
+        this.stale = false;
+    }
+
+    /**
+     * @return An immutable copy of the current contents of the index, publishing one if the index was modified since
+     * the last
+     */
+    private AnnotationRoot reader() {
+        if (!stale) {
+            return published;
+        }
+        synchronized (publishLock) {
+            if (stale) {
+                published = writer.freeze();
+                stale = false;
+            }
+            return published;
+        }
+    }
+
+    @Override
+    public void insert(AnnotationFS ann) {
+        writer.insert(ann);
+        stale = true;
+    }
+
+    @Override
+    public void insertAll(Collection<? extends AnnotationFS> anns) {
+        writer.insertAll(anns);
+        stale = true;
+    }
+
+    @Override
+    public void remove(AnnotationFS ann) {
+        writer.remove(ann);
+        stale = true;
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getCovering(int start, int end, Class<T> clazz) {
+        return reader().getCovering(start, end, clazz);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getCovered(int start, int end, Class<T> clazz) {
+        return reader().getCovered(start, end, clazz);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getCovered(AnnotationFS coveringAnnotation, Class<T> clazz) {
+        return reader().getCovered(coveringAnnotation, clazz);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getCollisions(int start, int end, Class<T> clazz) {
+        return reader().getCollisions(start, end, clazz);
+    }
+
+    @Override
+    public <T extends AnnotationFS, S extends AnnotationFS> Map<T, Collection<S>> indexCovered(Class<? extends T> type, Class<? extends S> coveredType) {
+        return reader().indexCovered(type, coveredType);
+    }
+
+    @Override
+    public <T extends AnnotationFS, S extends AnnotationFS> Map<T, Collection<S>> indexCovering(Class<? extends T> type, Class<? extends S> coveringType) {
+        return reader().indexCovering(type, coveringType);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getPreceding(Type type, AnnotationFS anchor, int count) {
+        return reader().getPreceding(type, anchor, count);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getFollowing(Type type, AnnotationFS anchor, int count) {
+        return reader().getFollowing(type, anchor, count);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getBetween(Type type, AnnotationFS first, AnnotationFS second) {
+        return reader().getBetween(type, first, second);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getAll(Type type) {
+        return reader().getAll(type);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getAt(Type type, int begin, int end) {
+        return reader().getAt(type, begin, end);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getSubiterated(Type type, AnnotationFS bound, boolean ambiguous,
+                                                           boolean strict) {
+        return reader().getSubiterated(type, bound, ambiguous, strict);
+    }
+
+    @Override
+    public boolean containsCovered(Type type, AnnotationFS coveringAnnotation) {
+        return reader().containsCovered(type, coveringAnnotation);
+    }
+
+    @Override
+    public void grow(int size) {
+        writer.grow(size);
+        stale = true;
+    }
+
+    /**
+     * Publishes the current contents of the index, such that the next query from any thread does not have to
+     */
+    @Override
+    public void flush() {
+        reader();
+    }
+
+    @Override
+    public void clear() {
+        writer.clear();
+        stale = true;
+    }
+
+    @Override
+    public void recycle() {
+        writer.recycle();
+        stale = true;
+    }
+
+    @Override
+    public int size() {
+        return writer.size();
+    }
+
+    @Override
+    public long estimateMemory() {
+        return writer.estimateMemory();
+    }
+}
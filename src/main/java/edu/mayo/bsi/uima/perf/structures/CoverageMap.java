@@ -0,0 +1,303 @@
+package edu.mayo.bsi.uima.perf.structures;
+
+import org.apache.uima.cas.text.AnnotationFS;
+
+import java.util.*;
+
+/**
+ * A map from annotations to the annotations covering or covered by them, as returned by
+ * {@link AnnotationIndex#indexCovered(Class, Class)} and {@link AnnotationIndex#indexCovering(Class, Class)}.
+ * <p>
+ * The map is computed by a single sweep over both (sorted) annotation sets and stored compactly in compressed-row
+ * form: for each key position, a range of positions into the value run. Value collections are only materialized as
+ * lightweight list views when looked up. Consistent with uimaFIT, keys without any associated values are not
+ * contained in the map, but {@link #get(Object)} returns an empty list for them rather than null. Also as with
+ * uimaFIT, the map itself is unmodifiable while its value collections may be modified: the values of a key are copied
+ * into a list of their own on their first modification, which the map returns for that key from then on.
+ *
+ * @param <K> The key annotation type
+ * @param <V> The value annotation type
+ */
+final class CoverageMap<K extends AnnotationFS, V extends AnnotationFS> extends AbstractMap<K, Collection<V>> {
+    private final SortedAnnotations keys;
+    private final SortedAnnotations values;
+    // Values of key i are values.fs[members[offsets[i]]] ... values.fs[members[offsets[i + 1] - 1]]
+    private final int[] offsets;
+    private final int[] members;
+    private final int keyCount;
+    private Set<Entry<K, Collection<V>>> entrySet;
+    // Values of each key as modified by the caller, allocated on the first modification of any key's values
+    private ArrayList<V>[] copies;
+
+    private CoverageMap(SortedAnnotations keys, SortedAnnotations values, int[] offsets, int[] members) {
+        this.keys = keys;
+        this.values = values;
+        this.offsets = offsets;
+        this.members = members;
+        int count = 0;
+        for (int i = 0; i < keys.size; i++) {
+            if (offsets[i + 1] > offsets[i]) {
+                count++;
+            }
+        }
+        this.keyCount = count;
+    }
+
+    /**
+     * @param covering The candidate covering annotations, which become the keys of the map
+     * @param covered  The candidate covered annotations, which become the values
+     * @return A map of each covering annotation to the annotations it covers, including itself if present in both
+     * runs. Values are in annotation index order
+     */
+    static <K extends AnnotationFS, V extends AnnotationFS> CoverageMap<K, V> covered(SortedAnnotations covering,
+                                                                                   SortedAnnotations covered) {
+        PositionList pairs = sweep(covering, covered, false);
+        // Pairs are emitted grouped by covered annotation, so a stable counting sort on the covering annotation
+        // regroups them by key while keeping values in order
+        int[] offsets = new int[covering.size + 1];
+        for (int i = 0; i < pairs.size(); i += 2) {
+            offsets[pairs.get(i) + 1]++;
+        }
+        for (int i = 0; i < covering.size; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] cursor = Arrays.copyOf(offsets, covering.size);
+        int[] members = new int[pairs.size() / 2];
+        for (int i = 0; i < pairs.size(); i += 2) {
+            members[cursor[pairs.get(i)]++] = pairs.get(i + 1);
+        }
+        return new CoverageMap<K, V>(covering, covered, offsets, members);
+    }
+
+    /**
+     * @param covered  The candidate covered annotations, which become the keys of the map
+     * @param covering The candidate covering annotations, which become the values
+     * @return A map of each covered annotation to the annotations covering it, excluding itself. Values are in
+     * annotation index order
+     */
+    static <K extends AnnotationFS, V extends AnnotationFS> CoverageMap<K, V> covering(SortedAnnotations covered,
+                                                                                    SortedAnnotations covering) {
+        PositionList pairs = sweep(covering, covered, true);
+        // Pairs are already grouped by covered annotation and, within that, ordered by covering annotation
+        int[] offsets = new int[covered.size + 1];
+        int[] members = new int[pairs.size() / 2];
+        for (int i = 0; i < pairs.size(); i += 2) {
+            offsets[pairs.get(i + 1) + 1]++;
+            members[i / 2] = pairs.get(i);
+        }
+        for (int i = 0; i < covered.size; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        return new CoverageMap<K, V>(covered, covering, offsets, members);
+    }
+
+    /**
+     * Sweeps over the covered annotations in order, maintaining the covering annotations that begin at or before the
+     * current position and have not yet ended, to find every (covering, covered) pair.
+     *
+     * @param excludeSelf Whether to omit pairs of an annotation with itself
+     * @return Flattened (covering position, covered position) pairs, grouped by covered position
+     */
+    private static PositionList sweep(SortedAnnotations covering, SortedAnnotations covered, boolean excludeSelf) {
+        PositionList pairs = new PositionList();
+        int[] active = new int[16];
+        int activeSize = 0;
+        int next = 0;
+        for (int d = 0; d < covered.size; d++) {
+            int b = covered.begin[d];
+            int e = covered.end[d];
+            while (next < covering.size && covering.begin[next] <= b) {
+                if (activeSize == active.length) {
+                    active = Arrays.copyOf(active, activeSize << 1);
+                }
+                active[activeSize++] = next++;
+            }
+            // Covering annotations ending before the current begin can never cover a later annotation
+            int live = 0;
+            for (int i = 0; i < activeSize; i++) {
+                int c = active[i];
+                if (covering.end[c] < b) {
+                    continue;
+                }
+                active[live++] = c;
+                if (covering.end[c] >= e && !(excludeSelf && covering.fs[c] == covered.fs[d])) {
+                    pairs.add(c);
+                    pairs.add(d);
+                }
+            }
+            activeSize = live;
+        }
+        return pairs;
+    }
+
+    @Override
+    public Collection<V> get(Object key) {
+        int pos = positionOf(key);
+        if (pos < 0 || offsets[pos] == offsets[pos + 1]) {
+            return Collections.emptyList();
+        }
+        return new ValueList(pos);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        int pos = positionOf(key);
+        return pos >= 0 && offsets[pos] < offsets[pos + 1];
+    }
+
+    @Override
+    public int size() {
+        return keyCount;
+    }
+
+    @Override
+    public Set<Entry<K, Collection<V>>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Entry<K, Collection<V>>>() {
+                @Override
+                public Iterator<Entry<K, Collection<V>>> iterator() {
+                    return new Iterator<Entry<K, Collection<V>>>() {
+                        private int pos = advance(0);
+
+                        private int advance(int from) {
+                            while (from < keys.size && offsets[from] == offsets[from + 1]) {
+                                from++;
+                            }
+                            return from;
+                        }
+
+                        @Override
+                        public boolean hasNext() {
+                            return pos < keys.size;
+                        }
+
+                        @Override
+                        public Entry<K, Collection<V>> next() {
+                            if (pos >= keys.size) {
+                                throw new NoSuchElementException();
+                            }
+                            //noinspection unchecked
+                            Entry<K, Collection<V>> ret = new SimpleImmutableEntry<K, Collection<V>>((K) keys.fs[pos],
+                                    new ValueList(pos));
+                            pos = advance(pos + 1);
+                            return ret;
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return keyCount;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    /**
+     * @return The position of the given key within the key run, or -1 if not present
+     */
+    private int positionOf(Object key) {
+        if (!(key instanceof AnnotationFS)) {
+            return -1;
+        }
+        AnnotationFS ann = (AnnotationFS) key;
+        int b = ann.getBegin();
+        int e = ann.getEnd();
+        int lo = 0;
+        int hi = keys.size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (SortedAnnotations.compare(keys.begin[mid], keys.end[mid], b, e) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int i = lo; i < keys.size && keys.begin[i] == b && keys.end[i] == e; i++) {
+            if (keys.fs[i].equals(ann)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * View over the values of a single key, reading the copy of the values made on their first modification if any
+     */
+    private final class ValueList extends AbstractList<V> implements RandomAccess {
+        private final int pos;
+        private final int from;
+        private final int to;
+
+        ValueList(int pos) {
+            this.pos = pos;
+            this.from = offsets[pos];
+            this.to = offsets[pos + 1];
+        }
+
+        @Override
+        public V get(int index) {
+            List<V> copy = copy();
+            if (copy != null) {
+                return copy.get(index);
+            }
+            if (index < 0 || index >= to - from) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (to - from));
+            }
+            //noinspection unchecked
+            return (V) values.fs[members[from + index]];
+        }
+
+        @Override
+        public int size() {
+            List<V> copy = copy();
+            return copy != null ? copy.size() : to - from;
+        }
+
+        @Override
+        public V set(int index, V element) {
+            return modifiable().set(index, element);
+        }
+
+        @Override
+        public void add(int index, V element) {
+            modifiable().add(index, element);
+            modCount++;
+        }
+
+        @Override
+        public V remove(int index) {
+            V ret = modifiable().remove(index);
+            modCount++;
+            return ret;
+        }
+
+        private List<V> copy() {
+            return copies == null ? null : copies[pos];
+        }
+
+        /**
+         * @return The copy of the values that modifications apply to, made on the first call for this key
+         */
+        @SuppressWarnings("unchecked")
+        private List<V> modifiable() {
+            if (copies == null) {
+                copies = (ArrayList<V>[]) new ArrayList[keys.size];
+            }
+            if (copies[pos] == null) {
+                ArrayList<V> copy = new ArrayList<V>(to - from);
+                for (int i = from; i < to; i++) {
+                    copy.add((V) values.fs[members[i]]);
+                }
+                copies[pos] = copy;
+            }
+            return copies[pos];
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package edu.mayo.bsi.uima.perf.structures;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The agent-owned pool of daemon threads that annotation indexes are built on, sized to the number of available
+ * processors. Used both for whole builds run in the background and for parallelising the parts of a single build
+ */
+public final class IndexBuildPool {
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread ret = new Thread(r, "UIMA-Agent-Index-Builder-" + count.incrementAndGet());
+            ret.setDaemon(true);
+            return ret;
+        }
+    });
+
+    private IndexBuildPool() {
+    }
+
+    /**
+     * @return The executor backing the pool
+     */
+    public static ExecutorService executor() {
+        return EXECUTOR;
+    }
+
+    /**
+     * Runs tasks on the pool, returning once all have completed. The calling thread takes tasks as well, and only
+     * waits for tasks already started by pool threads, so that this completes even if every pool thread is busy, such
+     * as when called from a build that is itself running on the pool
+     *
+     * @param tasks The tasks to run, in the order they should be started in
+     * @throws RuntimeException The first exception thrown by a task, once all tasks have completed
+     */
+    static void runAll(final List<? extends Runnable> tasks) {
+        final int count = tasks.size();
+        final AtomicInteger next = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(count);
+        final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                int i;
+                while ((i = next.getAndIncrement()) < count) {
+                    try {
+                        tasks.get(i).run();
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }
+        };
+        for (int i = Math.min(THREADS, count) - 1; i > 0; i--) {
+            EXECUTOR.execute(worker);
+        }
+        worker.run();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package edu.mayo.bsi.uima.perf.structures;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.SofaFS;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.impl.LowLevelCAS;
+import org.apache.uima.cas.impl.LowLevelTypeSystem;
+import org.apache.uima.cas.text.AnnotationFS;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A compact binary copy of the annotation index of a CAS view, so that a CAS serialized in a form that preserves
+ * feature structure addresses, i.e. by {@link org.apache.uima.cas.impl.Serialization#serializeCAS(CAS,
+ * java.io.OutputStream)}, can have its index restored on deserialization rather than rebuilt.
+ * <p>
+ * The file holds a header identifying the index by the UID of its {@link edu.mayo.bsi.uima.perf.PerformanceMetadata},
+ * followed by the address, type code, begin and end of each annotation in index order. Files are memory-mapped when
+ * loaded, and every entry is checked against the CAS it is loaded into at the low-level CAS interface, so that a file
+ * that does not match the CAS, e.g. as its addresses were not preserved, is rejected rather than loaded. Loaded entries
+ * are inserted in index order and hence need no sorting
+ */
+public final class IndexFile {
+    private static final int MAGIC = 0x55414958;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 4;
+    private static final int ENTRY_BYTES = 4 * 4;
+    private static final int WRITE_BUFFER_BYTES = 64 * 1024;
+
+    private IndexFile() {
+    }
+
+    /**
+     * Writes the contents of an index to a file, replacing it once completely written
+     *
+     * @param index The index to write
+     * @param view  The CAS view the index belongs to
+     * @param uid   The UID the index is registered under
+     * @param file  The file to write to
+     * @throws IOException If the file cannot be written
+     */
+    public static void write(AnnotationIndex index, CAS view, UUID uid, File file) throws IOException {
+        List<AnnotationFS> anns = index.getAll(view.getAnnotationType());
+        LowLevelCAS ll = view.getLowLevelCAS();
+        LowLevelTypeSystem lts = ll.ll_getTypeSystem();
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            FileChannel channel = out.getChannel();
+            ByteBuffer buf = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+            buf.putInt(MAGIC).putInt(VERSION).putLong(uid.getMostSignificantBits())
+                    .putLong(uid.getLeastSignificantBits()).putInt(anns.size());
+            Type lastType = null;
+            int lastCode = 0;
+            for (AnnotationFS ann : anns) {
+                if (buf.remaining() < ENTRY_BYTES) {
+                    drain(channel, buf);
+                }
+                Type type = ann.getType();
+                if (type != lastType) {
+                    lastType = type;
+                    lastCode = lts.ll_getCodeForType(type);
+                }
+                buf.putInt(ll.ll_getFSRef(ann)).putInt(lastCode).putInt(ann.getBegin()).putInt(ann.getEnd());
+            }
+            drain(channel, buf);
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file))) {
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+        buf.clear();
+    }
+
+    /**
+     * Loads an index file into an empty index, provided it was written for the given UID and matches the contents of
+     * the given CAS view
+     *
+     * @param file   The file to load
+     * @param uid    The UID the file is expected to have been written for
+     * @param view   The CAS view to resolve the annotations of the file against
+     * @param target The empty index to load into, which is left empty unless the file is loaded
+     * @return Whether the file was loaded
+     * @throws IOException If the file cannot be read
+     */
+    public static boolean load(File file, UUID uid, CAS view, AnnotationIndex target) throws IOException {
+        MappedByteBuffer buf;
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            // The mapping remains valid once the file is closed
+            buf = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+        } finally {
+            in.close();
+        }
+        if (buf.capacity() < HEADER_BYTES || buf.getInt() != MAGIC || buf.getInt() != VERSION
+                || buf.getLong() != uid.getMostSignificantBits() || buf.getLong() != uid.getLeastSignificantBits()) {
+            return false;
+        }
+        int count = buf.getInt();
+        if (count < 0 || buf.remaining() != (long) count * ENTRY_BYTES
+                || count != view.getAnnotationIndex().size()) {
+            return false;
+        }
+        LowLevelCAS ll = view.getLowLevelCAS();
+        LowLevelTypeSystem lts = ll.ll_getTypeSystem();
+        int beginFeature = lts.ll_getCodeForFeature(view.getBeginFeature());
+        int endFeature = lts.ll_getCodeForFeature(view.getEndFeature());
+        int sofaFeature = lts.ll_getCodeForFeatureName(CAS.FEATURE_FULL_NAME_SOFA);
+        SofaFS sofa = view.getSofa();
+        int sofaRef = sofa == null ? 0 : ll.ll_getFSRef(sofa);
+        IntBuffer entries = buf.asIntBuffer();
+        AnnotationFS[] fs = new AnnotationFS[count];
+        Type[] types = new Type[count];
+        int[] begin = new int[count];
+        int[] end = new int[count];
+        // Annotation types by type code, resolved on first occurrence
+        Type[] byCode = new Type[16];
+        try {
+            for (int i = 0; i < count; i++) {
+                int ref = entries.get();
+                int code = entries.get();
+                int annBegin = entries.get();
+                int annEnd = entries.get();
+                if (code >= byCode.length) {
+                    byCode = Arrays.copyOf(byCode, Math.max(code + 1, byCode.length << 1));
+                }
+                Type type = byCode[code];
+                if (type == null) {
+                    if (code <= 0 || !lts.ll_isValidTypeCode(code)) {
+                        return false;
+                    }
+                    type = lts.ll_getTypeForCode(code);
+                    if (!view.getTypeSystem().subsumes(view.getAnnotationType(), type)) {
+                        return false;
+                    }
+                    byCode[code] = type;
+                }
+                if (ll.ll_getFSRefType(ref) != code || ll.ll_getIntValue(ref, beginFeature) != annBegin
+                        || ll.ll_getIntValue(ref, endFeature) != annEnd || ll.ll_getRefValue(ref, sofaFeature) != sofaRef) {
+                    return false;
+                }
+                fs[i] = ll.ll_getFSForRef(ref);
+                types[i] = type;
+                begin[i] = annBegin;
+                end[i] = annEnd;
+            }
+        } catch (RuntimeException e) {
+            // An address beyond the contents of the CAS
+            return false;
+        }
+        target.insertAll(new LoadedAnnotations(fs, types, begin, end, count));
+        return true;
+    }
+}
@@ -0,0 +1,41 @@
+package edu.mayo.bsi.uima.perf.structures;
+
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.text.AnnotationFS;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Annotations along with their types and offsets as already read by the caller, such as from an {@link IndexFile},
+ * for {@link AnnotationIndex#insertAll(java.util.Collection)}. {@link AnnotationRoot} inserts these without reading
+ * them from the CAS again, and, as they are usually supplied in index order, without sorting them either
+ */
+final class LoadedAnnotations extends AbstractList<AnnotationFS> implements RandomAccess {
+    final AnnotationFS[] fs;
+    final Type[] types;
+    final int[] begin;
+    final int[] end;
+    final int size;
+
+    LoadedAnnotations(AnnotationFS[] fs, Type[] types, int[] begin, int[] end, int size) {
+        this.fs = fs;
+        this.types = types;
+        this.begin = begin;
+        this.end = end;
+        this.size = size;
+    }
+
+    @Override
+    public AnnotationFS get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return fs[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,47 @@
+package edu.mayo.bsi.uima.perf.structures;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive array positions, used to collect query hits against the flat index storage without
+ * boxing
+ */
+final class PositionList {
+    private int[] data;
+    private int size;
+
+    PositionList() {
+        this(16);
+    }
+
+    PositionList(int capacity) {
+        data = new int[Math.max(capacity, 1)];
+        size = 0;
+    }
+
+    void add(int pos) {
+        if (size == data.length) {
+            data = Arrays.copyOf(data, data.length << 1);
+        }
+        data[size++] = pos;
+    }
+
+    int get(int i) {
+        return data[i];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return The storage of this list, of which only the first {@link #size()} positions are valid
+     */
+    int[] elements() {
+        return data;
+    }
+
+    void clear() {
+        size = 0;
+    }
+}
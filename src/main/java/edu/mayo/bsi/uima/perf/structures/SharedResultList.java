@@ -0,0 +1,69 @@
+package edu.mayo.bsi.uima.perf.structures;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A list over a query result shared by several callers, as cached by {@link CachingAnnotationIndex}. Like the lists
+ * returned by uimaFIT, it may be modified by its caller: the first modification copies the shared result into a list of
+ * its own, which is read from then on, so that the shared result and the lists of other callers are unaffected.
+ *
+ * @param <T> The element type of the list
+ */
+final class SharedResultList<T> extends AbstractList<T> implements RandomAccess {
+    private final List<T> shared;
+    // Contents of the list as modified by its caller, copied on the first modification
+    private ArrayList<T> copy;
+
+    /**
+     * @param shared The shared result, which is never modified through this list
+     */
+    SharedResultList(List<T> shared) {
+        this.shared = shared;
+    }
+
+    @Override
+    public T get(int index) {
+        return copy != null ? copy.get(index) : shared.get(index);
+    }
+
+    @Override
+    public int size() {
+        return copy != null ? copy.size() : shared.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return copy != null ? copy.isEmpty() : shared.isEmpty();
+    }
+
+    @Override
+    public T set(int index, T element) {
+        return modifiable().set(index, element);
+    }
+
+    @Override
+    public void add(int index, T element) {
+        modifiable().add(index, element);
+        modCount++;
+    }
+
+    @Override
+    public T remove(int index) {
+        T ret = modifiable().remove(index);
+        modCount++;
+        return ret;
+    }
+
+    /**
+     * @return The copy of the shared result that modifications apply to, made on the first call
+     */
+    private List<T> modifiable() {
+        if (copy == null) {
+            copy = new ArrayList<T>(shared);
+        }
+        return copy;
+    }
+}
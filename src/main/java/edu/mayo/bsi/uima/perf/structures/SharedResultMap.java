@@ -0,0 +1,107 @@
+package edu.mayo.bsi.uima.perf.structures;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A map over a coverage index shared by several callers, as cached by {@link CachingAnnotationIndex}. Like the maps
+ * returned by uimaFIT, it is unmodifiable but its value collections may be modified by its caller: the values of each
+ * key are wrapped in a {@link SharedResultList} on their first lookup, which is returned for that key from then on, so
+ * that the shared map and the maps of other callers are unaffected.
+ *
+ * @param <K> The key type of the map
+ * @param <V> The element type of the value collections
+ */
+final class SharedResultMap<K, V> extends AbstractMap<K, Collection<V>> {
+    private final Map<K, Collection<V>> shared;
+    // Values of the keys looked up so far, allocated on the first lookup
+    private Map<Object, Collection<V>> values;
+    private Set<Entry<K, Collection<V>>> entrySet;
+
+    /**
+     * @param shared The shared map, which is never modified through this map
+     */
+    SharedResultMap(Map<K, Collection<V>> shared) {
+        this.shared = shared;
+    }
+
+    @Override
+    public Collection<V> get(Object key) {
+        if (!shared.containsKey(key)) {
+            // Null or empty, as returned by the shared map
+            return shared.get(key);
+        }
+        return values(key, shared.get(key));
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return shared.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return shared.size();
+    }
+
+    @Override
+    public Set<Entry<K, Collection<V>>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Entry<K, Collection<V>>>() {
+                @Override
+                public Iterator<Entry<K, Collection<V>>> iterator() {
+                    final Iterator<Entry<K, Collection<V>>> it = shared.entrySet().iterator();
+                    return new Iterator<Entry<K, Collection<V>>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return it.hasNext();
+                        }
+
+                        @Override
+                        public Entry<K, Collection<V>> next() {
+                            Entry<K, Collection<V>> e = it.next();
+                            return new SimpleImmutableEntry<K, Collection<V>>(e.getKey(),
+                                    values(e.getKey(), e.getValue()));
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return shared.size();
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    /**
+     * @param key          A key of the shared map
+     * @param sharedValues The values of the key in the shared map
+     * @return The values of the key as seen by the caller, wrapped on the first call for the key
+     */
+    private Collection<V> values(Object key, Collection<V> sharedValues) {
+        if (values == null) {
+            values = new HashMap<Object, Collection<V>>();
+        }
+        Collection<V> ret = values.get(key);
+        if (ret == null) {
+            List<V> list = sharedValues instanceof List ? (List<V>) sharedValues : new ArrayList<V>(sharedValues);
+            ret = new SharedResultList<V>(list);
+            values.put(key, ret);
+        }
+        return ret;
+    }
+}
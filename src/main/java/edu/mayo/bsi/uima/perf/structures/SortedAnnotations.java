@@ -0,0 +1,123 @@
+package edu.mayo.bsi.uima.perf.structures;
+
+import org.apache.uima.cas.text.AnnotationFS;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A run of annotations and their offsets in parallel arrays, sorted by begin ascending, end descending.
+ * <p>
+ * Runs handed out by an {@link AnnotationIntervalTree} share its storage, which the tree copies before next modifying
+ * it, so runs remain valid for as long as they are retained.
+ */
+final class SortedAnnotations {
+    static final SortedAnnotations EMPTY = new SortedAnnotations(new AnnotationFS[0], new int[0], new int[0], 0);
+
+    final AnnotationFS[] fs;
+    final int[] begin;
+    final int[] end;
+    final int size;
+
+    SortedAnnotations(AnnotationFS[] fs, int[] begin, int[] end, int size) {
+        this.fs = fs;
+        this.begin = begin;
+        this.end = end;
+        this.size = size;
+    }
+
+    /**
+     * @param clazz The class to filter by
+     * @return A run containing only the annotations of this run that are instances of the given class
+     */
+    SortedAnnotations filter(Class<?> clazz) {
+        AnnotationFS[] retFs = new AnnotationFS[size];
+        int[] retBegin = new int[size];
+        int[] retEnd = new int[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (clazz.isInstance(fs[i])) {
+                retFs[count] = fs[i];
+                retBegin[count] = begin[i];
+                retEnd[count] = end[i];
+                count++;
+            }
+        }
+        return new SortedAnnotations(retFs, retBegin, retEnd, count);
+    }
+
+    /**
+     * @param from The first position to include
+     * @param to   The position to stop at, exclusive
+     * @return A new list of the annotations at the given positions of this run
+     */
+    ArrayList<AnnotationFS> toList(int from, int to) {
+        ArrayList<AnnotationFS> ret = new ArrayList<AnnotationFS>(Math.max(0, to - from));
+        for (int i = from; i < to; i++) {
+            ret.add(fs[i]);
+        }
+        return ret;
+    }
+
+    /**
+     * @param runs The runs to merge
+     * @return A single run containing every annotation of the given runs in sorted order. Ties are ordered by the
+     * position of their run in the supplied list
+     */
+    static SortedAnnotations merge(List<SortedAnnotations> runs) {
+        if (runs.isEmpty()) {
+            return EMPTY;
+        }
+        return merge(runs, 0, runs.size());
+    }
+
+    private static SortedAnnotations merge(List<SortedAnnotations> runs, int from, int to) {
+        if (to - from == 1) {
+            return runs.get(from);
+        }
+        int mid = (from + to) >>> 1;
+        return merge(merge(runs, from, mid), merge(runs, mid, to));
+    }
+
+    private static SortedAnnotations merge(SortedAnnotations a, SortedAnnotations b) {
+        if (a.size == 0) {
+            return b;
+        }
+        if (b.size == 0) {
+            return a;
+        }
+        int total = a.size + b.size;
+        AnnotationFS[] retFs = new AnnotationFS[total];
+        int[] retBegin = new int[total];
+        int[] retEnd = new int[total];
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < total; k++) {
+            if (j >= b.size || (i < a.size && compare(a.begin[i], a.end[i], b.begin[j], b.end[j]) <= 0)) {
+                retFs[k] = a.fs[i];
+                retBegin[k] = a.begin[i];
+                retEnd[k] = a.end[i];
+                i++;
+            } else {
+                retFs[k] = b.fs[j];
+                retBegin[k] = b.begin[j];
+                retEnd[k] = b.end[j];
+                j++;
+            }
+        }
+        return new SortedAnnotations(retFs, retBegin, retEnd, total);
+    }
+
+    /**
+     * Compares two spans in annotation index order, i.e. begin ascending followed by end descending
+     */
+    static int compare(int b1, int e1, int b2, int e2) {
+        if (b1 != b2) {
+            return b1 < b2 ? -1 : 1;
+        }
+        if (e1 != e2) {
+            return e1 > e2 ? -1 : 1;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,522 @@
+package edu.mayo.bsi.uima.perf.structures;
+
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.TypeSystem;
+import org.apache.uima.cas.admin.LinearTypeOrder;
+import org.apache.uima.cas.text.AnnotationFS;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link AnnotationIndex} for very long documents, tiling the document into fixed-size blocks of character offsets,
+ * each indexed by an {@link AnnotationRoot} of its own.
+ * <p>
+ * An annotation belongs to the tile its begin falls in, provided it also ends within that tile. Annotations crossing a
+ * tile boundary, which are few for tiles that are large compared to sentences, are instead held by a separate
+ * directory index. Tiles hence split annotations by begin, so that the results of a query against consecutive tiles
+ * are in index order once concatenated, and only need merging with those of the directory. Annotations of the same
+ * span always belong to the same index, so that merging never needs to order annotations of distinct types.
+ * <p>
+ * Queries only touch the tiles their bounds overlap, and keep each tile small enough to stay in cache, regardless of
+ * the length of the document. Modifications likewise only affect the tile they fall in: each tile merges its own
+ * pending inserts on the first query against it, and bulk inserts sort the modified tiles in parallel on the
+ * {@link IndexBuildPool}, such that a stage annotating one part of a document leaves the tiles of the rest as is.
+ * <p>
+ * Like {@link AnnotationRoot}, instances are not thread-safe
+ */
+public final class TiledAnnotationIndex implements AnnotationIndex {
+    private final TypeSystem typeSystem;
+    private final LinearTypeOrder typeOrder;
+    private final int tileSize;
+    private final int leafSize;
+    private final int initialCapacity;
+    private final int parallelThreshold;
+    // Tiles by offset block, created on the first annotation to belong to them. Replaced rather than resized in place,
+    // so that monitoring threads see a consistent array
+    private volatile AnnotationRoot[] tiles;
+    private final AnnotationRoot directory;
+
+    /**
+     * @param typeSystem        The type system of the owning CAS
+     * @param typeOrder         The type priorities of the owning CAS, or null, see {@link AnnotationRoot}
+     * @param tileSize          The number of character offsets covered by each tile
+     * @param leafSize          The entry count at or below which a subtree is scanned linearly as opposed to traversed
+     * @param initialCapacity   The initial storage capacity of each type partition of each tile
+     * @param parallelThreshold The annotation count at or above which bulk inserts sort the modified tiles in parallel,
+     *                          or 0 to never sort in parallel
+     */
+    public TiledAnnotationIndex(TypeSystem typeSystem, LinearTypeOrder typeOrder, int tileSize, int leafSize,
+                                int initialCapacity, int parallelThreshold) {
+        if (tileSize < 1 || leafSize < 1 || initialCapacity < 1) {
+            throw new IllegalArgumentException("Tile size, leaf size and initial capacity must be positive");
+        }
+        this.typeSystem = typeSystem;
+        this.typeOrder = typeOrder;
+        this.tileSize = tileSize;
+        this.leafSize = leafSize;
+        this.initialCapacity = initialCapacity;
+        this.parallelThreshold = parallelThreshold;
+        this.tiles = new AnnotationRoot[0];
+        this.directory = newIndex();
+    }
+
+    /**
+     * Parallel sorting happens across tiles, so each tile sorts its own partitions sequentially
+     */
+    private AnnotationRoot newIndex() {
+        return new AnnotationRoot(typeSystem, typeOrder, leafSize, initialCapacity, 0);
+    }
+
+    @Override
+    public void insert(AnnotationFS ann) {
+        int annBegin = ann.getBegin();
+        int annEnd = ann.getEnd();
+        int tile = tileOf(annBegin, annEnd);
+        (tile < 0 ? directory : tile(tile)).insert(ann);
+    }
+
+    @Override
+    public void insertAll(Collection<? extends AnnotationFS> anns) {
+        AnnotationFS[] fs;
+        Type[] types;
+        int[] begins;
+        int[] ends;
+        int total;
+        if (anns instanceof LoadedAnnotations) {
+            LoadedAnnotations loaded = (LoadedAnnotations) anns;
+            fs = loaded.fs;
+            types = loaded.types;
+            begins = loaded.begin;
+            ends = loaded.end;
+            total = loaded.size;
+        } else {
+            total = anns.size();
+            fs = anns.toArray(new AnnotationFS[total]);
+            types = new Type[total];
+            begins = new int[total];
+            ends = new int[total];
+            for (int i = 0; i < total; i++) {
+                AnnotationFS ann = fs[i];
+                types[i] = ann.getType();
+                begins[i] = ann.getBegin();
+                ends[i] = ann.getEnd();
+            }
+        }
+        // Split into a batch per tile, the last being that of the directory, each keeping the order of the input so
+        // that batches already in index order need no sorting
+        int[] targets = new int[total];
+        int maxTile = -1;
+        for (int i = 0; i < total; i++) {
+            targets[i] = tileOf(begins[i], ends[i]);
+            maxTile = Math.max(maxTile, targets[i]);
+        }
+        int[] counts = new int[maxTile + 2];
+        for (int i = 0; i < total; i++) {
+            counts[targets[i] < 0 ? maxTile + 1 : targets[i]]++;
+        }
+        LoadedAnnotations[] batches = new LoadedAnnotations[counts.length];
+        for (int t = 0; t < counts.length; t++) {
+            if (counts[t] > 0) {
+                batches[t] = new LoadedAnnotations(new AnnotationFS[counts[t]], new Type[counts[t]],
+                        new int[counts[t]], new int[counts[t]], counts[t]);
+                counts[t] = 0;
+            }
+        }
+        for (int i = 0; i < total; i++) {
+            int t = targets[i] < 0 ? maxTile + 1 : targets[i];
+            LoadedAnnotations batch = batches[t];
+            int j = counts[t]++;
+            batch.fs[j] = fs[i];
+            batch.types[j] = types[i];
+            batch.begin[j] = begins[i];
+            batch.end[j] = ends[i];
+        }
+        List<AnnotationRoot> modified = new ArrayList<AnnotationRoot>();
+        final List<Integer> sizes = new ArrayList<Integer>();
+        for (int t = 0; t < batches.length; t++) {
+            if (batches[t] != null) {
+                AnnotationRoot target = t > maxTile ? directory : tile(t);
+                target.insertAll(batches[t]);
+                modified.add(target);
+                sizes.add(batches[t].size);
+            }
+        }
+        if (parallelThreshold > 0 && total >= parallelThreshold && modified.size() > 1) {
+            flushParallel(modified, sizes);
+        }
+    }
+
+    /**
+     * Sorts the given tiles in parallel, largest batch first so that the longest running sort starts earliest
+     */
+    private void flushParallel(final List<AnnotationRoot> modified, final List<Integer> sizes) {
+        Integer[] order = new Integer[modified.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return sizes.get(o2).compareTo(sizes.get(o1));
+            }
+        });
+        List<Runnable> tasks = new ArrayList<Runnable>(order.length);
+        for (Integer i : order) {
+            final AnnotationRoot target = modified.get(i);
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    target.flush();
+                }
+            });
+        }
+        IndexBuildPool.runAll(tasks);
+    }
+
+    @Override
+    public void remove(AnnotationFS ann) {
+        int tile = tileOf(ann.getBegin(), ann.getEnd());
+        if (tile < 0) {
+            directory.remove(ann);
+        } else if (tile < tiles.length && tiles[tile] != null) {
+            tiles[tile].remove(ann);
+        }
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getCovering(int start, int end, Class<T> clazz) {
+        List<T> spanning = directory.getCovering(start, end, clazz);
+        // Tiles only hold annotations ending within them
+        List<List<T>> tiled = new ArrayList<List<T>>();
+        for (AnnotationRoot tile : tiles(blockOf(end) - 1, blockOf(start))) {
+            tiled.add(tile.getCovering(start, end, clazz));
+        }
+        return merge(tiled, spanning);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getCovered(int start, int end, Class<T> clazz) {
+        List<T> spanning = directory.getCovered(start, end, clazz);
+        List<List<T>> tiled = new ArrayList<List<T>>();
+        for (AnnotationRoot tile : tiles(blockOf(start), blockOf(end))) {
+            tiled.add(tile.getCovered(start, end, clazz));
+        }
+        return merge(tiled, spanning);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getCovered(AnnotationFS coveringAnnotation, Class<T> clazz) {
+        List<T> spanning = directory.getCovered(coveringAnnotation, clazz);
+        List<List<T>> tiled = new ArrayList<List<T>>();
+        for (AnnotationRoot tile : tiles(blockOf(coveringAnnotation.getBegin()),
+                blockOf(coveringAnnotation.getEnd()))) {
+            tiled.add(tile.getCovered(coveringAnnotation, clazz));
+        }
+        return merge(tiled, spanning);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getCollisions(int start, int end, Class<T> clazz) {
+        List<T> spanning = directory.getCollisions(start, end, clazz);
+        List<List<T>> tiled = new ArrayList<List<T>>();
+        for (AnnotationRoot tile : tiles(blockOf(start) - 1, blockOf(end))) {
+            tiled.add(tile.getCollisions(start, end, clazz));
+        }
+        return merge(tiled, spanning);
+    }
+
+    @Override
+    public <T extends AnnotationFS, S extends AnnotationFS> Map<T, Collection<S>> indexCovered(Class<? extends T> type, Class<? extends S> coveredType) {
+        return CoverageMap.covered(sortedFor(type), sortedFor(coveredType));
+    }
+
+    @Override
+    public <T extends AnnotationFS, S extends AnnotationFS> Map<T, Collection<S>> indexCovering(Class<? extends T> type, Class<? extends S> coveringType) {
+        return CoverageMap.covering(sortedFor(type), sortedFor(coveringType));
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getPreceding(Type type, AnnotationFS anchor, int count) {
+        List<T> spanning = directory.getPreceding(type, anchor, count);
+        int anchorBegin = anchor.getBegin();
+        List<List<T>> tiled = new ArrayList<List<T>>();
+        int found = 0;
+        List<AnnotationRoot> candidates = tiles(0, blockOf(anchorBegin) - 1);
+        AnnotationRoot anchorTile = blockOf(anchorBegin) < tiles.length ? tiles[blockOf(anchorBegin)] : null;
+        if (anchorTile != null && count > 0) {
+            // One more than needed, such that enough remain should the zero-width annotation at the anchor begin, which
+            // uimaFIT counts as preceding if it is the first annotation at or after the anchor, have to be dropped
+            List<T> preceding = anchorTile.getPreceding(type, anchor, count + 1);
+            int last = preceding.size() - 1;
+            if (last >= 0 && preceding.get(last).getBegin() == anchorBegin && hasSpanningCeiling(type, anchor)) {
+                preceding = preceding.subList(0, last);
+            }
+            tiled.add(preceding);
+            found += preceding.size();
+        }
+        // Walk back through the earlier tiles, every annotation of which ends before the anchor begin
+        for (int i = candidates.size() - 1; i >= 0 && found < count; i--) {
+            List<T> preceding = candidates.get(i).getPreceding(type, anchor, count - found);
+            tiled.add(preceding);
+            found += preceding.size();
+        }
+        Collections.reverse(tiled);
+        List<T> ret = merge(tiled, spanning);
+        return new ArrayList<T>(ret.subList(Math.max(0, ret.size() - count), ret.size()));
+    }
+
+    /**
+     * @return Whether the directory holds an annotation of the given type sorting at or after the given anchor but
+     * before any zero-width annotation at its begin, which is then not the first annotation at or after the anchor
+     */
+    private boolean hasSpanningCeiling(Type type, AnnotationFS anchor) {
+        int anchorEnd = anchor.getEnd();
+        SortedAnnotations candidates = directory.getStartingRun(type, anchor.getBegin(), anchor.getBegin());
+        for (int i = 0; i < candidates.size; i++) {
+            // Annotations sharing the anchor span precede it if their type sorts first
+            if (candidates.end[i] < anchorEnd || candidates.end[i] == anchorEnd
+                    && !directory.sortsBefore(candidates.fs[i].getType(), anchor.getType())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getFollowing(Type type, AnnotationFS anchor, int count) {
+        List<T> spanning = directory.getFollowing(type, anchor, count);
+        List<List<T>> tiled = new ArrayList<List<T>>();
+        int found = 0;
+        for (AnnotationRoot tile : tiles(blockOf(anchor.getEnd()), Integer.MAX_VALUE)) {
+            if (found >= count) {
+                break;
+            }
+            List<T> following = tile.getFollowing(type, anchor, count - found);
+            tiled.add(following);
+            found += following.size();
+        }
+        List<T> ret = merge(tiled, spanning);
+        return new ArrayList<T>(ret.subList(0, Math.min(count, ret.size())));
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getBetween(Type type, AnnotationFS first, AnnotationFS second) {
+        List<T> spanning = directory.getBetween(type, first, second);
+        List<List<T>> tiled = new ArrayList<List<T>>();
+        int from = Math.min(first.getBegin(), second.getBegin());
+        int to = Math.max(first.getEnd(), second.getEnd());
+        for (AnnotationRoot tile : tiles(blockOf(from), blockOf(to))) {
+            tiled.add(tile.<T>getBetween(type, first, second));
+        }
+        return merge(tiled, spanning);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getAll(Type type) {
+        List<T> spanning = directory.getAll(type);
+        List<List<T>> tiled = new ArrayList<List<T>>();
+        for (AnnotationRoot tile : tiles(0, Integer.MAX_VALUE)) {
+            tiled.add(tile.<T>getAll(type));
+        }
+        return merge(tiled, spanning);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getAt(Type type, int begin, int end) {
+        //noinspection unchecked
+        return (List<T>) AnnotationRoot.at(getStartingRun(type, begin, end), begin, end);
+    }
+
+    @Override
+    public <T extends AnnotationFS> List<T> getSubiterated(Type type, AnnotationFS bound, boolean ambiguous,
+                                                           boolean strict) {
+        SortedAnnotations candidates = getStartingRun(type, bound.getBegin(), bound.getEnd());
+        //noinspection unchecked
+        return (List<T>) AnnotationRoot.subiterated(candidates, typeOrder, bound, ambiguous, strict);
+    }
+
+    @Override
+    public boolean containsCovered(Type type, AnnotationFS coveringAnnotation) {
+        if (directory.containsCovered(type, coveringAnnotation)) {
+            return true;
+        }
+        for (AnnotationRoot tile : tiles(blockOf(coveringAnnotation.getBegin()),
+                blockOf(coveringAnnotation.getEnd()))) {
+            if (tile.containsCovered(type, coveringAnnotation)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void grow(int size) {
+        int required = blockOf(size) + 1;
+        AnnotationRoot[] current = tiles;
+        if (required > current.length) {
+            tiles = Arrays.copyOf(current, Math.max(required, current.length << 1));
+        }
+    }
+
+    @Override
+    public void flush() {
+        for (AnnotationRoot tile : tiles(0, Integer.MAX_VALUE)) {
+            tile.flush();
+        }
+        directory.flush();
+    }
+
+    @Override
+    public void clear() {
+        for (AnnotationRoot tile : tiles(0, Integer.MAX_VALUE)) {
+            tile.clear();
+        }
+        directory.clear();
+        tiles = new AnnotationRoot[0];
+    }
+
+    /**
+     * Empties every tile in place, keeping tiles and their partitions for the next document
+     */
+    @Override
+    public void recycle() {
+        for (AnnotationRoot tile : tiles(0, Integer.MAX_VALUE)) {
+            tile.recycle();
+        }
+        directory.recycle();
+    }
+
+    @Override
+    public int size() {
+        int ret = directory.size();
+        for (AnnotationRoot tile : tiles) {
+            if (tile != null) {
+                ret += tile.size();
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public long estimateMemory() {
+        AnnotationRoot[] current = tiles;
+        long ret = 64 + 4L * current.length + directory.estimateMemory();
+        for (AnnotationRoot tile : current) {
+            if (tile != null) {
+                ret += tile.estimateMemory();
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return The tile an annotation belongs to, or -1 if it crosses a tile boundary and belongs to the directory
+     */
+    private int tileOf(int begin, int end) {
+        int ret = blockOf(begin);
+        return (long) end <= (long) (ret + 1) * tileSize ? ret : -1;
+    }
+
+    /**
+     * @return The number of the offset block holding the given offset
+     */
+    private int blockOf(int offset) {
+        return Math.max(0, offset) / tileSize;
+    }
+
+    /**
+     * @return The tile of the given offset block, created if it does not exist yet
+     */
+    private AnnotationRoot tile(int block) {
+        grow(block * tileSize);
+        AnnotationRoot ret = tiles[block];
+        if (ret == null) {
+            ret = newIndex();
+            tiles[block] = ret;
+        }
+        return ret;
+    }
+
+    /**
+     * @param from The first offset block, clamped to the tiles present
+     * @param to   The last offset block, clamped likewise
+     * @return The existing tiles of the given offset blocks, in order
+     */
+    private List<AnnotationRoot> tiles(int from, int to) {
+        AnnotationRoot[] current = tiles;
+        List<AnnotationRoot> ret = new ArrayList<AnnotationRoot>();
+        for (int i = Math.max(0, from); i <= Math.min(to, current.length - 1); i++) {
+            if (current[i] != null) {
+                ret.add(current[i]);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return The annotations of the given type beginning within the given bounds, as a single sorted run
+     */
+    private SortedAnnotations getStartingRun(Type type, int start, int end) {
+        ArrayList<SortedAnnotations> runs = new ArrayList<SortedAnnotations>();
+        // Validates the type, even if no tile exists yet
+        runs.add(directory.getStartingRun(directory.checkAnnotationType(type), start, end));
+        for (AnnotationRoot tile : tiles(blockOf(start), blockOf(end))) {
+            runs.add(tile.getStartingRun(type, start, end));
+        }
+        return SortedAnnotations.merge(runs);
+    }
+
+    /**
+     * @return All annotations of the type corresponding to the given class or any of its subtypes, as a single sorted
+     * run
+     */
+    private SortedAnnotations sortedFor(Class<?> clazz) {
+        ArrayList<SortedAnnotations> runs = new ArrayList<SortedAnnotations>();
+        runs.add(directory.sortedFor(clazz));
+        for (AnnotationRoot tile : tiles(0, Integer.MAX_VALUE)) {
+            runs.add(tile.sortedFor(clazz));
+        }
+        return SortedAnnotations.merge(runs);
+    }
+
+    /**
+     * @param tiled    The results of a query against consecutive tiles, in tile order
+     * @param spanning The results of the same query against the directory
+     * @return The results of the query against the whole index, in index order
+     */
+    private static <T extends AnnotationFS> List<T> merge(List<List<T>> tiled, List<T> spanning) {
+        if (tiled.isEmpty()) {
+            return spanning;
+        }
+        if (tiled.size() == 1 && spanning.isEmpty()) {
+            return tiled.get(0);
+        }
+        int total = spanning.size();
+        for (List<T> results : tiled) {
+            total += results.size();
+        }
+        ArrayList<T> ret = new ArrayList<T>(total);
+        int next = 0;
+        T pending = next < spanning.size() ? spanning.get(next) : null;
+        for (List<T> results : tiled) {
+            for (T ann : results) {
+                // Annotations of the same span belong to the same index, so there are no ties to break
+                while (pending != null && SortedAnnotations.compare(pending.getBegin(), pending.getEnd(),
+                        ann.getBegin(), ann.getEnd()) < 0) {
+                    ret.add(pending);
+                    next++;
+                    pending = next < spanning.size() ? spanning.get(next) : null;
+                }
+                ret.add(ann);
+            }
+        }
+        ret.addAll(spanning.subList(next, spanning.size()));
+        return ret;
+    }
+}
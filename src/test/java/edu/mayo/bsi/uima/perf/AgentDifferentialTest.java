@@ -0,0 +1,558 @@
+package edu.mayo.bsi.uima.perf;
+
+import edu.mayo.bsi.uima.perf.metrics.AgentMetrics;
+import edu.mayo.bsi.uima.perf.metrics.InterceptorMetrics;
+import edu.mayo.bsi.uima.perf.structures.AnnotationIndex;
+import net.bytebuddy.agent.ByteBuddyAgent;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.FSIterator;
+import org.apache.uima.cas.FeatureStructure;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.impl.FeatureStructureImpl;
+import org.apache.uima.cas.impl.Serialization;
+import org.apache.uima.cas.impl.XmiCasDeserializer;
+import org.apache.uima.cas.impl.XmiCasSerializer;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.fit.factory.TypeSystemDescriptionFactory;
+import org.apache.uima.fit.util.CasUtil;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.util.CasCopier;
+import org.apache.uima.util.CasCreationUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the agent as a whole, i.e. the interceptors and the lifecycle of the indexes they query, against stock
+ * uimaFIT, over CASes whose contents reach their indexes by every supported route: annotations added to the indexes,
+ * document text, deserialization and copying.
+ * <p>
+ * The agent is installed into the test JVM by this class, before any of the classes it instruments are loaded, so this
+ * class must run in a JVM of its own. Stock results are those of the same uimaFIT methods called from {@link Stock},
+ * whose calls the agent options exclude from acceleration.
+ */
+public class AgentDifferentialTest {
+    private static final int DOCUMENT_LENGTH = 120;
+    private static final String TEXT;
+    private static final File PERSIST_DIR;
+    private static final String OPTIONS;
+
+    static {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < DOCUMENT_LENGTH) {
+            text.append("Lorem ipsum dolor sit amet. ");
+        }
+        TEXT = text.substring(0, DOCUMENT_LENGTH);
+        try {
+            PERSIST_DIR = File.createTempFile("uima-agent", "");
+        } catch (IOException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+        if (!PERSIST_DIR.delete() || !PERSIST_DIR.mkdir()) {
+            throw new ExceptionInInitializerError("Could not create " + PERSIST_DIR);
+        }
+        PERSIST_DIR.deleteOnExit();
+        OPTIONS = "callers.deny=" + Stock.class.getName() + ",index.persistDir=" + PERSIST_DIR;
+        UIMAAgent.premain(OPTIONS, ByteBuddyAgent.install());
+    }
+
+    @Test
+    public void documentText() throws Exception {
+        JCas jcas = createJCas();
+        jcas.setDocumentText(TEXT);
+        verify(jcas, "document text only");
+        annotate(jcas, new Random(1));
+        verify(jcas, "annotated after the first query");
+        JCas late = createJCas();
+        late.setDocumentText(TEXT);
+        annotate(late, new Random(2));
+        verify(late, "annotated before the first query");
+    }
+
+    @Test
+    public void xmi() throws Exception {
+        JCas source = annotatedJCas(new Random(3));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XmiCasSerializer.serialize(source.getCas(), out);
+        JCas target = createJCas();
+        XmiCasDeserializer.deserialize(new ByteArrayInputStream(out.toByteArray()), target.getCas());
+        verify(target, "XMI deserialized");
+    }
+
+    @Test
+    public void copy() throws Exception {
+        JCas source = annotatedJCas(new Random(4));
+        JCas target = createJCas();
+        CasCopier.copyCas(source.getCas(), target.getCas(), true);
+        verify(target, "copied");
+    }
+
+    @Test
+    public void binary() throws Exception {
+        JCas source = annotatedJCas(new Random(5));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Serialization.serializeCAS(source.getCas(), out);
+        assertTrue("index persisted", persistedIndexes() > 0);
+        JCas restored = createJCas();
+        Serialization.deserializeCAS(restored.getCas(), new ByteArrayInputStream(out.toByteArray()));
+        verify(restored, "binary deserialized with a persisted index");
+        assertEquals("persisted indexes left once read", 0, persistedIndexes());
+        JCas rebuilt = createJCas();
+        Serialization.deserializeCAS(rebuilt.getCas(), new ByteArrayInputStream(out.toByteArray()));
+        verify(rebuilt, "binary deserialized again once the persisted index was consumed");
+    }
+
+    @Test
+    public void recycle() throws Exception {
+        AgentOptions.setCurrent(AgentOptions.parse(OPTIONS + ",index.recycle"));
+        try {
+            JCas jcas = createJCas();
+            Random random = new Random(6);
+            AnnotationIndex storage = null;
+            for (int document = 0; document < 3; document++) {
+                jcas.reset();
+                jcas.setDocumentText(TEXT);
+                verify(jcas, "document " + document + " of a reused CAS, text only");
+                annotate(jcas, random);
+                verify(jcas, "document " + document + " of a reused CAS");
+                AnnotationIndex attached = ((AnnotationIndexHolder) jcas.getCas()).getUimaAgentAnnotationIndex();
+                AnnotationIndex current = ((RegisteredAnnotationIndex) attached).getIndex();
+                assertTrue("storage recycled for document " + document, storage == null || storage == current);
+                storage = current;
+            }
+        } finally {
+            AgentOptions.setCurrent(AgentOptions.parse(OPTIONS));
+        }
+    }
+
+    @Test
+    public void views() throws Exception {
+        JCas jcas = createJCas();
+        Random random = new Random(12);
+        for (int document = 0; document < 3; document++) {
+            jcas.reset();
+            JCas view = jcas.createView("other");
+            jcas.setDocumentText(TEXT);
+            view.setDocumentText(TEXT);
+            annotate(jcas, random);
+            verify(jcas, "initial view of document " + document);
+            annotate(view, random);
+            verify(view, "other view of document " + document);
+            // Adding to one view must leave the index of the other as it was
+            annotate(jcas, random);
+            verify(jcas, "initial view of document " + document + " once annotated further");
+            verify(view, "other view of document " + document + " once the initial view was annotated further");
+        }
+    }
+
+    @Test
+    public void coverageIndexes() throws Exception {
+        verifyCoverageIndexes(annotatedJCas(new Random(7)));
+    }
+
+    @Test
+    public void cachedCoverageIndexes() throws Exception {
+        AgentOptions.setCurrent(AgentOptions.parse(OPTIONS + ",index.cache=64"));
+        try {
+            verifyCoverageIndexes(annotatedJCas(new Random(8)));
+        } finally {
+            AgentOptions.setCurrent(AgentOptions.parse(OPTIONS));
+        }
+    }
+
+    @Test
+    public void positionalQueries() throws Exception {
+        verifyPositionalQueries(annotatedJCas(new Random(9)), new Random(10));
+    }
+
+    @Test
+    public void subiterator() throws Exception {
+        verifySubiterators(annotatedJCas(new Random(11)));
+    }
+
+    @Test
+    public void shadow() throws Exception {
+        AgentOptions.setCurrent(AgentOptions.parse(OPTIONS + ",shadow.rate=1"));
+        try {
+            AgentMetrics.reset();
+            JCas jcas = annotatedJCas(new Random(13));
+            verifyPositionalQueries(jcas, new Random(14));
+            verifySubiterators(jcas);
+            verifyCoverageIndexes(jcas);
+            long checks = 0;
+            for (InterceptorMetrics metrics : AgentMetrics.interceptors().values()) {
+                assertEquals("shadow mode mismatches of " + metrics.getName(), 0, metrics.getShadowMismatches());
+                checks += metrics.getShadowChecks();
+            }
+            assertTrue("shadow mode checks", checks > 0);
+        } finally {
+            AgentOptions.setCurrent(AgentOptions.parse(OPTIONS));
+        }
+    }
+
+    /**
+     * Compares the positional queries around every annotation of a CAS, and around annotations that are not indexed
+     */
+    private static void verifyPositionalQueries(JCas jcas, Random random) {
+        CAS cas = jcas.getCas();
+        List<Annotation> anchors = new ArrayList<Annotation>(Stock.select(jcas, Annotation.class));
+        // Not indexed, as annotators commonly query around
+        anchors.add(new Annotation(jcas, 20, 20));
+        anchors.add(new Annotation(jcas, 35, 70));
+        for (Annotation anchor : anchors) {
+            Annotation other = anchors.get(random.nextInt(anchors.size()));
+            int count = random.nextInt(8);
+            String around = " " + count + " around " + describe(anchor);
+            String between = " between " + describe(anchor) + " and " + describe(other);
+            assertSame("selectPreceding" + around, Stock.selectPreceding(jcas, Annotation.class, anchor, count),
+                    JCasUtil.selectPreceding(jcas, Annotation.class, anchor, count));
+            assertSame("selectFollowing" + around, Stock.selectFollowing(jcas, Annotation.class, anchor, count),
+                    JCasUtil.selectFollowing(jcas, Annotation.class, anchor, count));
+            assertSame("selectBetween" + between, Stock.selectBetween(jcas, Annotation.class, anchor, other),
+                    JCasUtil.selectBetween(jcas, Annotation.class, anchor, other));
+            assertEquals("contains around " + describe(anchor), Stock.contains(jcas, anchor, Annotation.class),
+                    JCasUtil.contains(jcas, anchor, Annotation.class));
+            for (Type type : types(cas)) {
+                String of = " " + type.getShortName();
+                assertSame("selectPreceding" + of + around, Stock.selectPreceding(cas, type, anchor, count),
+                        CasUtil.selectPreceding(cas, type, anchor, count));
+                assertSame("selectFollowing" + of + around, Stock.selectFollowing(cas, type, anchor, count),
+                        CasUtil.selectFollowing(cas, type, anchor, count));
+                assertSame("selectBetween" + of + between, Stock.selectBetween(cas, type, anchor, other),
+                        CasUtil.selectBetween(cas, type, anchor, other));
+            }
+        }
+    }
+
+    /**
+     * Compares subiterators bounded by every annotation of a CAS over each of its annotation indexes
+     */
+    private static void verifySubiterators(JCas jcas) {
+        CAS cas = jcas.getCas();
+        for (Annotation anchor : Stock.select(jcas, Annotation.class)) {
+            for (Type type : types(cas)) {
+                String of = " " + type.getShortName() + " around " + describe(anchor);
+                org.apache.uima.cas.text.AnnotationIndex<AnnotationFS> index = cas.getAnnotationIndex(type);
+                assertSame("subiterator" + of, Stock.subiterate(index, anchor), list(index.subiterator(anchor)));
+                for (int flags = 0; flags < 4; flags++) {
+                    boolean ambiguous = (flags & 1) != 0;
+                    boolean strict = (flags & 2) != 0;
+                    String with = " " + ambiguous + " " + strict + of;
+                    assertSame("subiterator" + with, Stock.subiterate(index, anchor, ambiguous, strict),
+                            list(index.subiterator(anchor, ambiguous, strict)));
+                    assertSame("subiterator in reverse" + with, Stock.subiterateInReverse(index, anchor, ambiguous, strict),
+                            listInReverse(index.subiterator(anchor, ambiguous, strict)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Compares the coverage indexes of a CAS against uimaFIT's, before and after modifying their values, and as
+     * returned by a later query once an earlier result was modified
+     */
+    private static void verifyCoverageIndexes(JCas jcas) {
+        List<Annotation> keys = new ArrayList<Annotation>(Stock.select(jcas, Annotation.class));
+        // Not indexed, and so not a key of either map, though uimaFIT returns empty values rather than null for it
+        keys.add(new Annotation(jcas, 0, 1));
+        Map<Annotation, Collection<Annotation>> expected = Stock.indexCovered(jcas, Annotation.class, Annotation.class);
+        Map<Annotation, Collection<Annotation>> actual = JCasUtil.indexCovered(jcas, Annotation.class, Annotation.class);
+        assertSame("indexCovered", expected, actual, keys);
+        modify(expected, keys);
+        modify(actual, keys);
+        assertSame("indexCovered after modifying its values", expected, actual, keys);
+        assertSame("indexCovered after modifying an earlier result",
+                Stock.indexCovered(jcas, Annotation.class, Annotation.class),
+                JCasUtil.indexCovered(jcas, Annotation.class, Annotation.class), keys);
+        expected = Stock.indexCovering(jcas, Annotation.class, Annotation.class);
+        actual = JCasUtil.indexCovering(jcas, Annotation.class, Annotation.class);
+        assertSame("indexCovering", expected, actual, keys);
+        modify(expected, keys);
+        modify(actual, keys);
+        assertSame("indexCovering after modifying its values", expected, actual, keys);
+        assertSame("indexCovering after modifying an earlier result",
+                Stock.indexCovering(jcas, Annotation.class, Annotation.class),
+                JCasUtil.indexCovering(jcas, Annotation.class, Annotation.class), keys);
+    }
+
+    private static JCas createJCas() throws Exception {
+        TypeSystemDescription tsd = TypeSystemDescriptionFactory.createTypeSystemDescription();
+        tsd.addType("test.A", "", CAS.TYPE_NAME_ANNOTATION);
+        tsd.addType("test.B", "", CAS.TYPE_NAME_ANNOTATION);
+        return CasCreationUtils.createCas(tsd, null, null).getJCas();
+    }
+
+    /**
+     * @return A CAS with document text and annotations, whose index has been queried and so is populated
+     */
+    private static JCas annotatedJCas(Random random) throws Exception {
+        JCas ret = createJCas();
+        ret.setDocumentText(TEXT);
+        annotate(ret, random);
+        verify(ret, "source");
+        return ret;
+    }
+
+    /**
+     * Adds annotations of all types, many of them sharing spans or of zero width, none of the same type sharing a span
+     */
+    private static void annotate(JCas jcas, Random random) {
+        CAS cas = jcas.getCas();
+        Type[] types = types(cas);
+        Set<String> spans = new HashSet<String>();
+        for (AnnotationFS ann : Stock.select(cas, cas.getAnnotationType())) {
+            spans.add(span(ann));
+        }
+        List<AnnotationFS> added = new ArrayList<AnnotationFS>();
+        for (int i = 0; i < 60; i++) {
+            Type type = types[random.nextInt(types.length)];
+            AnnotationFS ann;
+            if (!added.isEmpty() && random.nextInt(4) == 0) {
+                AnnotationFS other = added.get(random.nextInt(added.size()));
+                ann = cas.createAnnotation(type, other.getBegin(), other.getEnd());
+            } else {
+                int begin = random.nextInt(DOCUMENT_LENGTH);
+                int length = random.nextInt(3) == 0 ? random.nextInt(30) : random.nextInt(5);
+                ann = cas.createAnnotation(type, begin, Math.min(DOCUMENT_LENGTH, begin + length));
+            }
+            if (spans.add(span(ann))) {
+                cas.addFsToIndexes(ann);
+                added.add(ann);
+            }
+        }
+    }
+
+    private static Type[] types(CAS cas) {
+        return new Type[]{cas.getAnnotationType(), cas.getTypeSystem().getType("test.A"),
+                cas.getTypeSystem().getType("test.B")};
+    }
+
+    /**
+     * Compares the accelerated methods against stock uimaFIT, around every annotation of the CAS
+     */
+    private static void verify(JCas jcas, String context) {
+        CAS cas = jcas.getCas();
+        Collection<Annotation> all = Stock.select(jcas, Annotation.class);
+        assertSame(context + ": select", all, JCasUtil.select(jcas, Annotation.class));
+        for (Type type : types(cas)) {
+            assertSame(context + ": select " + type.getShortName(), Stock.select(cas, type), CasUtil.select(cas, type));
+        }
+        for (Annotation ann : all) {
+            String around = " around " + describe(ann);
+            assertSame(context + ": selectCovered" + around, Stock.selectCovered(jcas, Annotation.class, ann),
+                    JCasUtil.selectCovered(jcas, Annotation.class, ann));
+            assertSame(context + ": selectCovering" + around, Stock.selectCovering(jcas, Annotation.class, ann),
+                    JCasUtil.selectCovering(jcas, Annotation.class, ann));
+            for (Type type : types(cas)) {
+                String of = " " + type.getShortName() + around;
+                assertSame(context + ": selectAt" + of, Stock.selectAt(cas, type, ann.getBegin(), ann.getEnd()),
+                        CasUtil.selectAt(cas, type, ann.getBegin(), ann.getEnd()));
+                assertEquals(context + ": selectSingleAt" + of,
+                        describe(Stock.selectSingleAt(cas, type, ann.getBegin(), ann.getEnd())),
+                        describe(selectSingleAt(cas, type, ann.getBegin(), ann.getEnd())));
+            }
+        }
+    }
+
+    private static int persistedIndexes() {
+        String[] files = PERSIST_DIR.list();
+        return files == null ? 0 : files.length;
+    }
+
+    private static List<AnnotationFS> list(FSIterator<AnnotationFS> it) {
+        List<AnnotationFS> ret = new ArrayList<AnnotationFS>();
+        while (it.hasNext()) {
+            ret.add(it.next());
+        }
+        return ret;
+    }
+
+    private static List<AnnotationFS> listInReverse(FSIterator<AnnotationFS> it) {
+        List<AnnotationFS> ret = new ArrayList<AnnotationFS>();
+        for (it.moveToLast(); it.isValid(); it.moveToPrevious()) {
+            ret.add(it.get());
+        }
+        return ret;
+    }
+
+    /**
+     * Modifies the values of a coverage index as an annotator might, clearing some and removing the first value of
+     * others
+     */
+    private static void modify(Map<Annotation, Collection<Annotation>> index, List<Annotation> keys) {
+        int i = 0;
+        for (Annotation key : keys) {
+            Collection<Annotation> values = index.get(key);
+            if (values.isEmpty()) {
+                continue;
+            }
+            if (i++ % 2 == 0) {
+                values.clear();
+            } else {
+                Iterator<Annotation> it = values.iterator();
+                it.next();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @return The single annotation at the given span, or null if there is none or more than one
+     */
+    private static AnnotationFS selectSingleAt(CAS cas, Type type, int begin, int end) {
+        try {
+            return CasUtil.selectSingleAt(cas, type, begin, end);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static void assertSame(String message, Collection<? extends FeatureStructure> expected,
+                                   Collection<? extends FeatureStructure> actual) {
+        assertEquals(message, describe(expected), describe(actual));
+    }
+
+    private static void assertSame(String message, Map<Annotation, Collection<Annotation>> expected,
+                                   Map<Annotation, Collection<Annotation>> actual, List<Annotation> keys) {
+        assertEquals(message + ": keys", expected.size(), actual.size());
+        for (Annotation key : keys) {
+            assertEquals(message + ": values of " + describe(key), describe(expected.get(key)),
+                    describe(actual.get(key)));
+        }
+    }
+
+    private static String describe(Collection<? extends FeatureStructure> fss) {
+        if (fss == null) {
+            return "null";
+        }
+        StringBuilder ret = new StringBuilder("[");
+        for (FeatureStructure fs : fss) {
+            ret.append(describe(fs)).append(' ');
+        }
+        return ret.append(']').toString();
+    }
+
+    private static String describe(FeatureStructure fs) {
+        if (fs == null) {
+            return "null";
+        }
+        String ret = fs.getType().getShortName() + "#" + ((FeatureStructureImpl) fs).getAddress();
+        if (fs instanceof AnnotationFS) {
+            ret += "[" + ((AnnotationFS) fs).getBegin() + "," + ((AnnotationFS) fs).getEnd() + "]";
+        }
+        return ret;
+    }
+
+    private static String span(AnnotationFS ann) {
+        return ann.getType().getName() + "[" + ann.getBegin() + "," + ann.getEnd() + "]";
+    }
+
+    /**
+     * Calls stock uimaFIT, as the agent options deny acceleration to calls from this class
+     */
+    static final class Stock {
+        private Stock() {
+        }
+
+        static <T extends Annotation> Collection<T> select(JCas jcas, Class<T> clazz) {
+            return JCasUtil.select(jcas, clazz);
+        }
+
+        static Collection<AnnotationFS> select(CAS cas, Type type) {
+            return CasUtil.select(cas, type);
+        }
+
+        static <T extends Annotation> List<T> selectCovered(JCas jcas, Class<T> clazz, AnnotationFS covering) {
+            return JCasUtil.selectCovered(jcas, clazz, covering);
+        }
+
+        static <T extends Annotation> List<T> selectCovering(JCas jcas, Class<T> clazz, AnnotationFS covered) {
+            return JCasUtil.selectCovering(jcas, clazz, covered);
+        }
+
+        static <T extends Annotation, S extends Annotation> Map<T, Collection<S>> indexCovered(
+                JCas jcas, Class<T> type, Class<S> coveredType) {
+            return JCasUtil.indexCovered(jcas, type, coveredType);
+        }
+
+        static <T extends Annotation, S extends Annotation> Map<T, Collection<S>> indexCovering(
+                JCas jcas, Class<T> type, Class<S> coveringType) {
+            return JCasUtil.indexCovering(jcas, type, coveringType);
+        }
+
+        static <T extends Annotation> List<T> selectPreceding(JCas jcas, Class<T> clazz, AnnotationFS anchor,
+                                                              int count) {
+            return JCasUtil.selectPreceding(jcas, clazz, anchor, count);
+        }
+
+        static <T extends Annotation> List<T> selectFollowing(JCas jcas, Class<T> clazz, AnnotationFS anchor,
+                                                              int count) {
+            return JCasUtil.selectFollowing(jcas, clazz, anchor, count);
+        }
+
+        static <T extends Annotation> List<T> selectBetween(JCas jcas, Class<T> clazz, AnnotationFS ann1,
+                                                            AnnotationFS ann2) {
+            return JCasUtil.selectBetween(jcas, clazz, ann1, ann2);
+        }
+
+        static boolean contains(JCas jcas, AnnotationFS coveringAnnotation, Class<? extends Annotation> clazz) {
+            return JCasUtil.contains(jcas, coveringAnnotation, clazz);
+        }
+
+        static List<AnnotationFS> selectPreceding(CAS cas, Type type, AnnotationFS anchor, int count) {
+            return CasUtil.selectPreceding(cas, type, anchor, count);
+        }
+
+        static List<AnnotationFS> selectFollowing(CAS cas, Type type, AnnotationFS anchor, int count) {
+            return CasUtil.selectFollowing(cas, type, anchor, count);
+        }
+
+        static List<AnnotationFS> selectBetween(CAS cas, Type type, AnnotationFS ann1, AnnotationFS ann2) {
+            return CasUtil.selectBetween(cas, type, ann1, ann2);
+        }
+
+        static List<AnnotationFS> subiterate(org.apache.uima.cas.text.AnnotationIndex<AnnotationFS> index,
+                                             AnnotationFS bound) {
+            return list(index.subiterator(bound));
+        }
+
+        static List<AnnotationFS> subiterate(org.apache.uima.cas.text.AnnotationIndex<AnnotationFS> index,
+                                             AnnotationFS bound, boolean ambiguous, boolean strict) {
+            return list(index.subiterator(bound, ambiguous, strict));
+        }
+
+        static List<AnnotationFS> subiterateInReverse(org.apache.uima.cas.text.AnnotationIndex<AnnotationFS> index,
+                                                      AnnotationFS bound, boolean ambiguous, boolean strict) {
+            return listInReverse(index.subiterator(bound, ambiguous, strict));
+        }
+
+        static List<AnnotationFS> selectAt(CAS cas, Type type, int begin, int end) {
+            return CasUtil.selectAt(cas, type, begin, end);
+        }
+
+        static AnnotationFS selectSingleAt(CAS cas, Type type, int begin, int end) {
+            try {
+                return CasUtil.selectSingleAt(cas, type, begin, end);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+}
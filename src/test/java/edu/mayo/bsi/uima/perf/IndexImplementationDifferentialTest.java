@@ -0,0 +1,279 @@
+package edu.mayo.bsi.uima.perf;
+
+import edu.mayo.bsi.uima.perf.structures.AnnotationIndex;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.FSIterator;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.admin.CASMgr;
+import org.apache.uima.cas.admin.LinearTypeOrder;
+import org.apache.uima.cas.impl.FeatureStructureImpl;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.fit.factory.TypePrioritiesFactory;
+import org.apache.uima.fit.factory.TypeSystemDescriptionFactory;
+import org.apache.uima.fit.util.CasUtil;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.apache.uima.resource.metadata.TypePriorities;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.util.CasCreationUtils;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the annotation index against the uimaFIT and UIMA methods it accelerates, over random documents modified by
+ * interleaved inserts and removals.
+ * <p>
+ * Documents are short and densely annotated with annotations of several types, many of them sharing spans or of zero
+ * width, so that ties in index order are frequent. UIMA leaves the order of annotations of the same type sharing a span
+ * unspecified, so no two annotations of the same type share a span.
+ */
+public class IndexImplementationDifferentialTest {
+    private static final int DOCUMENT_LENGTH = 200;
+    private static final int ROUNDS = 6;
+    private static final int QUERIES = 150;
+    private static final String SMALL = "index.leafSize=4,index.capacity=4,index.parallelThreshold=40";
+
+    @Test
+    public void tree() throws Exception {
+        verify(SMALL);
+    }
+
+    @Test
+    public void concurrent() throws Exception {
+        verify(SMALL + ",index.concurrent");
+    }
+
+    @Test
+    public void cached() throws Exception {
+        verify(SMALL + ",index.cache=64");
+    }
+
+    @Test
+    public void tiled() throws Exception {
+        verify(SMALL + ",index=tiled,index.tileSize=16");
+    }
+
+    @Test
+    public void tiledCached() throws Exception {
+        verify(SMALL + ",index=tiled,index.tileSize=16,index.cache=64");
+    }
+
+    private static void verify(String options) throws Exception {
+        AgentOptions agentOptions = AgentOptions.parse(options);
+        TypeSystemDescription tsd = TypeSystemDescriptionFactory.createTypeSystemDescription();
+        tsd.addType("test.A", "", CAS.TYPE_NAME_ANNOTATION);
+        tsd.addType("test.B", "", CAS.TYPE_NAME_ANNOTATION);
+        tsd.addType("test.C", "", "test.A");
+        TypePriorities priorities = TypePrioritiesFactory.createTypePriorities("test.C", "test.B", "test.A");
+        for (int round = 0; round < ROUNDS; round++) {
+            // Alternate between explicit type priorities and UIMA's default order
+            CAS cas = CasCreationUtils.createCas(tsd, round % 2 == 0 ? priorities : null, null);
+            // Annotations are then created as JCas covers, as queried by JCasUtil
+            cas.getJCas();
+            verify(cas, agentOptions, new Random(round));
+        }
+    }
+
+    private static void verify(CAS cas, AgentOptions options, Random random) throws Exception {
+        LinearTypeOrder typeOrder = ((CASMgr) cas).getIndexRepositoryMgr().getDefaultTypeOrder();
+        AnnotationIndex index = options.getIndexImplementation().create(cas.getTypeSystem(), typeOrder, options);
+        Type[] types = {cas.getAnnotationType(), cas.getTypeSystem().getType("test.A"),
+                cas.getTypeSystem().getType("test.B"), cas.getTypeSystem().getType("test.C")};
+        List<AnnotationFS> indexed = new ArrayList<AnnotationFS>();
+        Set<String> spans = new HashSet<String>();
+        for (int batch = 0; batch < 8; batch++) {
+            List<AnnotationFS> added = new ArrayList<AnnotationFS>();
+            for (int i = 0; i < 60; i++) {
+                AnnotationFS ann = randomAnnotation(cas, types, random, indexed);
+                if (spans.add(span(ann))) {
+                    cas.addFsToIndexes(ann);
+                    added.add(ann);
+                }
+            }
+            if (batch % 2 == 0) {
+                index.insertAll(added);
+            } else {
+                for (AnnotationFS ann : added) {
+                    index.insert(ann);
+                }
+            }
+            indexed.addAll(added);
+            for (int i = 0; i < 15; i++) {
+                AnnotationFS ann = indexed.remove(random.nextInt(indexed.size()));
+                spans.remove(span(ann));
+                cas.removeFsFromIndexes(ann);
+                index.remove(ann);
+            }
+            verifyQueries(cas, index, types, random, indexed);
+        }
+    }
+
+    /**
+     * @return A new annotation of a random type, which is short, of zero width, long enough to cross tiles, or shares
+     * the span of an existing annotation
+     */
+    private static AnnotationFS randomAnnotation(CAS cas, Type[] types, Random random, List<AnnotationFS> existing) {
+        Type type = types[random.nextInt(types.length)];
+        if (!existing.isEmpty() && random.nextInt(4) == 0) {
+            AnnotationFS other = existing.get(random.nextInt(existing.size()));
+            return cas.createAnnotation(type, other.getBegin(), other.getEnd());
+        }
+        int begin = random.nextInt(DOCUMENT_LENGTH);
+        int length;
+        switch (random.nextInt(5)) {
+            case 0:
+                length = 0;
+                break;
+            case 1:
+                length = random.nextInt(40);
+                break;
+            default:
+                length = random.nextInt(6);
+        }
+        return cas.createAnnotation(type, begin, Math.min(DOCUMENT_LENGTH, begin + length));
+    }
+
+    private static void verifyQueries(CAS cas, AnnotationIndex index, Type[] types, Random random,
+                                      List<AnnotationFS> indexed) {
+        Type annotationType = cas.getAnnotationType();
+        for (Type type : types) {
+            List<AnnotationFS> all = index.getAll(type);
+            assertSame("select " + type.getShortName(), CasUtil.select(cas, type), all);
+            modify(all);
+            assertSame("select after modifying a result", CasUtil.select(cas, type), index.<AnnotationFS>getAll(type));
+        }
+        for (int q = 0; q < QUERIES; q++) {
+            int begin = random.nextInt(DOCUMENT_LENGTH + 10) - 5;
+            int end = Math.max(0, begin + random.nextInt(30));
+            begin = Math.max(0, begin);
+            Type type = types[random.nextInt(types.length)];
+            AnnotationFS anchor = randomAnchor(cas, types, random, indexed);
+            AnnotationFS other = randomAnchor(cas, types, random, indexed);
+            int count = random.nextInt(12);
+            String at = " at [" + begin + "," + end + "]";
+            String of = " " + type.getShortName() + " around " + describe(anchor);
+
+            List<Annotation> covered = index.getCovered(begin, end, Annotation.class);
+            assertSame("selectCovered" + at, CasUtil.selectCovered(cas, annotationType, begin, end), covered);
+            modify(covered);
+            assertSame("selectCovered after modifying a result" + at,
+                    CasUtil.selectCovered(cas, annotationType, begin, end), index.getCovered(begin, end, Annotation.class));
+            assertSame("selectCovered by " + describe(anchor), CasUtil.selectCovered(cas, annotationType, anchor),
+                    index.getCovered(anchor, Annotation.class));
+            assertSame("selectCovering" + at, CasUtil.selectCovering(cas, annotationType, begin, end),
+                    index.getCovering(begin, end, Annotation.class));
+            assertSame("collisions" + at, selectCollisions(cas, begin, end),
+                    index.getCollisions(begin, end, Annotation.class));
+            assertEquals("contains" + of, !CasUtil.selectCovered(cas, type, anchor).isEmpty(),
+                    index.containsCovered(type, anchor));
+            assertSame("selectAt" + of, CasUtil.selectAt(cas, type, anchor.getBegin(), anchor.getEnd()),
+                    index.<AnnotationFS>getAt(type, anchor.getBegin(), anchor.getEnd()));
+            List<AnnotationFS> preceding = index.getPreceding(type, anchor, count);
+            assertSame("selectPreceding " + count + of, CasUtil.selectPreceding(cas, type, anchor, count), preceding);
+            modify(preceding);
+            assertSame("selectPreceding after modifying a result " + count + of,
+                    CasUtil.selectPreceding(cas, type, anchor, count), index.<AnnotationFS>getPreceding(type, anchor, count));
+            assertSame("selectFollowing " + count + of, CasUtil.selectFollowing(cas, type, anchor, count),
+                    index.<AnnotationFS>getFollowing(type, anchor, count));
+            assertSame("selectBetween" + of + " and " + describe(other), CasUtil.selectBetween(cas, type, anchor, other),
+                    index.<AnnotationFS>getBetween(type, anchor, other));
+            boolean ambiguous = random.nextBoolean();
+            boolean strict = random.nextBoolean();
+            FSIterator<AnnotationFS> it = cas.getAnnotationIndex(type).subiterator(anchor, ambiguous, strict);
+            List<AnnotationFS> subiterated = new ArrayList<AnnotationFS>();
+            while (it.hasNext()) {
+                subiterated.add(it.next());
+            }
+            assertSame("subiterator " + ambiguous + " " + strict + of, subiterated,
+                    index.<AnnotationFS>getSubiterated(type, anchor, ambiguous, strict));
+        }
+        assertSame("indexCovered", CasUtil.indexCovered(cas, annotationType, annotationType),
+                index.<Annotation, Annotation>indexCovered(Annotation.class, Annotation.class));
+        assertSame("indexCovering", CasUtil.indexCovering(cas, annotationType, annotationType),
+                index.<Annotation, Annotation>indexCovering(Annotation.class, Annotation.class));
+    }
+
+    /**
+     * @return The annotations intersecting the given bounds in index order, as specified by
+     * {@link AnnotationIndex#getCollisions(int, int, Class)}: those beginning no later than the end and ending no earlier
+     * than the start, except those ending exactly at the start they begin before
+     */
+    private static List<AnnotationFS> selectCollisions(CAS cas, int begin, int end) {
+        List<AnnotationFS> ret = new ArrayList<AnnotationFS>();
+        for (AnnotationFS ann : CasUtil.select(cas, cas.getAnnotationType())) {
+            if (ann.getBegin() <= end && ann.getEnd() >= begin && !(ann.getBegin() < begin && ann.getEnd() == begin)) {
+                ret.add(ann);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Modifies a query result as an annotator might, which must affect neither the index nor later results
+     */
+    private static <T extends AnnotationFS> void modify(List<T> result) {
+        int size = result.size();
+        Iterator<T> it = result.iterator();
+        if (it.hasNext()) {
+            T first = it.next();
+            it.remove();
+            result.add(first);
+        }
+        Collections.reverse(result);
+        assertEquals("size of a modified result", size, result.size());
+        result.clear();
+    }
+
+    /**
+     * @return An indexed annotation, or a new one at a random span that is not indexed
+     */
+    private static AnnotationFS randomAnchor(CAS cas, Type[] types, Random random, List<AnnotationFS> indexed) {
+        if (random.nextBoolean()) {
+            return indexed.get(random.nextInt(indexed.size()));
+        }
+        return randomAnnotation(cas, types, random, indexed);
+    }
+
+    private static void assertSame(String message, Collection<? extends AnnotationFS> expected,
+                                   Collection<? extends AnnotationFS> actual) {
+        assertEquals(message, describe(expected), describe(actual));
+    }
+
+    private static void assertSame(String message,
+                                   Map<? extends AnnotationFS, ? extends Collection<? extends AnnotationFS>> expected,
+                                   Map<? extends AnnotationFS, ? extends Collection<? extends AnnotationFS>> actual) {
+        assertEquals(message + " keys", expected.size(), actual.size());
+        for (Map.Entry<? extends AnnotationFS, ? extends Collection<? extends AnnotationFS>> e : expected.entrySet()) {
+            Collection<? extends AnnotationFS> values = actual.get(e.getKey());
+            assertEquals(message + " of " + describe(e.getKey()), describe(e.getValue()),
+                    values == null ? null : describe(values));
+        }
+    }
+
+    private static String describe(Collection<? extends AnnotationFS> annotations) {
+        StringBuilder ret = new StringBuilder("[");
+        for (AnnotationFS ann : annotations) {
+            ret.append(describe(ann)).append(' ');
+        }
+        return ret.append(']').toString();
+    }
+
+    private static String span(AnnotationFS ann) {
+        return ann.getType().getName() + "[" + ann.getBegin() + "," + ann.getEnd() + "]";
+    }
+
+    private static String describe(AnnotationFS ann) {
+        return ann.getType().getShortName() + "[" + ann.getBegin() + "," + ann.getEnd() + "]#"
+                + ((FeatureStructureImpl) ann).getAddress();
+    }
+}